@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * AllergenDictionary gives every allergen or medication name a small id, so a set of them can
+ * be held as a bitmask and compared a word at a time
+ * Free text such as "Peanuts, Tree Nuts" or "Dairy/Eggs" is split into tokens that are
+ * lower-cased and singularised, so "Peanuts" and "peanut" share an id. Ids are handed out in
+ * order of first use and the masks grow as needed, so two different names never share a bit.
+ * Allergies and room tags share the ALLERGENS dictionary; medications have their own, so they
+ * never take up allergen ids
+ *
+ * Masks are treated as values: nothing changes a BitSet once it has been handed out, so a
+ * reader can hold one while the owner replaces it
+ */
+public class AllergenDictionary {
+  // Allergies of students and the allergens rooms are tagged with
+  public static final AllergenDictionary ALLERGENS = new AllergenDictionary();
+
+  // Medications of students
+  public static final AllergenDictionary MEDICATIONS = new AllergenDictionary();
+
+  // Shared by every empty mask
+  public static final BitSet NONE = new BitSet();
+
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private volatile String[] names = new String[64];
+  private int nextId = 0;
+
+  /**
+   * Converts free text into a mask with a bit for each name in it
+   * "None", "No" and "N/A" give an empty mask
+   *
+   * @param text Allergies, medications or room tags as entered
+   * @return Bitmask of ids
+   */
+  public BitSet maskOf(String text) {
+    if (text == null || text.trim().equalsIgnoreCase("n/a")) {
+      return NONE;
+    }
+    BitSet mask = new BitSet();
+    int n = text.length();
+    int start = 0;
+    for (int i = 0; i <= n; i++) {
+      if (i == n || isSeparator(text.charAt(i))) {
+        if (i > start) {
+          String token = normalise(text.substring(start, i));
+          if (!token.isEmpty()) {
+            mask.set(idOf(token));
+          }
+        }
+        start = i + 1;
+      }
+    }
+    return mask.isEmpty() ? NONE : mask;
+  }
+
+  /**
+   * Converts command arguments into a mask Arguments that use the roster's separators, such as
+   * "tree nuts, dairy", are read as free text; otherwise each argument is a name of its own, so
+   * "peanuts dairy" gives two
+   *
+   * @param words The command's arguments
+   * @return Bitmask of ids
+   */
+  public BitSet maskOfArguments(String[] words) {
+    String text = String.join(" ", words);
+    for (int i = 0; i < text.length(); i++) {
+      if (isSeparator(text.charAt(i))) {
+        return maskOf(text);
+      }
+    }
+    return maskOf(String.join(",", words));
+  }
+
+  /**
+   * Lists the names for the bits in a mask, in id order
+   * @param mask Bitmask of ids
+   * @return Names such as "peanut, tree nut"
+   */
+  public String describe(BitSet mask) {
+    List<String> found = new ArrayList<>(mask.cardinality());
+    for (int id = mask.nextSetBit(0); id >= 0; id = mask.nextSetBit(id + 1)) {
+      found.add(nameOf(id));
+    }
+    return String.join(", ", found);
+  }
+
+  /**
+   * @param id An id from this dictionary
+   * @return The normalised name first given that id
+   */
+  public String nameOf(int id) {
+    String[] current = names;
+    String name = id < current.length ? current[id] : null;
+    return name != null ? name : "#" + id;
+  }
+
+  /**
+   * @return A new mask with the bits set in both masks
+   */
+  public static BitSet both(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.and(b);
+    return result;
+  }
+
+  /**
+   * @return A new mask with the bits set in either mask
+   */
+  public static BitSet either(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.or(b);
+    return result;
+  }
+
+  /**
+   * @return A new mask with the bits of the first mask that are not set in the second
+   */
+  public static BitSet without(BitSet a, BitSet b) {
+    BitSet result = (BitSet) a.clone();
+    result.andNot(b);
+    return result;
+  }
+
+  /**
+   * Looks up or assigns the id for a normalised token
+   */
+  private int idOf(String token) {
+    Integer id = ids.get(token);
+    if (id != null) {
+      return id;
+    }
+    synchronized (this) {
+      id = ids.get(token);
+      if (id == null) {
+        id = nextId++;
+        String[] current = names;
+        if (id >= current.length) {
+          current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[id] = token;
+        names = current;
+        ids.put(token, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * @return true for characters that separate names in free text
+   */
+  private static boolean isSeparator(char c) {
+    return c == ',' || c == ';' || c == '/' || c == '&' || c == '+';
+  }
+
+  /**
+   * Lower-cases, trims and singularises a token; words meaning "nothing" become empty
+   */
+  private static String normalise(String token) {
+    StringBuilder sb = new StringBuilder(token.length());
+    for (String word : token.trim().toLowerCase().split(" ")) {
+      if (!word.isBlank()) {
+        sb.append(sb.length() > 0 ? " " : "").append(word.trim());
+      }
+    }
+    String t = sb.toString();
+    if (t.startsWith("and ")) {
+      t = t.substring(4);
+    }
+    if (t.equals("none") || t.equals("no") || t.equals("na")) {
+      return "";
+    }
+    if (t.endsWith("ies") && t.length() > 4) {
+      return t.substring(0, t.length() - 3) + "y";    // strawberries -> strawberry
+    }
+    if (t.endsWith("s") && !t.endsWith("ss") && t.length() > 3) {
+      return t.substring(0, t.length() - 1);          // peanuts -> peanut
+    }
+    return t;
+  }
+}
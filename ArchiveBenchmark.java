@@ -0,0 +1,111 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+/**
+ * ArchiveBenchmark compares garbage collection with a large roster on the heap and in the
+ * off-heap StudentArchive
+ * It builds the same synthetic roster twice: once as Students in a list and a name map, as
+ * LOAD_STUDENTS does, and once in a StudentArchive. For each it reports heap in use, how long a
+ * full collection takes, the collector's totals while the roster was built, and the cost of a
+ * name lookup
+ *
+ * Usage: java ArchiveBenchmark [students]
+ */
+public class ArchiveBenchmark {
+  private static final int LOOKUPS = 200_000;
+
+  public static void main(String[] args) {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    System.out.printf("%,d students, max heap %.0f MB%n", studentCount,
+        Runtime.getRuntime().maxMemory() / 1e6);
+
+    // On the heap, the way Main holds the roster
+    long[] before = gcTotals();
+    List<Student> list = new ArrayList<>(studentCount);
+    Map<String, Student> map = new HashMap<>(studentCount * 2);
+    for (int i = 0; i < studentCount; i++) {
+      Student student = RowParser.parseStudent(rowFor(i));
+      list.add(student);
+      map.put(student.getName().toLowerCase(), student);
+    }
+    measure("Heap roster", name -> map.get(name.toLowerCase()) != null, studentCount, before);
+    list.clear();
+    map.clear();
+
+    // Off the heap
+    System.gc();
+    before = gcTotals();
+    StudentArchive archive = new StudentArchive();
+    for (int i = 0; i < studentCount; i++) {
+      String[] parts = RowParser.splitFields(rowFor(i));
+      archive.add(parts[0].trim(), Integer.parseInt(parts[1].trim()), parts[2].trim(),
+          parts[3].trim(), parts[4].trim(), parts[5].trim().equalsIgnoreCase("yes"),
+          parts[6].trim());
+    }
+    System.out.printf("(archive holds %.1f MB off-heap)%n", archive.offHeapBytes() / 1e6);
+    measure("Off-heap archive", name -> archive.find(name) != null, studentCount, before);
+  }
+
+  /**
+   * Reports heap use, collection pauses and lookup time for one layout
+   * @param before Collector totals from before the roster was built
+   */
+  private static void measure(String label, Predicate<String> lookup, int studentCount,
+      long[] before) {
+    long[] after = gcTotals();
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    long used = runtime.totalMemory() - runtime.freeMemory();
+
+    long fullBest = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) {
+      long start = System.nanoTime();
+      System.gc();
+      fullBest = Math.min(fullBest, System.nanoTime() - start);
+    }
+
+    Random random = new Random(7);
+    int found = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      if (lookup.test("S" + random.nextInt(studentCount) + " L0")) {
+        found++;
+      }
+    }
+    long lookupNanos = System.nanoTime() - start;
+
+    System.out.println(label + ":");
+    System.out.printf("  Heap in use after full GC: %.1f MB%n", used / 1e6);
+    System.out.printf("  Full GC pause: %.1f ms (best of 3)%n", fullBest / 1e6);
+    System.out.printf("  Collections while building: %d, %d ms paused in total%n",
+        after[0] - before[0], after[1] - before[1]);
+    System.out.printf("  Lookup: %.0f ns per name (%d found)%n", lookupNanos / (double) LOOKUPS,
+        found);
+  }
+
+  /**
+   * @return {collections, milliseconds} summed over every collector
+   */
+  private static long[] gcTotals() {
+    long[] totals = new long[2];
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      totals[0] += gc.getCollectionCount();
+      totals[1] += gc.getCollectionTime();
+    }
+    return totals;
+  }
+
+  /**
+   * @return A synthetic roster row; every student is named "S(i) L0" so lookups can be made up
+   */
+  private static String rowFor(int i) {
+    return "S" + i + " L0, " + (i % 6) + ", Girl, ((Jane D" + i + ";Mother;555" + i
+        + ") (Bob G" + i + ";Uncle;777" + i + ")), Peanuts, No, None";
+  }
+}
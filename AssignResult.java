@@ -0,0 +1,17 @@
+/**
+ * Outcome of trying to place a student or staff member in a room
+ */
+public enum AssignResult {
+  ASSIGNED,          // The person was added to the room
+  NOT_AVAILABLE,     // The student is not present, or the staff member is not clocked in
+  ALREADY_ASSIGNED,  // The person is already in the room
+  AT_CAPACITY,       // The room has no free student places
+  ALLERGEN_CONFLICT; // The room is tagged with something the student is allergic to
+
+  /**
+   * @return true if the person was added to the room
+   */
+  public boolean isSuccess() {
+    return this == ASSIGNED;
+  }
+}
@@ -0,0 +1,119 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * AttendanceBenchmark measures the attendance history at district scale
+ * It snapshots a synthetic school for a full school year, where most students attend almost
+ * every day and a few are often away, then times CHRONIC_ABSENCE and ATTENDANCE_RATE queries
+ * over the whole year. It also reports the size of the history file against the raw bitmaps and
+ * checks the bit-sliced counts against a direct count of every student's days
+ *
+ * Usage: java AttendanceBenchmark [students] [days]
+ */
+public class AttendanceBenchmark {
+  public static void main(String[] args) throws Exception {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    int dayCount = args.length > 1 ? Math.max(2, Integer.parseInt(args[1])) : 180;
+
+    File dir = Files.createTempDirectory("attendance").toFile();
+    AttendanceHistory.useDirectory(dir);
+
+    List<Student> students = SyntheticRoster.students(studentCount);
+    double[] attendRate = new double[studentCount];
+    Random random = new Random(1);
+    for (int i = 0; i < studentCount; i++) {
+      // One student in ten misses a lot of school
+      attendRate[i] = i % 10 == 0 ? 0.75 + random.nextDouble() * 0.2 : 0.97;
+    }
+
+    int[] expectedPresent = new int[studentCount];
+    LocalDate first = LocalDate.of(2025, 9, 1);
+    long snapshotNanos = 0;
+    long firstDayBytes = 0;
+    for (int d = 0; d < dayCount; d++) {
+      // The attendance messages are not part of what is measured
+      CommandOutput.discard(() -> {
+        for (int i = 0; i < studentCount; i++) {
+          Student student = students.get(i);
+          boolean present = random.nextDouble() < attendRate[i];
+          if (present != student.isPresent()) {
+            if (present) {
+              student.markPresent();
+            } else {
+              student.markAbsent();
+            }
+          }
+          if (present) {
+            expectedPresent[i]++;
+          }
+        }
+      });
+      long start = System.nanoTime();
+      AttendanceHistory.snapshot(students, first.plusDays(d));
+      snapshotNanos += System.nanoTime() - start;
+      if (d == 0) {
+        firstDayBytes = AttendanceHistory.fileSize();  // Includes every student's name
+      }
+    }
+    long rawDayBytes = 2L * ((studentCount + 63) / 64) * 8;
+    double dayBytes = (AttendanceHistory.fileSize() - firstDayBytes) / (double) (dayCount - 1);
+    System.out.printf("Snapshots: %d days x %,d students, %.1f ms per day%n", dayCount,
+        studentCount, snapshotNanos / 1e6 / dayCount);
+    System.out.printf("History file: %,d bytes, of which each day after the first is %,.0f bytes"
+        + " (raw bitmaps %,d bytes, %.1fx smaller)%n", AttendanceHistory.fileSize(), dayBytes,
+        rawDayBytes, rawDayBytes / dayBytes);
+
+    // Read the file back from scratch so queries run on what was persisted
+    AttendanceHistory.useDirectory(dir);
+    long start = System.nanoTime();
+    AttendanceHistory.totals(LocalDate.MIN, LocalDate.MAX);
+    System.out.printf("Load: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+    LocalDate last = first.plusDays(dayCount - 1);
+    List<AttendanceHistory.Rate> chronic = null;
+    long best = Long.MAX_VALUE;
+    for (int run = 0; run < 10; run++) {
+      start = System.nanoTime();
+      chronic = AttendanceHistory.chronicAbsence(90, first, last);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    System.out.printf("CHRONIC_ABSENCE over %d days: %,d students below 90%%, best of 10 %.2f ms%n",
+        dayCount, chronic.size(), best / 1e6);
+
+    best = Long.MAX_VALUE;
+    for (int run = 0; run < 10; run++) {
+      start = System.nanoTime();
+      AttendanceHistory.totals(first, last);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    System.out.printf("School-wide rate over %d days: best of 10 %.2f ms%n", dayCount, best / 1e6);
+
+    start = System.nanoTime();
+    for (int i = 0; i < 1000; i++) {
+      AttendanceHistory.rateOf(SyntheticRoster.student(random.nextInt(studentCount)), first,
+          last);
+    }
+    System.out.printf("ATTENDANCE_RATE: %.1f us per student%n",
+        (System.nanoTime() - start) / 1e3 / 1000);
+
+    // Every student below the threshold must be reported, with the exact count of days
+    int expectedChronic = 0;
+    for (int i = 0; i < studentCount; i++) {
+      if (expectedPresent[i] * 100.0 < 90.0 * dayCount) {
+        expectedChronic++;
+      }
+    }
+    boolean ok = chronic.size() == expectedChronic;
+    for (AttendanceHistory.Rate rate : chronic) {
+      int i = Integer.parseInt(rate.getName().substring(3, rate.getName().indexOf(' ')));
+      ok &= rate.getPresentDays() == expectedPresent[i] && rate.getEnrolledDays() == dayCount;
+    }
+    System.out.println(ok ? "PASS" : "FAIL");
+    if (!ok) {
+      System.exit(1);
+    }
+  }
+}
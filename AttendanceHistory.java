@@ -0,0 +1,513 @@
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * AttendanceHistory keeps a daily record of which students were present
+ * Every student is given a permanent index, and each snapshotted day stores two bitmaps over
+ * those indexes: who was enrolled that day and who was present. Rates are then popcounts over
+ * bitmaps, and per-student counts across many days are accumulated with bit-sliced counters, so
+ * a year of days for a large district is scanned in a few milliseconds
+ *
+ * The history is persisted append-only to attendance/history.dat. Each day's bitmaps are
+ * compressed either as runs of all-zero and all-one words or as a list of set-bit gaps,
+ * whichever is smaller, so a mostly-present day costs a few bytes per absent student
+ *
+ * Student indexes are only meaningful within one file, so every process that keeps its own
+ * roster, such as each campus shard, must keep its own file; see useFileName
+ */
+public class AttendanceHistory {
+  // Name of the history file; campus shards and followers each use their own
+  private static String fileName = "history.dat";
+
+  // Directory the history file lives in
+  private static File dir = new File("attendance");
+
+  // Record types in the history file
+  private static final byte NAME_RECORD = 'N';
+  private static final byte DAY_RECORD = 'D';
+
+  // Bitmap encodings in the history file
+  private static final byte WORD_RUNS = 0;
+  private static final byte SPARSE = 1;
+
+  // Word run token types
+  private static final int ZERO_RUN = 0;
+  private static final int ONE_RUN = 1;
+  private static final int LITERALS = 2;
+
+  /**
+   * One snapshotted day
+   */
+  private static class Day {
+    final long[] enrolled;
+    final long[] present;
+
+    Day(long[] enrolled, long[] present) {
+      this.enrolled = enrolled;
+      this.present = present;
+    }
+  }
+
+  /**
+   * Attendance counts for one student over a range of days
+   */
+  public static class Rate {
+    private final String name;
+    private final int presentDays;
+    private final int enrolledDays;
+
+    Rate(String name, int presentDays, int enrolledDays) {
+      this.name = name;
+      this.presentDays = presentDays;
+      this.enrolledDays = enrolledDays;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getPresentDays() {
+      return presentDays;
+    }
+
+    public int getEnrolledDays() {
+      return enrolledDays;
+    }
+
+    /**
+     * @return Percentage of enrolled days present, or 100 if never enrolled
+     */
+    public double getPercent() {
+      return enrolledDays == 0 ? 100.0 : presentDays * 100.0 / enrolledDays;
+    }
+  }
+
+  // Student index by lower-case name, and names by index
+  private static final Map<String, Integer> ids = new HashMap<>();
+  private static final List<String> names = new ArrayList<>();
+
+  private static final NavigableMap<LocalDate, Day> days = new TreeMap<>();
+  private static boolean loaded = false;
+
+  /**
+   * Records who is present right now as the attendance for a day, replacing any earlier
+   * snapshot of the same day
+   *
+   * @param students Every student
+   * @param day      The day to record
+   * @return Number of students present
+   * @throws IOException if the history cannot be read or written
+   */
+  public static synchronized int snapshot(List<Student> students, LocalDate day)
+      throws IOException {
+    load();
+    int firstNewId = names.size();
+    int[] studentIds = new int[students.size()];
+    boolean[] present = new boolean[students.size()];
+    for (int i = 0; i < studentIds.length; i++) {
+      Student student = students.get(i);
+      Integer id = ids.putIfAbsent(student.getName().toLowerCase(), names.size());
+      if (id == null) {
+        id = names.size();
+        names.add(student.getName());
+      }
+      studentIds[i] = id;
+      present[i] = student.isPresent();
+    }
+
+    long[] enrolledBits = new long[words(names.size())];
+    long[] presentBits = new long[enrolledBits.length];
+    int count = 0;
+    for (int i = 0; i < studentIds.length; i++) {
+      int id = studentIds[i];
+      enrolledBits[id >>> 6] |= 1L << id;
+      if (present[i]) {
+        presentBits[id >>> 6] |= 1L << id;
+        count++;
+      }
+    }
+    days.put(day, new Day(enrolledBits, presentBits));
+
+    // Append the new names and the day to the history file
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(new File(dir, fileName), true)))) {
+      for (int id = firstNewId; id < names.size(); id++) {
+        out.writeByte(NAME_RECORD);
+        out.writeInt(id);
+        out.writeUTF(names.get(id));
+      }
+      out.writeByte(DAY_RECORD);
+      out.writeLong(day.toEpochDay());
+      writeBitmap(out, enrolledBits);
+      writeBitmap(out, and(enrolledBits, not(presentBits)));  // Absences are the sparse side
+    }
+    return count;
+  }
+
+  /**
+   * Computes one student's attendance over a range of days
+   *
+   * @param name Student's full name
+   * @param from First day, inclusive
+   * @param to   Last day, inclusive
+   * @return Their counts, or null if the student has never been snapshotted
+   * @throws IOException if the history cannot be read
+   */
+  public static synchronized Rate rateOf(String name, LocalDate from, LocalDate to)
+      throws IOException {
+    load();
+    Integer id = ids.get(name.toLowerCase());
+    if (id == null) {
+      return null;
+    }
+    int word = id >>> 6;
+    long bit = 1L << id;
+    int present = 0;
+    int enrolled = 0;
+    for (Day day : days.subMap(from, true, to, true).values()) {
+      if (word < day.enrolled.length && (day.enrolled[word] & bit) != 0) {
+        enrolled++;
+        if ((day.present[word] & bit) != 0) {
+          present++;
+        }
+      }
+    }
+    return new Rate(names.get(id), present, enrolled);
+  }
+
+  /**
+   * Finds every student whose attendance over a range of days is below a threshold
+   * Each day is added into bit-sliced counters (one bitmap per binary digit of the count), so
+   * the work per day is a handful of word operations per 64 students
+   *
+   * @param thresholdPercent Attendance percentage below which a student is chronically absent
+   * @param from             First day, inclusive
+   * @param to               Last day, inclusive
+   * @return Students below the threshold, lowest attendance first
+   * @throws IOException if the history cannot be read
+   */
+  public static synchronized List<Rate> chronicAbsence(double thresholdPercent, LocalDate from,
+      LocalDate to) throws IOException {
+    load();
+    int wordCount = words(names.size());
+    int dayCount = days.subMap(from, true, to, true).size();
+    int sliceCount = 64 - Long.numberOfLeadingZeros(Math.max(1, dayCount));
+    long[][] presentSlices = new long[sliceCount][wordCount];
+    long[][] enrolledSlices = new long[sliceCount][wordCount];
+
+    for (Day day : days.subMap(from, true, to, true).values()) {
+      addTo(presentSlices, day.present);
+      addTo(enrolledSlices, day.enrolled);
+    }
+
+    List<Rate> chronic = new ArrayList<>();
+    for (int w = 0; w < wordCount; w++) {
+      // Only words holding at least one enrolled student need unpacking
+      long any = 0;
+      for (long[] slice : enrolledSlices) {
+        any |= slice[w];
+      }
+      for (long bits = any; bits != 0; bits &= bits - 1) {
+        int b = Long.numberOfTrailingZeros(bits);
+        int present = countAt(presentSlices, w, b);
+        int enrolled = countAt(enrolledSlices, w, b);
+        if (present * 100.0 < thresholdPercent * enrolled) {
+          chronic.add(new Rate(names.get(w * 64 + b), present, enrolled));
+        }
+      }
+    }
+    chronic.sort((a, b) -> Double.compare(a.getPercent(), b.getPercent()));
+    return chronic;
+  }
+
+  /**
+   * Computes the school-wide attendance over a range of days as popcounts
+   *
+   * @param from First day, inclusive
+   * @param to   Last day, inclusive
+   * @return {student-days present, student-days enrolled, days in range}
+   * @throws IOException if the history cannot be read
+   */
+  public static synchronized long[] totals(LocalDate from, LocalDate to) throws IOException {
+    load();
+    long present = 0;
+    long enrolled = 0;
+    int dayCount = 0;
+    for (Day day : days.subMap(from, true, to, true).values()) {
+      for (int w = 0; w < day.enrolled.length; w++) {
+        present += Long.bitCount(day.present[w]);
+        enrolled += Long.bitCount(day.enrolled[w]);
+      }
+      dayCount++;
+    }
+    return new long[] {present, enrolled, dayCount};
+  }
+
+  /**
+   * @return Size in bytes of the history file, or 0 if there is none yet
+   */
+  public static long fileSize() {
+    return new File(dir, fileName).length();
+  }
+
+  /**
+   * Keeps the history in another file in the attendance directory, forgetting everything read
+   * so far Processes sharing a working directory, such as two campus shards, call this so
+   * they do not append records numbered for different rosters to the same file
+   *
+   * @param name File name, e.g. "history-7001.dat"
+   */
+  public static synchronized void useFileName(String name) {
+    fileName = name;
+    forget();
+  }
+
+  /**
+   * Points the history at another directory and forgets everything read so far
+   * Used by the benchmark so it never touches the school's real history
+   *
+   * @param directory Directory to keep history.dat in
+   */
+  static synchronized void useDirectory(File directory) {
+    dir = directory;
+    forget();
+  }
+
+  private static void forget() {
+    ids.clear();
+    names.clear();
+    days.clear();
+    loaded = false;
+  }
+
+  /**
+   * Adds a bitmap into bit-sliced counters with ripple carry
+   */
+  private static void addTo(long[][] slices, long[] bitmap) {
+    for (int w = 0; w < bitmap.length; w++) {
+      long carry = bitmap[w];
+      for (int s = 0; s < slices.length && carry != 0; s++) {
+        long sum = slices[s][w] ^ carry;
+        carry &= slices[s][w];
+        slices[s][w] = sum;
+      }
+    }
+  }
+
+  /**
+   * Reads one student's count out of bit-sliced counters
+   */
+  private static int countAt(long[][] slices, int word, int bit) {
+    int count = 0;
+    for (int s = 0; s < slices.length; s++) {
+      count |= (int) ((slices[s][word] >>> bit) & 1) << s;
+    }
+    return count;
+  }
+
+  /**
+   * Reads the history file the first time the history is used A record cut short by a crash
+   * part way through a snapshot is dropped, and the file truncated back to the last complete
+   * record so later snapshots append after it
+   */
+  private static void load() throws IOException {
+    if (loaded) {
+      return;
+    }
+    File file = new File(dir, fileName);
+    if (file.isFile()) {
+      byte[] bytes = Files.readAllBytes(file.toPath());
+      ByteArrayInputStream buffer = new ByteArrayInputStream(bytes);
+      int complete = 0;  // Bytes up to the end of the last complete record
+      try (DataInputStream in = new DataInputStream(buffer)) {
+        while (buffer.available() > 0) {
+          int type = in.readByte();
+          if (type == NAME_RECORD) {
+            int id = in.readInt();
+            String name = in.readUTF();
+            ids.put(name.toLowerCase(), id);
+            while (names.size() <= id) {
+              names.add(null);
+            }
+            names.set(id, name);
+          } else if (type == DAY_RECORD) {
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            long[] enrolled = readBitmap(in);
+            long[] absent = readBitmap(in);
+            days.put(day, new Day(enrolled, and(enrolled, not(absent))));
+          } else {
+            throw new IOException("Corrupt attendance history at record type " + type);
+          }
+          complete = bytes.length - buffer.available();
+        }
+      } catch (EOFException e) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+          channel.truncate(complete);
+        }
+        System.out.println("Attendance history ended part way through a record; dropped the last "
+            + (bytes.length - complete) + " bytes");
+      }
+    }
+    loaded = true;
+  }
+
+  /**
+   * Writes a bitmap in whichever encoding is smaller: runs of empty and full words with literal
+   * words between them, or the gaps between set bits
+   */
+  private static void writeBitmap(DataOutputStream out, long[] bitmap) throws IOException {
+    int setBits = 0;
+    for (long word : bitmap) {
+      setBits += Long.bitCount(word);
+    }
+
+    // Estimate both sizes; a gap usually fits in one or two bytes
+    int runBytes = 0;
+    for (int w = 0; w < bitmap.length; ) {
+      int end = runEnd(bitmap, w);
+      runBytes += 3 + (isFill(bitmap[w]) ? 0 : (end - w) * 8);
+      w = end;
+    }
+    int sparseBytes = 5 + setBits * 2;
+
+    out.writeInt(bitmap.length);
+    if (sparseBytes < runBytes) {
+      out.writeByte(SPARSE);
+      writeVarInt(out, setBits);
+      int last = -1;
+      for (int w = 0; w < bitmap.length; w++) {
+        for (long bits = bitmap[w]; bits != 0; bits &= bits - 1) {
+          int index = w * 64 + Long.numberOfTrailingZeros(bits);
+          writeVarInt(out, index - last);
+          last = index;
+        }
+      }
+      return;
+    }
+
+    out.writeByte(WORD_RUNS);
+    for (int w = 0; w < bitmap.length; ) {
+      int end = runEnd(bitmap, w);
+      if (bitmap[w] == 0) {
+        out.writeByte(ZERO_RUN);
+        writeVarInt(out, end - w);
+      } else if (bitmap[w] == -1L) {
+        out.writeByte(ONE_RUN);
+        writeVarInt(out, end - w);
+      } else {
+        out.writeByte(LITERALS);
+        writeVarInt(out, end - w);
+        for (int i = w; i < end; i++) {
+          out.writeLong(bitmap[i]);
+        }
+      }
+      w = end;
+    }
+  }
+
+  /**
+   * Reads a bitmap written by writeBitmap
+   */
+  private static long[] readBitmap(DataInputStream in) throws IOException {
+    long[] bitmap = new long[in.readInt()];
+    byte encoding = in.readByte();
+    if (encoding == SPARSE) {
+      int setBits = readVarInt(in);
+      int index = -1;
+      for (int i = 0; i < setBits; i++) {
+        index += readVarInt(in);
+        bitmap[index >>> 6] |= 1L << index;
+      }
+      return bitmap;
+    }
+
+    for (int w = 0; w < bitmap.length; ) {
+      int token = in.readByte();
+      int length = readVarInt(in);
+      for (int i = w; i < w + length; i++) {
+        bitmap[i] = token == ONE_RUN ? -1L : token == LITERALS ? in.readLong() : 0;
+      }
+      w += length;
+    }
+    return bitmap;
+  }
+
+  /**
+   * @return End of the run starting at w: equal fill words, or consecutive literal words
+   */
+  private static int runEnd(long[] bitmap, int w) {
+    int end = w + 1;
+    if (isFill(bitmap[w])) {
+      while (end < bitmap.length && bitmap[end] == bitmap[w]) {
+        end++;
+      }
+    } else {
+      while (end < bitmap.length && !isFill(bitmap[end])) {
+        end++;
+      }
+    }
+    return end;
+  }
+
+  private static boolean isFill(long word) {
+    return word == 0 || word == -1L;
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readByte();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static long[] and(long[] a, long[] b) {
+    long[] result = new long[a.length];
+    for (int i = 0; i < a.length; i++) {
+      result[i] = a[i] & (i < b.length ? b[i] : 0);
+    }
+    return result;
+  }
+
+  private static long[] not(long[] a) {
+    long[] result = new long[a.length];
+    for (int i = 0; i < a.length; i++) {
+      result[i] = ~a[i];
+    }
+    return result;
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+}
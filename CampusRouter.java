@@ -0,0 +1,545 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * CampusRouter is the district front end for a set of CampusShard processes on this machine
+ * Commands naming a person or a room are forwarded to the campus that owns them, district-wide
+ * listings fan out to every campus in parallel and are merged in campus order, and any command
+ * can be sent to one campus explicitly with an "@N" prefix
+ *
+ * ALL_STUDENTS, ALL_STAFF and ALL_ROOMS with sort=, page= or size= options are merged into one
+ * district listing: each campus sends its entries in that order up to the end of the page, the
+ * router merges them like the campuses would have sorted them, and cuts the page itself
+ */
+public class CampusRouter {
+  // Commands routed by the student named in parts[1] and parts[2]
+  private static final Set<String> STUDENT_COMMANDS = Set.of("MARK_PRESENT", "MARK_ABSENT",
+      "PICKUP", "ATTENDANCE_RATE", "SIBLINGS");
+
+  // Commands routed by the staff member named in parts[1] and parts[2]
+  private static final Set<String> STAFF_COMMANDS = Set.of("CLOCK_IN", "CLOCK_OUT", "HOURS");
+
+  // Shortest time between directory refreshes caused by names the directory does not know, so
+  // a run of typos does not ask every campus for every key each time
+  private static final long MISS_REFRESH_INTERVAL_NANOS = 5_000_000_000L;
+
+  // Commands routed by the room named in parts[1]
+  private static final Set<String> ROOM_COMMANDS = Set.of("ROOM_INFO", "OPEN_ROOM",
+      "CLOSE_ROOM", "TAG_ROOM", "UNTAG_ROOM", "MOVE_ROOM");
+
+  // Commands that fan out to every campus when given no further arguments
+  private static final Set<String> FAN_OUT_COMMANDS = Set.of("ALL_STUDENTS", "ALL_STAFF",
+      "ALL_ROOMS", "ROLLCALL", "HOURS", "ALLERGEN_REPORT",
+      "DISMISSAL", "GUARDIAN_STATS", "PARA_GAPS");
+
+  // Sorted listings merged into one district listing, by the order a campus sorts them in
+  private static final Map<String, Listing> LISTINGS = Map.of(
+      "ALL_STUDENTS", new Listing("Student", "No Students!", Map.of(
+          "name", byField("Name: "),
+          "grade", byNumber("Grade: ").thenComparing(byField("Name: ")),
+          "room", byField("Location: "))),
+      "ALL_STAFF", new Listing("Staff", "No Staff!", Map.of(
+          "name", byField("Staff Member: "),
+          "position", byField("Position: ").thenComparing(byField("Staff Member: ")))),
+      "ALL_ROOMS", new Listing("Room", "No Rooms!", Map.of(
+          "name", byField("Room Name: "),
+          "capacity", byNumber("Student Capacity: ").thenComparing(byField("Room Name: ")))));
+
+  // Schedule, attendance history, room availability and family commands sent to every campus
+  // whatever their arguments
+  private static final Set<String> SCHEDULE_COMMANDS = Set.of("ON_DUTY", "COVERAGE",
+      "SNAPSHOT_ATTENDANCE", "CHRONIC_ABSENCE", "AVAILABLE_ROOMS", "FAMILY");
+
+  private final List<ShardClient> shards = new ArrayList<>();
+  private final ExecutorService fanOut;
+
+  // Directory of lowercase names to the index of the owning shard, by the kind of key a campus
+  // reports ("student", "staff" or "room"), so a student and a staff member may share a name
+  private volatile Map<String, Map<String, Integer>> owners = Map.of();
+  private volatile long lastRefreshNanos;
+
+  /**
+   * Connection to a single campus shard Requests on one connection are serialized
+   */
+  private static class ShardClient {
+    private final int port;
+    private final Socket socket;
+    private final BufferedReader in;
+    private final Writer out;
+
+    ShardClient(int port) throws IOException {
+      this.port = port;
+      this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      this.in = new BufferedReader(
+          new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+      this.out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Sends one command and waits for its complete reply
+     * @param line The command line to send
+     * @return Everything the shard printed for the command
+     * @throws IOException if the connection fails
+     */
+    synchronized String request(String line) throws IOException {
+      out.write(line + "\n");
+      out.flush();
+
+      StringBuilder reply = new StringBuilder();
+      String replyLine;
+      while ((replyLine = in.readLine()) != null) {
+        if (replyLine.equals(CampusShard.END_OF_RESPONSE)) {
+          return reply.toString();
+        }
+        reply.append(replyLine).append("\n");
+      }
+      throw new IOException("Campus on port " + port + " closed the connection");
+    }
+  }
+
+  /**
+   * How a campus prints one ALL_* listing, and how its sorted orders compare entries
+   */
+  private static class Listing {
+    final String label;        // Entry header label, such as "Student"
+    final String emptyMessage;
+    final Map<String, Comparator<String>> sorts;
+
+    Listing(String label, String emptyMessage, Map<String, Comparator<String>> sorts) {
+      this.label = label;
+      this.emptyMessage = emptyMessage;
+      this.sorts = sorts;
+    }
+  }
+
+  /**
+   * One campus's part of a merged listing
+   */
+  private static class CampusPage {
+    final List<String> entries = new ArrayList<>();  // Entry text without its header
+    int total;                                       // Entries the campus has in all
+  }
+
+  /**
+   * Connects to every shard and builds the initial ownership directory
+   * @param ports Loopback ports of the campus shards, in campus order
+   * @throws IOException if any shard cannot be reached
+   */
+  public CampusRouter(List<Integer> ports) throws IOException {
+    for (int port : ports) {
+      shards.add(new ShardClient(port));
+    }
+    fanOut = Executors.newFixedThreadPool(shards.size(), r -> {
+      Thread t = new Thread(r, "router-fan-out");
+      t.setDaemon(true);
+      return t;
+    });
+    refreshDirectory();
+  }
+
+  /**
+   * Runs the router console, connecting to shards on the given comma-separated loopback ports
+   * @param portList Ports such as "7001,7002,7003"
+   */
+  public static void run(String portList) {
+    List<Integer> ports = new ArrayList<>();
+    for (String port : portList.split(",")) {
+      ports.add(Integer.parseInt(port.trim()));
+    }
+
+    CampusRouter router;
+    try {
+      router = new CampusRouter(ports);
+    } catch (IOException e) {
+      System.out.println("Could not connect to campuses: " + e.getMessage());
+      return;
+    }
+
+    System.out.println("District router connected to " + ports.size() + " campuses.");
+    System.out.println("Prefix a command with @N to send it to campus N only.");
+    Scanner input = new Scanner(System.in);
+    while (true) {
+      System.out.print("> ");
+      if (!input.hasNextLine()) {
+        break;
+      }
+      String line = input.nextLine();
+      if (line.trim().equalsIgnoreCase("QUIT")) {
+        System.out.println("Thank You!");
+        break;
+      }
+      System.out.print(router.route(line));
+    }
+  }
+
+  /**
+   * Routes a command line to the owning campus, to every campus, or to an explicit campus
+   *
+   * @param line The command line
+   * @return Output to show for the command
+   */
+  public String route(String line) {
+    String[] parts = line.trim().split(" ");
+    String command = parts[0].toUpperCase();
+
+    try {
+      // Explicit campus: "@2 LOAD_STUDENTS file.csv"
+      if (command.startsWith("@")) {
+        int shard = Integer.parseInt(command.substring(1)) - 1;
+        if (shard < 0 || shard >= shards.size()) {
+          return "No campus " + command.substring(1) + "\n";
+        }
+        String forwarded = line.trim().substring(command.length()).trim();
+        String reply = shards.get(shard).request(forwarded);
+        if (forwarded.toUpperCase().startsWith("LOAD_")) {
+          refreshDirectory();
+        }
+        return reply;
+      }
+
+      if (LISTINGS.containsKey(command) && parts.length > 1) {
+        return mergedListing(LISTINGS.get(command), parts);
+      }
+
+      if ((FAN_OUT_COMMANDS.contains(command) && parts.length == 1)
+          || SCHEDULE_COMMANDS.contains(command)) {
+        return fanOut(line);
+      }
+
+      if (command.equals("INFO") && parts.length >= 3) {
+        return info(line, parts[1] + " " + parts[2]);
+      }
+
+      if ((STUDENT_COMMANDS.contains(command) || STAFF_COMMANDS.contains(command))
+          && parts.length >= 3) {
+        String kind = STUDENT_COMMANDS.contains(command) ? "student" : "staff";
+        Integer shard = owner(kind, parts[1] + " " + parts[2]);
+        return shard != null ? shards.get(shard).request(line)
+            : parts[1] + " " + parts[2] + " not found on any campus!\n";
+      }
+
+      if (ROOM_COMMANDS.contains(command) && parts.length >= 2) {
+        Integer shard = owner("room", parts[1]);
+        return shard != null ? shards.get(shard).request(line)
+            : "Room " + parts[1] + " not found on any campus!\n";
+      }
+
+      if ((command.equals("ASSIGN_STUDENT") || command.equals("ASSIGN_STAFF")) && parts.length >= 4) {
+        Integer roomShard = owner("room", parts[3]);
+        Integer personShard = owner(command.equals("ASSIGN_STUDENT") ? "student" : "staff",
+            parts[1] + " " + parts[2]);
+        if (roomShard == null) {
+          return "Room " + parts[3] + " not found on any campus!\n";
+        }
+        if (personShard != null && !personShard.equals(roomShard)) {
+          return parts[1] + " " + parts[2] + " belongs to campus " + (personShard + 1)
+              + " but " + parts[3] + " is on campus " + (roomShard + 1) + "\n";
+        }
+        return shards.get(roomShard).request(line);
+      }
+
+      if (command.equals("ASSIGN_GRADE") && parts.length >= 3) {
+        Integer shard = owner("room", parts[2]);
+        return shard != null ? shards.get(shard).request(line)
+            : "Room " + parts[2] + " not found on any campus!\n";
+      }
+
+      if (command.equals("HELP")) {
+        return shards.get(0).request(line)
+            + "Prefix any command with @N to send it to campus N only.\n";
+      }
+      return "Cannot route " + command + " - prefix it with @N to pick a campus.\n";
+    } catch (IOException | NumberFormatException e) {
+      return "Routing failed: " + e.getMessage() + "\n";
+    }
+  }
+
+  /**
+   * Sends INFO to the campus owning the student and the campus owning the staff member of that
+   * name, once if they are the same campus
+   *
+   * @param line The command line
+   * @param name The person's name
+   * @return The owning campuses' replies, the student's first
+   * @throws IOException if a campus fails
+   */
+  private String info(String line, String name) throws IOException {
+    Integer studentShard = owner("student", name);
+    Integer staffShard = owner("staff", name);
+    if (studentShard == null && staffShard == null) {
+      return name + " not found on any campus!\n";
+    }
+    if (studentShard == null || staffShard == null || studentShard.equals(staffShard)) {
+      return shards.get(studentShard != null ? studentShard : staffShard).request(line);
+    }
+    return shards.get(studentShard).request(line) + shards.get(staffShard).request(line);
+  }
+
+  /**
+   * Sends a command to every campus in parallel and merges the replies in campus order
+   *
+   * @param line The command line
+   * @return Combined output with a header per campus
+   * @throws IOException if any campus fails
+   */
+  private String fanOut(String line) throws IOException {
+    List<Future<String>> replies = new ArrayList<>();
+    for (ShardClient shard : shards) {
+      replies.add(fanOut.submit(() -> shard.request(line)));
+    }
+
+    StringBuilder merged = new StringBuilder();
+    for (int i = 0; i < replies.size(); i++) {
+      merged.append("===== Campus ").append(i + 1).append(" =====\n");
+      merged.append(await(replies.get(i), i));
+    }
+    return merged.toString();
+  }
+
+  /**
+   * Lists entries from every campus as one district listing, sorted and paged as asked
+   * Each campus is asked for its entries in the requested order up to the end of the page, or
+   * for all of them if that is more than a campus will print in one page, so no campus sends
+   * entries that cannot appear on the page
+   *
+   * @param listing The listing asked for
+   * @param parts   Command parts, with sort=, page= and size= options
+   * @return The page, numbered across the district, or a campus's reply if it refused the
+   *         options
+   * @throws IOException if any campus fails
+   */
+  private String mergedListing(Listing listing, String[] parts) throws IOException {
+    String sort = null;
+    int page = 0;
+    int size = Main.DEFAULT_PAGE_SIZE;
+    for (int i = 1; i < parts.length; i++) {
+      String option = parts[i].toLowerCase();
+      try {
+        if (option.startsWith("sort=")) {
+          sort = option.substring(5);
+        } else if (option.startsWith("page=")) {
+          page = Integer.parseInt(option.substring(5));
+        } else if (option.startsWith("size=")) {
+          size = Integer.parseInt(option.substring(5));
+        }
+      } catch (NumberFormatException e) {
+        // Left for the campuses to report
+      }
+    }
+    if (page == 0 && size != Main.DEFAULT_PAGE_SIZE) {
+      page = 1;  // A size alone asks for the first page, as on a campus
+    }
+
+    // Campuses check the options, so a bad one comes back in their words
+    long needed = page == 0 ? Long.MAX_VALUE : (long) page * size;
+    String request = parts[0] + (sort != null ? " sort=" + sort : "")
+        + (needed <= Main.MAX_PAGE_SIZE ? " page=1 size=" + needed : "");
+    List<Future<String>> replies = new ArrayList<>();
+    for (ShardClient shard : shards) {
+      replies.add(fanOut.submit(() -> shard.request(request)));
+    }
+    List<CampusPage> campuses = new ArrayList<>();
+    for (int i = 0; i < replies.size(); i++) {
+      String reply = await(replies.get(i), i);
+      CampusPage campus = parseListing(listing, reply);
+      if (campus == null) {
+        return reply;
+      }
+      campuses.add(campus);
+    }
+
+    // Merge the campuses' sorted entries; equal entries and load order keep campus order
+    Comparator<String> order = sort != null ? listing.sorts.get(sort) : null;
+    PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+      int c = order == null ? 0 : order.compare(campuses.get(a[0]).entries.get(a[1]),
+          campuses.get(b[0]).entries.get(b[1]));
+      return c != 0 ? c : Integer.compare(a[0], b[0]);
+    });
+    int total = 0;
+    for (int i = 0; i < campuses.size(); i++) {
+      total += campuses.get(i).total;
+      if (!campuses.get(i).entries.isEmpty()) {
+        heads.add(new int[] {i, 0});
+      }
+    }
+    if (total == 0) {
+      return listing.emptyMessage + "\n";
+    }
+
+    long from = page == 0 ? 0 : (long) (page - 1) * size;
+    long to = page == 0 ? total : Math.min(total, from + size);
+    int pages = (total + size - 1) / size;
+    if (from >= total) {
+      return "Page " + page + " is past the end; the last page is " + pages + ".\n";
+    }
+    StringBuilder merged = new StringBuilder();
+    for (long n = 0; n < to && !heads.isEmpty(); n++) {
+      int[] head = heads.poll();
+      List<String> entries = campuses.get(head[0]).entries;
+      if (n >= from) {
+        merged.append("----- ").append(listing.label).append(" ").append(n + 1)
+            .append(" -----\n").append(entries.get(head[1]));
+      }
+      if (++head[1] < entries.size()) {
+        heads.add(head);
+      }
+    }
+    if (page != 0) {
+      merged.append("Page ").append(page).append(" of ").append(pages).append(" (")
+          .append(total).append(" in all)\n");
+    }
+    return merged.toString();
+  }
+
+  /**
+   * Splits a campus's ALL_* reply into entries
+   *
+   * @return The entries and how many the campus has, or null if the reply is not a listing
+   */
+  private static CampusPage parseListing(Listing listing, String reply) {
+    CampusPage campus = new CampusPage();
+    if (reply.equals(listing.emptyMessage + "\n")) {
+      return campus;
+    }
+    String header = "----- " + listing.label + " ";
+    if (!reply.startsWith(header)) {
+      return null;
+    }
+    StringBuilder entry = null;
+    for (String line : reply.split("\n", -1)) {
+      if (line.startsWith(header) && line.endsWith(" -----")) {
+        if (entry != null) {
+          campus.entries.add(entry.toString());
+        }
+        entry = new StringBuilder();
+      } else if (line.startsWith("Page ") && line.endsWith(" in all)")) {
+        campus.total = Integer.parseInt(line.substring(line.lastIndexOf('(') + 1,
+            line.lastIndexOf(" in all)")));
+      } else if (entry != null) {
+        entry.append(line).append("\n");
+      }
+    }
+    if (entry != null) {
+      // The reply's last line break was counted as a line of its own
+      campus.entries.add(entry.substring(0, entry.length() - 1));
+    }
+    campus.total = Math.max(campus.total, campus.entries.size());
+    return campus;
+  }
+
+  /**
+   * @return A comparator of listing entries by a field's text, ignoring case
+   */
+  private static Comparator<String> byField(String field) {
+    return Comparator.comparing(entry -> fieldOf(entry, field), String.CASE_INSENSITIVE_ORDER);
+  }
+
+  /**
+   * @return A comparator of listing entries by a numeric field
+   */
+  private static Comparator<String> byNumber(String field) {
+    return Comparator.comparingInt(entry -> Integer.parseInt(fieldOf(entry, field).trim()));
+  }
+
+  /**
+   * @return The rest of the first line of an entry that starts with the field label
+   */
+  private static String fieldOf(String entry, String field) {
+    int start = entry.startsWith(field) ? 0 : entry.indexOf("\n" + field) + 1;
+    if (start == 0 && !entry.startsWith(field)) {
+      return "";
+    }
+    start += field.length();
+    int end = entry.indexOf('\n', start);
+    return entry.substring(start, end < 0 ? entry.length() : end);
+  }
+
+  /**
+   * Waits for one campus's reply to a fanned-out request
+   * @throws IOException if the campus failed or the wait was interrupted
+   */
+  private static String await(Future<String> reply, int campus) throws IOException {
+    try {
+      return reply.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted waiting for campus " + (campus + 1));
+    } catch (ExecutionException e) {
+      throw new IOException("Campus " + (campus + 1) + " failed: " + e.getCause().getMessage());
+    }
+  }
+
+  /**
+   * Looks up the campus owning a name The directory is refreshed after every load through the
+   * router; a miss refreshes it again only if that has not happened in the last few seconds, in
+   * case a campus loaded the name on its own, and is otherwise taken as not found
+   *
+   * @param kind "student", "staff" or "room"
+   * @param name Person or room name
+   * @return Index of the owning shard, or null if no campus owns the name
+   * @throws IOException if refreshing the directory fails
+   */
+  private Integer owner(String kind, String name) throws IOException {
+    String key = name.toLowerCase();
+    Integer shard = owners.getOrDefault(kind, Map.of()).get(key);
+    if (shard == null && System.nanoTime() - lastRefreshNanos >= MISS_REFRESH_INTERVAL_NANOS) {
+      refreshDirectory();
+      shard = owners.getOrDefault(kind, Map.of()).get(key);
+    }
+    return shard;
+  }
+
+  /**
+   * Rebuilds the ownership directory by asking every campus for its keys in parallel
+   * @throws IOException if any campus fails
+   */
+  private synchronized void refreshDirectory() throws IOException {
+    lastRefreshNanos = System.nanoTime();
+    Map<String, Map<String, Integer>> directory = new HashMap<>();
+    List<Future<String>> replies = new ArrayList<>();
+    for (ShardClient shard : shards) {
+      replies.add(fanOut.submit(() -> shard.request(CampusShard.KEYS_REQUEST)));
+    }
+
+    for (int i = 0; i < replies.size(); i++) {
+      String keys;
+      try {
+        keys = replies.get(i).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted reading keys from campus " + (i + 1));
+      } catch (ExecutionException e) {
+        throw new IOException("Campus " + (i + 1) + " failed: " + e.getCause().getMessage());
+      }
+
+      // Each line is "student <name>", "staff <name>" or "room <name>"
+      for (String key : keys.split("\n")) {
+        int space = key.indexOf(' ');
+        if (space < 0) {
+          continue;
+        }
+        directory.computeIfAbsent(key.substring(0, space), k -> new HashMap<>())
+            .put(key.substring(space + 1), i);
+      }
+    }
+    owners = directory;
+  }
+}
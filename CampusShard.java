@@ -0,0 +1,74 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CampusShard serves one campus's students, staff and rooms to a CampusRouter over a loopback
+ * socket Each request is a single console command line; the reply is everything the command
+ * printed, followed by a line holding only END_OF_RESPONSE
+ */
+public class CampusShard {
+  // Marks the end of a reply, since command output may span any number of lines
+  public static final String END_OF_RESPONSE = "\u0004";
+
+  // Internal request listing the names and rooms this shard owns, used by the router
+  public static final String KEYS_REQUEST = "__KEYS";
+
+  /**
+   * Listens on the loopback interface and serves router connections until the process exits
+   * Each connection gets its own thread; commands from different connections run concurrently
+   * under the usual state locks
+   *
+   * @param port Port to listen on
+   */
+  public static void serve(int port) {
+    CommandOutput.install();
+    AttendanceHistory.useFileName("history-" + port + ".dat");
+    PunchLog.useDirectory("punches-" + port);
+    try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+      System.out.println("Campus shard listening on " + server.getLocalSocketAddress());
+      while (true) {
+        Socket socket = server.accept();
+        Thread handler = new Thread(() -> handle(socket), "shard-" + socket.getPort());
+        handler.setDaemon(true);
+        handler.start();
+      }
+    } catch (IOException e) {
+      System.out.println("Campus shard stopped: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Serves requests from one router connection until it closes
+   * @param socket The connected router socket
+   */
+  private static void handle(Socket socket) {
+    try (socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        String request = line;
+        String reply = request.equals(KEYS_REQUEST)
+            ? Main.ownedKeys()
+            : CommandOutput.capture(() -> Main.execute(request));
+
+        out.write(reply);
+        if (!reply.isEmpty() && !reply.endsWith("\n")) {
+          out.write("\n");
+        }
+        out.write(END_OF_RESPONSE + "\n");
+        out.flush();
+      }
+    } catch (IOException e) {
+      System.out.println("Router connection closed: " + e.getMessage());
+    }
+  }
+}
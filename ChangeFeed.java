@@ -0,0 +1,239 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * ChangeFeed tells subscribers such as a front-desk display board or the nurse station when a
+ * student or staff member moves, is marked present or absent, clocks in or out, a room opens
+ * or closes, or a room loses or regains para coverage, so they need not poll ALL_STUDENTS
+ * Students, staff and rooms publish a Change from the setters that alter these fields. Each
+ * subscription has a filter, usually on one person or one room, and its own delivery thread.
+ * Changes wait for delivery keyed by what they are about, so if a subscriber falls behind a
+ * newer change to the same person replaces the older one and the subscriber gets the latest
+ * state rather than a growing backlog. With no subscribers, publishing is one volatile read
+ */
+public class ChangeFeed {
+  /**
+   * What a change is about
+   */
+  public enum Kind {
+    STUDENT_LOCATION,   // name moved from previousRoom to room
+    STUDENT_PRESENCE,   // name marked present (state true) or absent, while in room
+    STAFF_LOCATION,     // name moved from previousRoom to room
+    STAFF_CLOCK,        // name clocked in (state true) or out, while in room
+    ROOM_STATUS,        // room name closed (state true) or opened
+    PARA_COVERAGE       // room name lost its para (state true) or no longer lacks one
+  }
+
+  /**
+   * One change to a student, staff member or room
+   */
+  public static class Change {
+    public final Kind kind;
+    public final String name;
+    public final String room;          // Room the entity is in after the change
+    public final String previousRoom;  // Room before a move; the same as room otherwise
+    public final boolean state;
+
+    Change(Kind kind, String name, String room, String previousRoom, boolean state) {
+      this.kind = kind;
+      this.name = name;
+      this.room = room;
+      this.previousRoom = previousRoom;
+      this.state = state;
+    }
+
+    /**
+     * @return true if the change concerns the room, including moves into or out of it
+     */
+    public boolean involvesRoom(String roomName) {
+      return room.equalsIgnoreCase(roomName) || previousRoom.equalsIgnoreCase(roomName);
+    }
+
+    @Override
+    public String toString() {
+      switch (kind) {
+        case STUDENT_LOCATION:
+        case STAFF_LOCATION:
+          return name + " moved from " + previousRoom + " to " + room;
+        case STUDENT_PRESENCE:
+          return name + " marked " + (state ? "present" : "absent") + " (" + room + ")";
+        case STAFF_CLOCK:
+          return name + " clocked " + (state ? "in" : "out") + " (" + room + ")";
+        case PARA_COVERAGE:
+          return "Room " + name + (state ? " has no para" : " no longer lacks a para");
+        default:
+          return "Room " + name + (state ? " closed" : " opened");
+      }
+    }
+  }
+
+  /**
+   * A subscriber's filter, listener and the changes waiting to be delivered to it
+   */
+  public static class Subscription {
+    private final Predicate<Change> filter;
+    private final Consumer<List<Change>> listener;
+    private final Map<String, Change> pending = new LinkedHashMap<>();
+    private final Thread delivery;
+    private long coalesced;
+    private volatile boolean closed;
+
+    private Subscription(Predicate<Change> filter, Consumer<List<Change>> listener) {
+      this.filter = filter;
+      this.listener = listener;
+      this.delivery = new Thread(this::deliver, "change-feed");
+      this.delivery.setDaemon(true);
+    }
+
+    /**
+     * Queues a change, replacing any undelivered change of the same kind to the same entity A
+     * replaced move keeps its original starting room, so the subscriber still sees where the
+     * entity came from, and moves that end where they started are dropped altogether
+     */
+    private synchronized void offer(Change change) {
+      String key = change.kind.ordinal() + change.name;
+      Change older = pending.remove(key);
+      if (older != null) {
+        coalesced++;
+        if (change.kind == Kind.STUDENT_LOCATION || change.kind == Kind.STAFF_LOCATION) {
+          if (older.previousRoom.equals(change.room)) {
+            coalesced++;
+            return;
+          }
+          change = new Change(change.kind, change.name, change.room, older.previousRoom,
+              change.state);
+        }
+      }
+      pending.put(key, change);
+      notifyAll();
+    }
+
+    private void deliver() {
+      while (!closed) {
+        List<Change> batch;
+        synchronized (this) {
+          while (pending.isEmpty() && !closed) {
+            try {
+              wait();
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+          batch = new ArrayList<>(pending.values());
+          pending.clear();
+        }
+        if (!closed) {
+          try {
+            listener.accept(batch);
+          } catch (RuntimeException e) {
+            // One bad batch must not end delivery for the rest of the session
+            System.out.println("Change feed listener failed: " + e);
+          }
+        }
+      }
+    }
+
+    /**
+     * @return Changes replaced by a newer one before they could be delivered
+     */
+    public synchronized long getCoalesced() {
+      return coalesced;
+    }
+
+    /**
+     * Stops delivery; changes still waiting are dropped
+     */
+    public void close() {
+      unsubscribe(this);
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+    }
+  }
+
+  private static final Subscription[] NONE = new Subscription[0];
+
+  // Replaced whole on subscribe and unsubscribe so publishers read it without locking
+  private static volatile Subscription[] subscriptions = NONE;
+
+  /**
+   * Subscribes to changes
+   *
+   * @param filter   Which changes to deliver; runs on the publishing thread, so keep it cheap
+   * @param listener Receives batches of changes on the subscription's own thread
+   * @return The subscription, to close when done
+   */
+  public static Subscription subscribe(Predicate<Change> filter,
+      Consumer<List<Change>> listener) {
+    Subscription subscription = new Subscription(filter, listener);
+    synchronized (ChangeFeed.class) {
+      Subscription[] current = subscriptions;
+      Subscription[] grown = Arrays.copyOf(current, current.length + 1);
+      grown[current.length] = subscription;
+      subscriptions = grown;
+    }
+    subscription.delivery.start();
+    return subscription;
+  }
+
+  private static synchronized void unsubscribe(Subscription subscription) {
+    List<Subscription> remaining = new ArrayList<>(Arrays.asList(subscriptions));
+    remaining.remove(subscription);
+    subscriptions = remaining.isEmpty() ? NONE : remaining.toArray(NONE);
+  }
+
+  /**
+   * @param name A student or staff member's name, or a room name for ROOM_STATUS and
+   *     PARA_COVERAGE
+   * @return A filter for changes to that entity
+   */
+  public static Predicate<Change> forEntity(String name) {
+    return change -> change.name.equalsIgnoreCase(name);
+  }
+
+  /**
+   * @param room A room name
+   * @return A filter for changes in the room, including moves into and out of it
+   */
+  public static Predicate<Change> forRoom(String room) {
+    return change -> change.involvesRoom(room) || (change.kind == Kind.ROOM_STATUS
+        || change.kind == Kind.PARA_COVERAGE) && change.name.equalsIgnoreCase(room);
+  }
+
+  /**
+   * @return true if anyone is subscribed
+   */
+  public static boolean hasSubscribers() {
+    return subscriptions.length > 0;
+  }
+
+  /**
+   * Publishes a change to every subscriber whose filter accepts it Nothing is allocated when
+   * there are no subscribers
+   *
+   * @param kind         What the change is about
+   * @param name         Name of the student, staff member or room
+   * @param room         Room the entity is in after the change
+   * @param previousRoom Room before a move, or the same as room
+   * @param state        Presence, clock or closed state after the change
+   */
+  public static void publish(Kind kind, String name, String room, String previousRoom,
+      boolean state) {
+    Subscription[] current = subscriptions;
+    if (current.length == 0) {
+      return;
+    }
+    Change change = new Change(kind, name, room, previousRoom, state);
+    for (Subscription subscription : current) {
+      if (subscription.filter.test(change)) {
+        subscription.offer(change);
+      }
+    }
+  }
+}
@@ -0,0 +1,66 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChangeFeedBenchmark measures what the change feed costs the code that moves students
+ * It times Student.setLocation with nobody subscribed, with a subscriber watching a room the
+ * moves never touch, and with a slow subscriber watching everything that takes a while over
+ * each batch. For the slow one it reports how many changes were published, delivered and
+ * coalesced, and the largest batch, which stays bounded by the number of students
+ *
+ * Usage: java ChangeFeedBenchmark [students] [moves]
+ */
+public class ChangeFeedBenchmark {
+  // Time the slow subscriber spends on each batch, like a display board redrawing
+  private static final int SLOW_BATCH_MS = 20;
+
+  public static void main(String[] args) throws InterruptedException {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+    int moves = args.length > 1 ? Integer.parseInt(args[1]) : 20_000_000;
+    List<Student> students = SyntheticRoster.students(studentCount);
+    String[] rooms = {"Art", "Game", "Building", "Gym"};
+
+    move(students, rooms, moves);  // Warm up
+    report("No subscribers", move(students, rooms, moves), moves);
+
+    ChangeFeed.Subscription elsewhere = ChangeFeed.subscribe(ChangeFeed.forRoom("Library"),
+        batch -> { });
+    report("Filtered subscriber", move(students, rooms, moves / 10), moves / 10);
+    elsewhere.close();
+
+    AtomicLong delivered = new AtomicLong();
+    AtomicInteger largestBatch = new AtomicInteger();
+    ChangeFeed.Subscription slow = ChangeFeed.subscribe(change -> true, batch -> {
+      delivered.addAndGet(batch.size());
+      largestBatch.accumulateAndGet(batch.size(), Math::max);
+      try {
+        Thread.sleep(SLOW_BATCH_MS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    int slowMoves = moves / 10;
+    report("Slow subscriber", move(students, rooms, slowMoves), slowMoves);
+    Thread.sleep(4 * SLOW_BATCH_MS);  // Let the last batch through
+    slow.close();
+    System.out.printf("  %,d changes published, %,d delivered, %,d coalesced, largest batch %,d"
+        + " (%,d students)%n", slowMoves, delivered.get(), slow.getCoalesced(), largestBatch.get(),
+        studentCount);
+  }
+
+  /**
+   * @return Nanoseconds taken to make the moves
+   */
+  private static long move(List<Student> students, String[] rooms, int moves) {
+    long start = System.nanoTime();
+    for (int i = 0; i < moves; i++) {
+      students.get(i % students.size()).setLocation(rooms[(i / students.size()) % rooms.length]);
+    }
+    return System.nanoTime() - start;
+  }
+
+  private static void report(String label, long nanos, int moves) {
+    System.out.printf("%-20s %6.1f ns per setLocation%n", label, (double) nanos / moves);
+  }
+}
@@ -0,0 +1,102 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * CommandOutput lets a thread capture everything printed to System.out while it runs a command,
+ * without affecting output printed by other threads at the same time
+ * Once installed, System.out writes through to a per-thread target, which is the real console
+ * unless the thread is inside capture()
+ */
+public class CommandOutput extends OutputStream {
+  // Output target for the current thread; null means the real console
+  private static final ThreadLocal<OutputStream> target = new ThreadLocal<>();
+
+  private static PrintStream console;  // The original System.out
+
+  /**
+   * Replaces System.out with a per-thread routing stream Safe to call more than once
+   */
+  public static synchronized void install() {
+    if (console != null) {
+      return;
+    }
+    console = System.out;
+    System.setOut(new PrintStream(new CommandOutput(), true, StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Runs an action and returns everything it printed to System.out on this thread
+   *
+   * @param action The action to run
+   * @return Captured output
+   */
+  public static String capture(Runnable action) {
+    install();
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    OutputStream previous = target.get();
+    target.set(buffer);
+    try {
+      action.run();
+      EventSink.flush();
+      System.out.flush();
+    } finally {
+      target.set(previous);
+    }
+    return buffer.toString(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Runs an action with everything it prints to System.out on this thread discarded
+   *
+   * @param action The action to run
+   */
+  public static void discard(Runnable action) {
+    install();
+    OutputStream previous = target.get();
+    target.set(OutputStream.nullOutputStream());
+    try {
+      action.run();
+      EventSink.flush();
+      System.out.flush();
+    } finally {
+      target.set(previous);
+    }
+  }
+
+  /**
+   * @return The real console, whatever thread is asking and whether or not it is capturing
+   */
+  public static OutputStream console() {
+    PrintStream original = console;
+    return original != null ? original : System.out;
+  }
+
+  /**
+   * @return Where System.out output from the current thread is going
+   */
+  public static OutputStream current() {
+    if (console == null) {
+      return System.out;
+    }
+    OutputStream out = target.get();
+    return out != null ? out : console;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    current().write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    current().write(b, off, len);
+  }
+
+  @Override
+  public void flush() throws IOException {
+    current().flush();
+  }
+}
@@ -0,0 +1,362 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DismissalDesk handles end-of-day pickups
+ * Pickup requests go into a concurrent queue drained by several worker threads. Each worker
+ * takes a batch of requests, checks each guardian against the student's authorised pickups
+ * without holding any lock, then releases every authorised student in one pass under the state
+ * write lock. A student is only released if they are still present at that moment, so two
+ * guardians arriving together for the same child can never both be approved, and if the roster
+ * was reloaded in between, the guardian is checked again against the student now on it. Every
+ * outcome is appended to the dismissal log
+ */
+public class DismissalDesk {
+  // Directory and file the dismissal log is appended to
+  private static final String LOG_DIR = "dismissals";
+  private static final String LOG_FILE = "dismissals.csv";
+
+  // Most requests a worker handles under one hold of the write lock
+  private static final int MAX_BATCH = 64;
+
+  private static final int WORKERS = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  /**
+   * Outcome of a pickup request
+   */
+  public enum Outcome {
+    RELEASED,          // The student was handed over to the guardian
+    NOT_AUTHORIZED,    // The person is not on the student's authorised pickup list
+    ALREADY_RELEASED,  // Someone else picked the student up today
+    NOT_PRESENT,       // The student is not marked present
+    UNKNOWN_STUDENT,   // No student has that name
+    FAILED             // The desk hit an error deciding the request; nobody was released
+  }
+
+  /**
+   * Result of a pickup request, with the message to show the person at the desk
+   */
+  public static class Result {
+    private final Outcome outcome;
+    private final String message;
+    private final long latencyNanos;
+
+    Result(Outcome outcome, String message, long latencyNanos) {
+      this.outcome = outcome;
+      this.message = message;
+      this.latencyNanos = latencyNanos;
+    }
+
+    public Outcome getOutcome() {
+      return outcome;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    /**
+     * @return Time from submission to decision
+     */
+    public long getLatencyNanos() {
+      return latencyNanos;
+    }
+  }
+
+  /**
+   * A queued pickup request
+   */
+  private static class Request {
+    final String studentName;
+    final String guardianName;
+    final String phone;  // Digits only, or null if not given
+    final long submitted = System.nanoTime();
+    final CompletableFuture<Result> result = new CompletableFuture<>();
+
+    Student student;
+    Guardian guardian;   // Matching guardian once authorised
+    Outcome outcome;
+    String message;
+
+    Request(String studentName, String guardianName, String phone) {
+      this.studentName = studentName;
+      this.guardianName = guardianName;
+      this.phone = phone;
+    }
+  }
+
+  /**
+   * Who picked a student up, so a second request can be told
+   */
+  private static class Release {
+    final LocalDate day;
+    final String text;
+
+    Release(LocalDate day, String text) {
+      this.day = day;
+      this.text = text;
+    }
+  }
+
+  private static final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private static final Map<Student, Release> releases = new ConcurrentHashMap<>();
+  private static volatile boolean started = false;
+  private static Writer log;  // Guarded by the DismissalDesk class lock
+
+  private static final AtomicLong releasedCount = new AtomicLong();
+  private static final AtomicLong deniedCount = new AtomicLong();
+  private static final AtomicLong totalLatencyNanos = new AtomicLong();
+
+  /**
+   * Queues a pickup request
+   *
+   * @param studentName  Full name of the student
+   * @param guardianName Full name of the person collecting them
+   * @param phone        The guardian's phone number, or null to match on name alone
+   * @return Future completed once the request has been decided
+   */
+  public static CompletableFuture<Result> submit(String studentName, String guardianName,
+      String phone) {
+    startWorkers();
+    Request request = new Request(studentName, guardianName,
+        phone == null ? null : digitsOf(phone));
+    queue.add(request);
+    return request.result;
+  }
+
+  /**
+   * @return Status lines with queue length and totals so far
+   */
+  public static String status() {
+    long decided = releasedCount.get() + deniedCount.get();
+    return "Dismissal queue: " + queue.size() + " waiting, " + releasedCount.get()
+        + " released, " + deniedCount.get() + " denied"
+        + (decided > 0 ? String.format(", average decision %.2f ms",
+            totalLatencyNanos.get() / 1e6 / decided) : "")
+        + "\n";
+  }
+
+  /**
+   * Forgets who picked up whom, for when the roster is reloaded and the students remembered may
+   * no longer be the ones on it
+   */
+  public static void forgetReleases() {
+    releases.clear();
+  }
+
+  /**
+   * Starts the worker threads on first use
+   */
+  private static synchronized void startWorkers() {
+    if (started) {
+      return;
+    }
+    for (int i = 0; i < WORKERS; i++) {
+      Thread worker = new Thread(DismissalDesk::work, "dismissal-" + i);
+      worker.setDaemon(true);
+      worker.start();
+    }
+    started = true;
+  }
+
+  /**
+   * Worker loop: takes a batch, authorises it in parallel with other workers, then releases
+   * the authorised students under a single hold of the write lock
+   */
+  private static void work() {
+    List<Request> batch = new ArrayList<>(MAX_BATCH);
+    while (true) {
+      try {
+        batch.add(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      queue.drainTo(batch, MAX_BATCH - 1);
+
+      // An error fails the undecided requests of this batch, never the worker
+      try {
+        boolean anyAuthorized = false;
+        for (Request request : batch) {
+          anyAuthorized |= authorize(request);
+        }
+        if (anyAuthorized) {
+          // Status messages from marking absent are replaced by the pickup result
+          CommandOutput.discard(() -> Main.applyChange(() -> release(batch)));
+        }
+      } catch (RuntimeException e) {
+        fail(batch, e);
+      }
+      try {
+        finish(batch);
+      } catch (RuntimeException e) {
+        fail(batch, e);
+        for (Request request : batch) {
+          request.result.complete(new Result(request.outcome, request.message,
+              System.nanoTime() - request.submitted));
+        }
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Marks every request in a batch that was not decided, or was authorised but not released,
+   * as failed
+   *
+   * @param batch The batch being handled
+   * @param error The error that stopped it
+   */
+  private static void fail(List<Request> batch, RuntimeException error) {
+    System.out.println("Dismissal desk error: " + error);
+    for (Request request : batch) {
+      if (request.outcome == null) {
+        request.outcome = Outcome.FAILED;
+        request.message = "Could not decide pickup of " + request.studentName + " ("
+            + error + "); please try again";
+      }
+    }
+  }
+
+  /**
+   * Checks a request against the student's authorised pickups Reads only immutable data, so
+   * needs no lock; release checks again if the student was replaced since
+   *
+   * @param request The request to check
+   * @return true if the request is authorised and waiting to be released
+   */
+  private static boolean authorize(Request request) {
+    request.student = Main.findStudentByName(request.studentName);
+    if (request.student == null) {
+      request.outcome = Outcome.UNKNOWN_STUDENT;
+      request.message = "Student " + request.studentName + " not found!";
+      return false;
+    }
+
+    for (Guardian guardian : request.student.getAuthPickUp()) {
+      if (guardian.getName().equalsIgnoreCase(request.guardianName)
+          && guardian != GuardianPool.UNKNOWN
+          && (request.phone == null || request.phone.equals(digitsOf(guardian.getPhoneNumber())))) {
+        request.guardian = guardian;
+        return true;
+      }
+    }
+    request.outcome = Outcome.NOT_AUTHORIZED;
+    request.message = "DO NOT RELEASE: " + request.guardianName + " is not authorized to pick up "
+        + request.student.getName();
+    return false;
+  }
+
+  /**
+   * Releases every authorised student in a batch Runs under the state write lock, so the
+   * presence check and the release cannot be split by another worker
+   *
+   * @param batch Requests, some already decided
+   * @return Command lines that reproduce the releases on replication followers
+   */
+  private static List<String> release(List<Request> batch) {
+    List<String> replicated = new ArrayList<>();
+    for (Request request : batch) {
+      if (request.guardian == null) {
+        continue;
+      }
+      if (Main.findStudentByName(request.studentName) != request.student) {
+        // The roster was reloaded since the request was checked, so check the new record
+        request.guardian = null;
+        if (!authorize(request)) {
+          continue;
+        }
+      }
+      Student student = request.student;
+      if (!student.isPresent()) {
+        Release earlier = releases.get(student);
+        if (earlier != null && earlier.day.equals(LocalDate.now())) {
+          request.outcome = Outcome.ALREADY_RELEASED;
+          request.message = student.getName() + " was already " + earlier.text;
+        } else {
+          request.outcome = Outcome.NOT_PRESENT;
+          request.message = student.getName() + " is not marked present.";
+        }
+        continue;
+      }
+
+      String room = student.getLocation();
+      student.markAbsent();
+      Main.removeStudentFromAllRooms(student);
+      replicated.add("MARK_ABSENT " + student.getName());
+
+      String text = "released to " + request.guardian.getName() + " ("
+          + request.guardian.getRelationshipToChild() + ") at "
+          + Shift.formatTime(LocalTime.now().toSecondOfDay() / 60);
+      releases.put(student, new Release(LocalDate.now(), text));
+      request.outcome = Outcome.RELEASED;
+      request.message = student.getName() + " " + text
+          + (room.equals("N/A") ? "" : " from " + room);
+    }
+    return replicated;
+  }
+
+  /**
+   * Logs and completes every request in a batch
+   * @param batch Decided requests
+   */
+  private static void finish(List<Request> batch) {
+    long now = System.nanoTime();
+    writeLog(batch);
+    for (Request request : batch) {
+      long latency = now - request.submitted;
+      totalLatencyNanos.addAndGet(latency);
+      (request.outcome == Outcome.RELEASED ? releasedCount : deniedCount).incrementAndGet();
+      request.result.complete(new Result(request.outcome, request.message, latency));
+    }
+  }
+
+  /**
+   * Appends one "epochMillis,student,guardian,outcome" line per request to the dismissal log,
+   * with names quoted as the exporter quotes them
+   * @param batch Decided requests
+   */
+  private static synchronized void writeLog(List<Request> batch) {
+    try {
+      if (log == null) {
+        File dir = new File(LOG_DIR);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+          throw new IOException("could not create " + LOG_DIR);
+        }
+        log = new FileWriter(new File(dir, LOG_FILE), true);
+      }
+      long time = System.currentTimeMillis();
+      for (Request request : batch) {
+        log.write(time + "," + StateExporter.csvValue(request.studentName) + ","
+            + StateExporter.csvValue(request.guardianName) + "," + request.outcome + "\n");
+      }
+      log.flush();
+    } catch (IOException e) {
+      System.out.println("Could not write dismissal log: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return The digits in a phone number, so "(123) 456-7890" matches "1234567890"
+   */
+  private static String digitsOf(String phone) {
+    StringBuilder digits = new StringBuilder(phone.length());
+    for (int i = 0; i < phone.length(); i++) {
+      if (Character.isDigit(phone.charAt(i))) {
+        digits.append(phone.charAt(i));
+      }
+    }
+    return digits.toString();
+  }
+}
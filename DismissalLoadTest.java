@@ -0,0 +1,122 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * DismissalLoadTest drives the DismissalDesk the way a busy 3 PM pickup line does
+ * It loads a synthetic roster, marks everyone present and spreads them over rooms, then has
+ * many client threads submit pickup requests at once. Every child gets requests from two of
+ * their guardians at the same moment, and some requests come from people who are not
+ * authorised. The run checks that no child is released twice, that every child with a valid
+ * guardian was released, that nobody unauthorised got a child and that no request failed, then
+ * reports throughput and latency
+ *
+ * Usage: java DismissalLoadTest [students] [clientThreads]
+ */
+public class DismissalLoadTest {
+  public static void main(String[] args) throws Exception {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 32;
+
+    SyntheticRoster.loadIntoRooms(studentCount);
+
+    // Two authorised requests per child, racing each other, plus an unauthorised one for 10%
+    List<String[]> requests = new ArrayList<>();
+    for (int i = 0; i < studentCount; i++) {
+      String student = SyntheticRoster.student(i);
+      requests.add(new String[] {student, SyntheticRoster.mother(i)});
+      requests.add(new String[] {student, SyntheticRoster.father(i)});
+      if (i % 10 == 0) {
+        requests.add(new String[] {student, "Stranger" + i + " Danger"});
+      }
+    }
+    Collections.shuffle(requests, new Random(1));
+
+    Map<String, AtomicInteger> releasedPerStudent = new ConcurrentHashMap<>();
+    AtomicInteger strangerReleases = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    AtomicReference<String> firstFailure = new AtomicReference<>();
+    long[] latencies = new long[requests.size()];
+    AtomicInteger next = new AtomicInteger();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(clients);
+
+    for (int c = 0; c < clients; c++) {
+      new Thread(() -> {
+        try {
+          start.await();
+          int i;
+          while ((i = next.getAndIncrement()) < requests.size()) {
+            String[] request = requests.get(i);
+            try {
+              CompletableFuture<DismissalDesk.Result> future =
+                  DismissalDesk.submit(request[0], request[1], null);
+              DismissalDesk.Result result = future.get();
+              latencies[i] = result.getLatencyNanos();
+              if (result.getOutcome() == DismissalDesk.Outcome.RELEASED) {
+                releasedPerStudent.computeIfAbsent(request[0], k -> new AtomicInteger())
+                    .incrementAndGet();
+                if (request[1].startsWith("Stranger")) {
+                  strangerReleases.incrementAndGet();
+                }
+              }
+            } catch (ExecutionException | RuntimeException e) {
+              failures.incrementAndGet();
+              firstFailure.compareAndSet(null, request[0] + " / " + request[1] + ": " + e);
+            }
+          }
+        } catch (InterruptedException e) {
+          failures.incrementAndGet();
+          firstFailure.compareAndSet(null, "client thread interrupted");
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    long elapsed = System.nanoTime() - begin;
+
+    long doubleReleases = releasedPerStudent.values().stream().filter(n -> n.get() > 1).count();
+    int stillPresent = 0;
+    for (int i = 0; i < studentCount; i++) {
+      Student student = Main.findStudentByName(SyntheticRoster.student(i));
+      if (student.isPresent() || !student.getLocation().equals("N/A")) {
+        stillPresent++;
+      }
+    }
+
+    Arrays.sort(latencies);
+    System.out.println("Requests: " + requests.size() + " from " + clients + " client threads");
+    System.out.printf("Elapsed: %.1f ms, throughput: %,.0f requests/s%n", elapsed / 1e6,
+        requests.size() / (elapsed / 1e9));
+    System.out.printf("Latency p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+        latencies[latencies.length / 2] / 1e6, latencies[latencies.length * 99 / 100] / 1e6,
+        latencies[latencies.length - 1] / 1e6);
+    System.out.println("Children released: " + releasedPerStudent.size() + " of " + studentCount);
+    System.out.println("Double releases: " + doubleReleases);
+    System.out.println("Released to unauthorised people: " + strangerReleases.get());
+    System.out.println("Children still present or in a room: " + stillPresent);
+    System.out.println("Failed requests: " + failures.get()
+        + (firstFailure.get() != null ? "; the first was " + firstFailure.get() : ""));
+    System.out.print(DismissalDesk.status());
+
+    boolean ok = doubleReleases == 0 && strangerReleases.get() == 0 && stillPresent == 0
+        && releasedPerStudent.size() == studentCount && failures.get() == 0;
+    System.out.println(ok ? "PASS" : "FAIL");
+    if (!ok) {
+      System.exit(1);
+    }
+  }
+}
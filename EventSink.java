@@ -0,0 +1,299 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * EventSink takes status messages off the hot paths of Room, Student, Staff and the loaders
+ * Callers publish a typed event into a pre-allocated ring buffer and return immediately; a single
+ * consumer thread formats the events and writes them in batches, so callers never wait on the
+ * console or contend for the System.out lock. Each event remembers where the publishing thread's
+ * output was going, so captured command output still receives its own messages
+ */
+public class EventSink {
+  // Ring size; must be a power of two
+  private static final int CAPACITY = 1 << 14;
+  private static final int MASK = CAPACITY - 1;
+
+  // Most bytes formatted before a batch is written out
+  private static final int MAX_BATCH_CHARS = 1 << 16;
+
+  /**
+   * Kinds of event, each with a fixed message format
+   */
+  public enum Type {
+    STUDENT_ADDED,          // subject added to place
+    STUDENT_NOT_PRESENT,    // subject cannot be added, not present
+    STUDENT_ALREADY_IN_ROOM,
+    ROOM_AT_CAPACITY,       // subject cannot be added, place is full at number students
+    STAFF_ASSIGNED,         // subject assigned to place
+    STAFF_NOT_CLOCKED_IN,
+    STAFF_ALREADY_IN_ROOM,
+    REMOVED_FROM_ROOM,      // subject removed from place
+    MARKED_PRESENT,
+    ALREADY_PRESENT,
+    MARKED_ABSENT,
+    ALREADY_ABSENT,
+    CLOCKED_IN,
+    ALREADY_CLOCKED_IN,
+    CLOCKED_OUT,
+    ALREADY_CLOCKED_OUT,
+    LOADED,                 // subject loaded as a place ("student", "staff", "room")
+    LOAD_FINISHED,          // number of place loaded
+    MALFORMED_LINE,         // subject is the skipped line
+    MESSAGE                 // subject is the complete message
+  }
+
+  /**
+   * Pre-allocated ring slot, reused for every event that lands in it
+   */
+  private static class Event {
+    Type type;
+    String subject;
+    String place;
+    int number;
+    OutputStream target;
+  }
+
+  private static final Event[] ring = new Event[CAPACITY];
+
+  // Sequence number of the event published in each slot, or -1 if none yet
+  private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+  // Next sequence number to hand to a producer
+  private static final AtomicLong claimed = new AtomicLong();
+
+  // Number of events formatted and written; every sequence below this has been consumed
+  private static volatile long consumed = 0;
+
+  private static volatile boolean consumerParked = false;
+  private static final Thread consumer;
+
+  static {
+    for (int i = 0; i < CAPACITY; i++) {
+      ring[i] = new Event();
+      published.set(i, -1);
+    }
+    consumer = new Thread(EventSink::consume, "event-sink");
+    consumer.setDaemon(true);
+    consumer.start();
+  }
+
+  /**
+   * Publishes an event about a single subject
+   * @param type Kind of event
+   * @param subject Name of the person or text the event is about
+   */
+  public static void publish(Type type, String subject) {
+    publish(type, subject, null, 0);
+  }
+
+  /**
+   * Publishes an event about a subject and a place
+   * @param type Kind of event
+   * @param subject Name of the person the event is about
+   * @param place Room name or entity kind
+   */
+  public static void publish(Type type, String subject, String place) {
+    publish(type, subject, place, 0);
+  }
+
+  /**
+   * Publishes an event Blocks only if the consumer has fallen a full ring behind
+   *
+   * @param type    Kind of event
+   * @param subject Name of the person or text the event is about
+   * @param place   Room name or entity kind, or null
+   * @param number  Count or capacity, if the message has one
+   */
+  public static void publish(Type type, String subject, String place, int number) {
+    publish(type, subject, place, number, CommandOutput.current());
+  }
+
+  /**
+   * Publishes a message to the console even when the publishing thread's output is being
+   * captured or discarded, for alerts that whoever is at the console must see
+   *
+   * @param message The complete message
+   */
+  public static void publishToConsole(String message) {
+    publish(Type.MESSAGE, message, null, 0, CommandOutput.console());
+  }
+
+  private static void publish(Type type, String subject, String place, int number,
+      OutputStream target) {
+    long seq = claimed.getAndIncrement();
+    while (seq - consumed >= CAPACITY) {
+      wakeConsumer();
+      Thread.onSpinWait();
+    }
+
+    Event event = ring[(int) (seq & MASK)];
+    event.type = type;
+    event.subject = subject;
+    event.place = place;
+    event.number = number;
+    event.target = target;
+    published.set((int) (seq & MASK), seq);
+
+    if (consumerParked) {
+      wakeConsumer();
+    }
+  }
+
+  /**
+   * Waits until every event published before this call has been written out Used at command
+   * boundaries so messages appear before the next prompt
+   */
+  public static void flush() {
+    long target = claimed.get();
+    while (consumed < target) {
+      wakeConsumer();
+      LockSupport.parkNanos(10_000);
+    }
+  }
+
+  /**
+   * Wakes the consumer thread if it is parked
+   */
+  private static void wakeConsumer() {
+    LockSupport.unpark(consumer);
+  }
+
+  /**
+   * Consumer loop: drains published events in sequence order, formatting consecutive events for
+   * the same output into one batch
+   */
+  private static void consume() {
+    StringBuilder batch = new StringBuilder(MAX_BATCH_CHARS);
+    OutputStream batchTarget = null;
+    long seq = consumed;
+
+    while (true) {
+      int index = (int) (seq & MASK);
+      if (published.get(index) == seq) {
+        Event event = ring[index];
+        if (batchTarget != event.target || batch.length() >= MAX_BATCH_CHARS) {
+          write(batchTarget, batch);
+          consumed = seq;
+          batchTarget = event.target;
+        }
+        format(batch, event);
+        event.subject = null;  // Drop references so the ring does not pin old objects
+        event.place = null;
+        event.target = null;
+        seq++;
+        continue;
+      }
+
+      // Nothing more published yet: write what we have and let producers reuse the slots
+      if (batch.length() > 0) {
+        write(batchTarget, batch);
+      }
+      if (consumed != seq) {
+        consumed = seq;
+        continue;
+      }
+
+      // The flag is set before the ring is checked again, so a producer that publishes after
+      // the check sees it and unparks us; an idle consumer uses no CPU at all
+      consumerParked = true;
+      if (published.get(index) != seq) {
+        LockSupport.park();
+      }
+      consumerParked = false;
+    }
+  }
+
+  /**
+   * Writes a formatted batch to its target and clears it
+   * @param target Where the batch goes
+   * @param batch Formatted messages
+   */
+  private static void write(OutputStream target, StringBuilder batch) {
+    if (target == null || batch.length() == 0) {
+      batch.setLength(0);
+      return;
+    }
+    try {
+      target.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+      target.flush();
+    } catch (IOException e) {
+      // Output is best effort; a closed capture buffer or console cannot be reported anywhere
+    }
+    batch.setLength(0);
+  }
+
+  /**
+   * Formats one event as the line the caller used to print directly
+   * @param sb Builder to append to
+   * @param e The event to format
+   */
+  private static void format(StringBuilder sb, Event e) {
+    switch (e.type) {
+      case STUDENT_ADDED:
+        sb.append("Student ").append(e.subject).append(" added to ").append(e.place);
+        break;
+      case STUDENT_NOT_PRESENT:
+        sb.append("Cannot add student ").append(e.subject).append(" - student is not present.");
+        break;
+      case STUDENT_ALREADY_IN_ROOM:
+        sb.append("Student ").append(e.subject).append(" is already in this room.");
+        break;
+      case ROOM_AT_CAPACITY:
+        sb.append("Cannot add student ").append(e.subject).append(" - room ").append(e.place)
+            .append(" is at capacity (").append(e.number).append(" students).");
+        break;
+      case STAFF_ASSIGNED:
+        sb.append("Staff ").append(e.subject).append(" assigned to ").append(e.place);
+        break;
+      case STAFF_NOT_CLOCKED_IN:
+        sb.append("Cannot add staff ").append(e.subject).append(" - staff is not clocked in.");
+        break;
+      case STAFF_ALREADY_IN_ROOM:
+        sb.append("Staff ").append(e.subject).append(" is already assigned to this room.");
+        break;
+      case REMOVED_FROM_ROOM:
+        sb.append("Removed ").append(e.subject).append(" from ").append(e.place);
+        break;
+      case MARKED_PRESENT:
+        sb.append(e.subject).append(" marked present");
+        break;
+      case ALREADY_PRESENT:
+        sb.append("Student is already present!");
+        break;
+      case MARKED_ABSENT:
+        sb.append(e.subject).append(" marked absent");
+        break;
+      case ALREADY_ABSENT:
+        sb.append("Student is already absent!");
+        break;
+      case CLOCKED_IN:
+        sb.append(e.subject).append(" clocked in");
+        break;
+      case ALREADY_CLOCKED_IN:
+        sb.append("Staff is already clocked in!");
+        break;
+      case CLOCKED_OUT:
+        sb.append(e.subject).append(" clocked out");
+        break;
+      case ALREADY_CLOCKED_OUT:
+        sb.append("Staff is already clocked out!");
+        break;
+      case LOADED:
+        sb.append("Loaded ").append(e.place).append(": ").append(e.subject);
+        break;
+      case LOAD_FINISHED:
+        sb.append("Finished loading ").append(e.number).append(" ").append(e.place).append(".");
+        break;
+      case MALFORMED_LINE:
+        sb.append("Skipping malformed line: ").append(e.subject);
+        break;
+      default:
+        sb.append(e.subject);
+    }
+    sb.append("\n");
+  }
+}
@@ -0,0 +1,120 @@
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * EventSinkBenchmark compares the cost that status messages add to the assignment hot path
+ * when printed synchronously to a slow console versus published to the EventSink
+ * Several threads repeatedly mark students present and absent; the console is simulated by a
+ * stream that pauses on every flush, like a terminal or pipe that cannot keep up
+ *
+ * Usage: java EventSinkBenchmark [threads] [operationsPerThread] [flushDelayMicros]
+ */
+public class EventSinkBenchmark {
+  public static void main(String[] args) throws Exception {
+    int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+    int operations = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    long delayMicros = args.length > 2 ? Long.parseLong(args[2]) : 20;
+
+    PrintStream realOut = System.out;
+    System.setOut(new PrintStream(new SlowConsole(delayMicros), true, StandardCharsets.UTF_8));
+    try {
+      long syncNanos = run(threads, operations, false);
+      long asyncNanos = run(threads, operations, true);
+      long drainStart = System.nanoTime();
+      EventSink.flush();
+      long drainNanos = System.nanoTime() - drainStart;
+
+      long total = (long) threads * operations;
+      realOut.println("Threads: " + threads + ", operations: " + total
+          + ", console delay per flush: " + delayMicros + " us");
+      report(realOut, "Synchronous println", syncNanos, total);
+      report(realOut, "EventSink publish", asyncNanos, total);
+      realOut.printf("EventSink drained remaining output in %.1f ms%n", drainNanos / 1e6);
+    } finally {
+      System.setOut(realOut);
+    }
+  }
+
+  /**
+   * Runs the workload on several threads and returns the elapsed wall time
+   *
+   * @param threads Number of worker threads
+   * @param operations Mark present/absent pairs per thread
+   * @param useSink true to go through the EventSink, false to println directly
+   * @return Elapsed nanoseconds until every worker finished
+   */
+  private static long run(int threads, int operations, boolean useSink)
+      throws InterruptedException {
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      Student student = new Student("Bench Student" + t, 1, "", new Guardian[0], "", false, "");
+      Thread worker = new Thread(() -> {
+        try {
+          start.await();
+        } catch (InterruptedException e) {
+          return;
+        }
+        for (int i = 0; i < operations; i++) {
+          if (useSink) {
+            student.markPresent();
+            student.markAbsent();
+          } else {
+            student.setPresent(true);
+            System.out.println(student.getName() + " marked present");
+            student.setPresent(false);
+            System.out.println(student.getName() + " marked absent");
+          }
+        }
+        done.countDown();
+      });
+      worker.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await(10, TimeUnit.MINUTES);
+    return System.nanoTime() - begin;
+  }
+
+  /**
+   * Prints throughput for one run
+   */
+  private static void report(PrintStream out, String label, long nanos, long operations) {
+    out.printf("%-20s %8.1f ms  %,12.0f ops/s%n", label, nanos / 1e6,
+        operations * 2 / (nanos / 1e9));
+  }
+
+  /**
+   * Output stream that discards bytes and busy-waits on every flush
+   */
+  private static class SlowConsole extends OutputStream {
+    private final long delayNanos;
+    private final AtomicLong bytes = new AtomicLong();
+
+    SlowConsole(long delayMicros) {
+      this.delayNanos = delayMicros * 1000;
+    }
+
+    @Override
+    public void write(int b) {
+      bytes.incrementAndGet();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      bytes.addAndGet(len);
+    }
+
+    @Override
+    public void flush() {
+      long until = System.nanoTime() + delayNanos;
+      while (System.nanoTime() < until) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+}
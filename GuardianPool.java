@@ -0,0 +1,290 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * GuardianPool shares one Guardian object between every student who lists the same person, so
+ * siblings point at the same parents instead of each holding a copy
+ * Guardians are shared only when their name, relationship and phone are written exactly alike,
+ * so every child shows their guardians as their own roster row gives them. Shared guardians
+ * must be treated as read-only; a setter would change them for every child
+ *
+ * On top of the pool sits a family index from each person to the students who list them, which
+ * answers SIBLINGS and FAMILY without searching the roster. People are matched on their name
+ * with case and spacing ignored and the digits of their phone number, so "Jane Doe" with
+ * "(123) 456-7890" on one row and "jane doe" with "123-456-7890" on another are one person. The
+ * index is built the first time it is used and then kept up to date as students are loaded.
+ * It reads students' guardian text as written, so indexing does not decode anyone's guardians
+ */
+public class GuardianPool {
+  // Stands in for every malformed guardian entry; never part of a family
+  public static final Guardian UNKNOWN = new Guardian("Unknown", "Unknown", "Unknown");
+
+  // Guardians by a hash of their phone digits and name; each value is one Guardian, or an array
+  // of them in the rare case that different people share a hash. Keying on a number rather than
+  // a string keeps the pool much smaller than the copies it replaces
+  private static final Map<Long, Object> pool = new ConcurrentHashMap<>();
+  private static final LongAdder distinct = new LongAdder();
+  private static final LongAdder requests = new LongAdder();
+  private static volatile boolean enabled = true;
+
+  // Family index: person key to the students listing them, and normalized name to person keys
+  private static Map<String, Set<Student>> children;  // null until first used
+  private static final Map<String, Set<String>> peopleByName = new HashMap<>();
+
+  /**
+   * Returns the shared Guardian for a person, creating it the first time they are seen
+   *
+   * @param name         Guardian's name
+   * @param relationship Relationship to the child
+   * @param phone        Phone number
+   * @return A Guardian with these details, shared with every other student who lists them
+   */
+  public static Guardian intern(String name, String relationship, String phone) {
+    if (!enabled) {
+      return new Guardian(name, relationship, phone);
+    }
+    requests.increment();
+    Long key = hashOf(name, phone);
+    Guardian guardian = find(pool.get(key), name, relationship, phone);
+    if (guardian != null) {
+      return guardian;
+    }
+
+    Guardian[] result = new Guardian[1];
+    pool.compute(key, (k, bucket) -> {
+      result[0] = find(bucket, name, relationship, phone);
+      if (result[0] != null) {
+        return bucket;
+      }
+      result[0] = new Guardian(name, relationship, phone);
+      distinct.increment();
+      if (bucket == null) {
+        return result[0];
+      }
+      Guardian[] old = bucket instanceof Guardian ? new Guardian[] {(Guardian) bucket}
+          : (Guardian[]) bucket;
+      Guardian[] grown = Arrays.copyOf(old, old.length + 1);
+      grown[old.length] = result[0];
+      return grown;
+    });
+    return result[0];
+  }
+
+  /**
+   * @return {distinct guardians, guardians handed out} since the program started
+   */
+  public static long[] stats() {
+    return new long[] {distinct.sum(), requests.sum()};
+  }
+
+  /**
+   * Turns sharing off or on, so benchmarks can compare against a Guardian per student
+   */
+  static void setEnabled(boolean enabled) {
+    GuardianPool.enabled = enabled;
+  }
+
+  /**
+   * Forgets every pooled guardian, for benchmarks
+   */
+  static synchronized void clear() {
+    pool.clear();
+    distinct.reset();
+    requests.reset();
+    children = null;
+    peopleByName.clear();
+  }
+
+  /**
+   * Adds students to the family index if it has been built Adding a student twice is harmless
+   *
+   * @param batch Students just loaded
+   */
+  public static synchronized void addChildren(List<Student> batch) {
+    if (children != null) {
+      index(batch);
+    }
+  }
+
+  /**
+   * Finds the other students who share a guardian with a student
+   *
+   * @param student The student
+   * @param roster  Every student, used to build the index on first use
+   * @return Siblings in the order they were loaded, without the student themself
+   */
+  public static synchronized List<Student> siblingsOf(Student student, List<Student> roster) {
+    ensureIndex(roster);
+    Set<Student> siblings = new LinkedHashSet<>();
+    for (Guardian guardian : student.getAuthPickUp()) {
+      if (guardian != UNKNOWN) {
+        siblings.addAll(children.getOrDefault(
+            personKey(guardian.getName(), guardian.getPhoneNumber()), Collections.emptySet()));
+      }
+    }
+    siblings.removeIf(s -> s.getName().equalsIgnoreCase(student.getName()));
+    return new ArrayList<>(siblings);
+  }
+
+  /**
+   * Finds the students listing a guardian
+   *
+   * @param name   Guardian's name, matched ignoring case and spacing
+   * @param phone  Phone number to tell apart people with the same name, or null for any
+   * @param roster Every student, used to build the index on first use
+   * @return For each matching person, a guardian entry and the students who list them
+   */
+  public static synchronized Map<Guardian, List<Student>> familyOf(String name, String phone,
+      List<Student> roster) {
+    ensureIndex(roster);
+    Map<Guardian, List<Student>> families = new LinkedHashMap<>();
+    for (String person : peopleByName.getOrDefault(normalizeName(name), Collections.emptySet())) {
+      if (phone != null && !person.endsWith('\u0000' + digitsOf(phone))) {
+        continue;
+      }
+      List<Student> kids = new ArrayList<>(children.get(person));
+      families.put(guardianFor(kids.get(0), person), kids);
+    }
+    return families;
+  }
+
+  private static void ensureIndex(List<Student> roster) {
+    if (children == null) {
+      children = new HashMap<>();
+      index(roster);
+    }
+  }
+
+  private static void index(List<Student> batch) {
+    for (Student student : batch) {
+      String text = student.getGuardianText();
+      if (text != null) {
+        RowParser.forEachGuardian(text, (name, phone) -> index(student, name, phone));
+        continue;
+      }
+      for (Guardian guardian : student.getAuthPickUp()) {
+        if (guardian != UNKNOWN) {
+          index(student, guardian.getName(), guardian.getPhoneNumber());
+        }
+      }
+    }
+  }
+
+  private static void index(Student student, String name, String phone) {
+    String person = personKey(name, phone);
+    children.computeIfAbsent(person, k -> new LinkedHashSet<>()).add(student);
+    peopleByName.computeIfAbsent(normalizeName(name), k -> new LinkedHashSet<>()).add(person);
+  }
+
+  /**
+   * @return The guardian entry a student has for a person
+   */
+  private static Guardian guardianFor(Student student, String person) {
+    for (Guardian guardian : student.getAuthPickUp()) {
+      if (personKey(guardian.getName(), guardian.getPhoneNumber()).equals(person)) {
+        return guardian;
+      }
+    }
+    return UNKNOWN;
+  }
+
+  /**
+   * @return The pooled guardian in a bucket with these details, or null if there is none
+   */
+  private static Guardian find(Object bucket, String name, String relationship, String phone) {
+    if (bucket instanceof Guardian) {
+      return matches((Guardian) bucket, name, relationship, phone) ? (Guardian) bucket : null;
+    }
+    if (bucket != null) {
+      for (Guardian guardian : (Guardian[]) bucket) {
+        if (matches(guardian, name, relationship, phone)) {
+          return guardian;
+        }
+      }
+    }
+    return null;
+  }
+
+  private static boolean matches(Guardian guardian, String name, String relationship,
+      String phone) {
+    return guardian.getName().equals(name) && guardian.getPhoneNumber().equals(phone)
+        && guardian.getRelationshipToChild().equals(relationship);
+  }
+
+  /**
+   * @return Pool key: the phone digits as a number mixed with a hash of the normalized name,
+   *         computed without building either string
+   */
+  private static long hashOf(String name, String phone) {
+    long digits = 0;
+    for (int i = 0; i < phone.length(); i++) {
+      char c = phone.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits = digits * 10 + (c - '0');
+      }
+    }
+    int nameHash = 0;
+    boolean space = false;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = nameHash != 0;
+      } else {
+        if (space) {
+          nameHash = nameHash * 31 + ' ';
+          space = false;
+        }
+        nameHash = nameHash * 31 + Character.toLowerCase(c);
+      }
+    }
+    return digits * 31 + nameHash;
+  }
+
+  /**
+   * @return Key for a person: their normalized name and the digits of their phone number
+   */
+  private static String personKey(String name, String phone) {
+    return normalizeName(name) + '\u0000' + digitsOf(phone);
+  }
+
+  /**
+   * @return The name in lower case with runs of spaces collapsed, so "Jane  DOE" matches
+   */
+  private static String normalizeName(String name) {
+    StringBuilder sb = new StringBuilder(name.length());
+    boolean space = false;
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (Character.isWhitespace(c)) {
+        space = sb.length() > 0;
+      } else {
+        if (space) {
+          sb.append(' ');
+          space = false;
+        }
+        sb.append(Character.toLowerCase(c));
+      }
+    }
+    return sb.toString();
+  }
+
+  private static String digitsOf(String phone) {
+    StringBuilder sb = new StringBuilder(phone.length());
+    for (int i = 0; i < phone.length(); i++) {
+      char c = phone.charAt(i);
+      if (c >= '0' && c <= '9') {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,71 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * GuardianPoolBenchmark measures the heap saved by sharing guardians between siblings
+ * It builds a roster of families with one to four children and one or two guardians each, so
+ * a realistic share of students have siblings, and loads it twice with every student's
+ * guardians decoded: once with a Guardian per student, as before, and once through the pool.
+ * It then times building the family index and answering SIBLINGS lookups
+ *
+ * Usage: java GuardianPoolBenchmark [students]
+ */
+public class GuardianPoolBenchmark {
+  private static final int LOOKUPS = 100_000;
+
+  public static void main(String[] args) {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    List<String> rows = SyntheticRoster.familyRows(studentCount);
+    long rowBytes = SyntheticRoster.residentBytes();
+
+    GuardianPool.setEnabled(false);
+    List<Student> separate = load(rows);
+    long separateBytes = SyntheticRoster.residentBytes() - rowBytes;
+    report("Guardian per student", separateBytes, separate.size());
+    separate = null;
+
+    GuardianPool.setEnabled(true);
+    GuardianPool.clear();
+    List<Student> shared = load(rows);
+    long sharedBytes = SyntheticRoster.residentBytes() - rowBytes;
+    report("Shared guardians", sharedBytes, shared.size());
+    long[] stats = GuardianPool.stats();
+    System.out.printf("%,d guardian entries, %,d distinct; saved %.1f MB (%.0f%% of the roster)%n",
+        stats[1], stats[0], (separateBytes - sharedBytes) / 1e6,
+        100.0 * (separateBytes - sharedBytes) / separateBytes);
+
+    long start = System.nanoTime();
+    GuardianPool.siblingsOf(shared.get(0), shared);
+    System.out.printf("Family index built in %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+    Random random = new Random(5);
+    int withSiblings = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < LOOKUPS; i++) {
+      if (!GuardianPool.siblingsOf(shared.get(random.nextInt(shared.size())), shared).isEmpty()) {
+        withSiblings++;
+      }
+    }
+    System.out.printf("SIBLINGS lookup: %.2f us each (%d%% had siblings)%n",
+        (System.nanoTime() - start) / 1e3 / LOOKUPS, 100 * withSiblings / LOOKUPS);
+  }
+
+  /**
+   * Parses rows the way LOAD_STUDENTS does and decodes every student's guardians
+   */
+  private static List<Student> load(List<String> rows) {
+    List<Student> students = new ArrayList<>(rows.size());
+    for (String row : rows) {
+      Student student = RowParser.parseStudent(row);
+      student.getAuthPickUp();
+      students.add(student);
+    }
+    return students;
+  }
+
+  private static void report(String label, long bytes, int students) {
+    System.out.printf("%-22s resident %7.1f MB (%3d bytes/student)%n", label, bytes / 1e6,
+        bytes / students);
+  }
+}
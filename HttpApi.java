@@ -0,0 +1,405 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * HttpApi serves students, staff and rooms as JSON over HTTP for the parent portal and staff
+ * tablets, alongside the console
+ *
+ * GET  /students, /staff, /rooms                   List everything of that kind
+ * GET  /students/(name), /staff/(name), /rooms/(name)
+ * POST /students/(name)/present, /students/(name)/absent
+ * POST /staff/(name)/clock-in, /staff/(name)/clock-out
+ * POST /rooms/(room)/students/(name), /rooms/(room)/staff/(name)   Assign to the room
+ *
+ * Names are URL-encoded, e.g. /students/John%20Doe. Changes run as the matching console command,
+ * so they take the write lock and are replicated like any other. Every GET response carries an
+ * ETag built from the version counters of what it shows: the entity's own version for a single
+ * student, staff member or room, and the state version for a list. The rendered JSON is cached
+ * under that tag, so polling clients that send If-None-Match get a 304 without anything being
+ * rendered, and other clients get the cached bytes until something changes
+ *
+ * The API holds guardians' phone numbers, medications and allergies, so it listens on the
+ * loopback interface unless given another address, and checks a shared token sent as
+ * "Authorization: Bearer (token)". Every POST needs the token, and so does every GET when the
+ * server listens beyond loopback
+ */
+public class HttpApi {
+  // Cached responses kept before the cache is cleared and refilled
+  private static final int MAX_CACHED = 50_000;
+
+  private static final int WORKERS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  /**
+   * A rendered GET response and the tag of the state it was rendered from
+   */
+  private static class Cached {
+    final String etag;
+    final byte[] body;
+
+    Cached(String etag, byte[] body) {
+      this.etag = etag;
+      this.body = body;
+    }
+  }
+
+  private static final Map<String, Cached> cache = new ConcurrentHashMap<>();
+  private static HttpServer server;
+  private static byte[] token;           // Shared secret clients must present
+  private static boolean tokenForReads;  // Whether GETs need the token too
+
+  /**
+   * Starts serving on a loopback port with a newly generated token
+   * @param port Port to listen on, or 0 for any free port
+   * @return The port being served
+   * @throws IOException if the port cannot be opened
+   */
+  public static int start(int port) throws IOException {
+    return start(InetAddress.getLoopbackAddress(), port, null);
+  }
+
+  /**
+   * Starts serving on an address and port
+   *
+   * @param address     Address to listen on; anything but loopback makes GETs need the token
+   * @param port        Port to listen on, or 0 for any free port
+   * @param sharedToken Token clients must send, or null to generate one (see getToken)
+   * @return The port being served
+   * @throws IOException if the port cannot be opened
+   */
+  public static synchronized int start(InetAddress address, int port, String sharedToken)
+      throws IOException {
+    if (sharedToken == null || sharedToken.isEmpty()) {
+      byte[] random = new byte[16];
+      new SecureRandom().nextBytes(random);
+      sharedToken = HexFormat.of().formatHex(random);
+    }
+    token = sharedToken.getBytes(StandardCharsets.UTF_8);
+    tokenForReads = !address.isLoopbackAddress();
+
+    // Without this the server's small responses wait on Nagle's algorithm and delayed
+    // acknowledgements, adding about 40 ms to every keep-alive request
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+    server = HttpServer.create(new InetSocketAddress(address, port), 0);
+    ExecutorService workers = Executors.newFixedThreadPool(WORKERS, r -> {
+      Thread t = new Thread(r, "http-api");
+      t.setDaemon(true);
+      return t;
+    });
+    server.setExecutor(workers);
+    server.createContext("/students", authorized(HttpApi::handleStudents));
+    server.createContext("/staff", authorized(HttpApi::handleStaff));
+    server.createContext("/rooms", authorized(HttpApi::handleRooms));
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  /**
+   * @return The token clients must send
+   */
+  public static synchronized String getToken() {
+    return token == null ? null : new String(token, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Stops the server, letting requests in progress finish
+   */
+  public static synchronized void stop() {
+    if (server != null) {
+      server.stop(0);
+      server = null;
+    }
+  }
+
+  /**
+   * Wraps a handler so requests that need the token are refused without it
+   */
+  private static HttpHandler authorized(HttpHandler handler) {
+    return exchange -> {
+      boolean needsToken = tokenForReads || !exchange.getRequestMethod().equals("GET");
+      if (needsToken && !hasToken(exchange)) {
+        exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+        send(exchange, 401, error("Send the API token as Authorization: Bearer (token)"));
+        return;
+      }
+      handler.handle(exchange);
+    };
+  }
+
+  private static boolean hasToken(HttpExchange exchange) {
+    String header = exchange.getRequestHeaders().getFirst("Authorization");
+    if (header == null || !header.startsWith("Bearer ")) {
+      return false;
+    }
+    // Compared in constant time so the token cannot be guessed a character at a time
+    return MessageDigest.isEqual(token,
+        header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void handleStudents(HttpExchange exchange) throws IOException {
+    String[] path = pathOf(exchange);
+    if (path.length == 1) {
+      getList(exchange, "students", () -> renderList(Main.getStudents(), HttpApi::renderStudent));
+      return;
+    }
+    Student student = Main.findStudentByName(path[1]);
+    if (student == null) {
+      send(exchange, 404, error("Student " + path[1] + " not found"));
+    } else if (path.length == 2) {
+      getEntity(exchange, student, student.getVersion(), () -> renderStudent(student));
+    } else if (path.length == 3 && path[2].equals("present")) {
+      post(exchange, "MARK_PRESENT " + student.getName());
+    } else if (path.length == 3 && path[2].equals("absent")) {
+      post(exchange, "MARK_ABSENT " + student.getName());
+    } else {
+      send(exchange, 404, error("No such resource"));
+    }
+  }
+
+  private static void handleStaff(HttpExchange exchange) throws IOException {
+    String[] path = pathOf(exchange);
+    if (path.length == 1) {
+      getList(exchange, "staff", () -> renderList(Main.getStaff(), HttpApi::renderStaff));
+      return;
+    }
+    Staff member = Main.findStaffByName(path[1]);
+    if (member == null) {
+      send(exchange, 404, error("Staff member " + path[1] + " not found"));
+    } else if (path.length == 2) {
+      getEntity(exchange, member, member.getVersion(), () -> renderStaff(member));
+    } else if (path.length == 3 && path[2].equals("clock-in")) {
+      post(exchange, "CLOCK_IN " + member.getName());
+    } else if (path.length == 3 && path[2].equals("clock-out")) {
+      post(exchange, "CLOCK_OUT " + member.getName());
+    } else {
+      send(exchange, 404, error("No such resource"));
+    }
+  }
+
+  private static void handleRooms(HttpExchange exchange) throws IOException {
+    String[] path = pathOf(exchange);
+    if (path.length == 1) {
+      getList(exchange, "rooms", () -> renderList(Main.getRooms(), HttpApi::renderRoom));
+      return;
+    }
+    Room room = Main.findRoomByName(path[1]);
+    if (room == null) {
+      send(exchange, 404, error("Room " + path[1] + " not found"));
+    } else if (path.length == 2) {
+      getEntity(exchange, room, room.getVersion(), () -> renderRoom(room));
+    } else if (path.length == 4 && path[2].equals("students")) {
+      Student student = Main.findStudentByName(path[3]);
+      if (student == null) {
+        send(exchange, 404, error("Student " + path[3] + " not found"));
+      } else {
+        post(exchange, "ASSIGN_STUDENT " + student.getName() + " " + room.getName());
+      }
+    } else if (path.length == 4 && path[2].equals("staff")) {
+      Staff member = Main.findStaffByName(path[3]);
+      if (member == null) {
+        send(exchange, 404, error("Staff member " + path[3] + " not found"));
+      } else {
+        post(exchange, "ASSIGN_STAFF " + member.getName() + " " + room.getName());
+      }
+    } else {
+      send(exchange, 404, error("No such resource"));
+    }
+  }
+
+  /**
+   * Serves a list, tagged with the state version since any change can alter it
+   */
+  private static void getList(HttpExchange exchange, String kind, Supplier<String> renderer)
+      throws IOException {
+    long version = Main.getStateVersion();
+    serve(exchange, "/" + kind, "\"" + kind + "-" + version + "\"",
+        () -> Main.readConsistent(renderer));
+  }
+
+  /**
+   * Serves one entity, tagged with its identity and its own version, so a polling client is
+   * not disturbed by changes to anyone else
+   */
+  private static void getEntity(HttpExchange exchange, Object entity, long version,
+      Supplier<String> renderer) throws IOException {
+    String etag = "\"" + Integer.toHexString(System.identityHashCode(entity)) + "-" + version
+        + "\"";
+    serve(exchange, exchange.getRequestURI().getPath(), etag,
+        () -> Main.readConsistent(renderer));
+  }
+
+  /**
+   * Answers a GET from the cache, with a 304 if the client already has this version The tag is
+   * taken before rendering, so output rendered during a change keeps the older tag and is
+   * replaced on the next request
+   */
+  private static void serve(HttpExchange exchange, String key, String etag,
+      Supplier<String> renderer) throws IOException {
+    if (!exchange.getRequestMethod().equals("GET")) {
+      send(exchange, 405, error("Use GET"));
+      return;
+    }
+    exchange.getResponseHeaders().set("ETag", etag);
+    if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+      exchange.sendResponseHeaders(304, -1);
+      exchange.close();
+      return;
+    }
+
+    Cached cached = cache.get(key);
+    if (cached == null || !cached.etag.equals(etag)) {
+      if (cache.size() >= MAX_CACHED) {
+        cache.clear();
+      }
+      cached = new Cached(etag, renderer.get().getBytes(StandardCharsets.UTF_8));
+      cache.put(key, cached);
+    }
+    send(exchange, 200, cached.body);
+  }
+
+  /**
+   * Runs a change as a console command and returns its messages
+   */
+  private static void post(HttpExchange exchange, String command) throws IOException {
+    if (!exchange.getRequestMethod().equals("POST")) {
+      send(exchange, 405, error("Use POST"));
+      return;
+    }
+    String output = CommandOutput.capture(() -> Main.execute(command)).trim();
+    StringBuilder sb = new StringBuilder("{\"message\":");
+    quote(sb, output);
+    send(exchange, 200, sb.append("}").toString().getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, body.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /**
+   * @return The decoded path split into parts, without the leading slash
+   */
+  private static String[] pathOf(HttpExchange exchange) {
+    String path = exchange.getRequestURI().getPath();
+    return path.substring(1).split("/");
+  }
+
+  private static byte[] error(String message) {
+    StringBuilder sb = new StringBuilder("{\"error\":");
+    quote(sb, message);
+    return sb.append("}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static <T> String renderList(List<T> items, Function<T, String> renderer) {
+    StringBuilder sb = new StringBuilder("[");
+    for (T item : items) {
+      sb.append(sb.length() > 1 ? "," : "").append(renderer.apply(item));
+    }
+    return sb.append("]").toString();
+  }
+
+  private static String renderStudent(Student s) {
+    StringBuilder sb = new StringBuilder("{\"name\":");
+    quote(sb, s.getName());
+    sb.append(",\"grade\":").append(s.getGrade());
+    sb.append(",\"gender\":");
+    quote(sb, s.getGender());
+    sb.append(",\"present\":").append(s.isPresent());
+    sb.append(",\"location\":");
+    quote(sb, s.getLocation());
+    sb.append(",\"allergies\":");
+    quote(sb, s.getAllergies());
+    sb.append(",\"meds\":");
+    quote(sb, s.getMeds());
+    sb.append(",\"needsPara\":").append(s.needsPara());
+    sb.append(",\"guardians\":[");
+    Guardian[] guardians = s.getAuthPickUp();
+    for (int i = 0; i < guardians.length; i++) {
+      sb.append(i == 0 ? "{\"name\":" : ",{\"name\":");
+      quote(sb, guardians[i].getName());
+      sb.append(",\"relationship\":");
+      quote(sb, guardians[i].getRelationshipToChild());
+      sb.append(",\"phone\":");
+      quote(sb, guardians[i].getPhoneNumber());
+      sb.append("}");
+    }
+    return sb.append("]}").toString();
+  }
+
+  private static String renderStaff(Staff s) {
+    StringBuilder sb = new StringBuilder("{\"name\":");
+    quote(sb, s.getName());
+    sb.append(",\"position\":");
+    quote(sb, s.getPosition());
+    sb.append(",\"shift\":");
+    quote(sb, s.getShift());
+    sb.append(",\"email\":");
+    quote(sb, s.getEmail());
+    sb.append(",\"clockedIn\":").append(s.isClockedIn());
+    sb.append(",\"location\":");
+    quote(sb, s.getLocation());
+    return sb.append("}").toString();
+  }
+
+  private static String renderRoom(Room r) {
+    StringBuilder sb = new StringBuilder("{\"name\":");
+    quote(sb, r.getName());
+    sb.append(",\"capacity\":").append(r.getStudentCapacity());
+    sb.append(",\"closed\":").append(r.isClosed());
+    sb.append(",\"students\":[");
+    List<Student> students = r.getStudents();
+    for (int i = 0; i < students.size(); i++) {
+      sb.append(i == 0 ? "" : ",");
+      quote(sb, students.get(i).getName());
+    }
+    sb.append("],\"staff\":[");
+    List<Staff> staff = r.getStaff();
+    for (int i = 0; i < staff.size(); i++) {
+      sb.append(i == 0 ? "" : ",");
+      quote(sb, staff.get(i).getName());
+    }
+    sb.append("],\"allergenTags\":");
+    quote(sb, AllergenDictionary.ALLERGENS.describe(r.getTagMask()));
+    return sb.append("}").toString();
+  }
+
+  /**
+   * Appends a string as a quoted JSON value, escaping quotes, backslashes and control characters
+   */
+  private static void quote(StringBuilder sb, String text) {
+    if (text == null) {
+      sb.append("null");
+      return;
+    }
+    sb.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    sb.append('"');
+  }
+}
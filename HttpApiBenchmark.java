@@ -0,0 +1,134 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * HttpApiBenchmark measures the HttpApi read path on loopback
+ * It loads a synthetic roster, starts the API on a free port and has several client threads
+ * poll single students over keep-alive connections: first as new clients that get the cached
+ * JSON, then as polling clients that send the ETag they already have and get 304s. A writer
+ * marks a student present or absent every few milliseconds during the second run, so some polls see a change
+ *
+ * Usage: java HttpApiBenchmark [students] [clientThreads] [requestsPerThread]
+ */
+public class HttpApiBenchmark {
+  // Pause between the writer's changes, roughly a busy front office
+  private static final int WRITE_INTERVAL_MS = 5;
+
+  public static void main(String[] args) throws Exception {
+    int studentCount = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+    int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+    int perClient = args.length > 2 ? Integer.parseInt(args[2]) : 5_000;
+
+    SyntheticRoster.load(studentCount);
+    int port = HttpApi.start(0);
+    String base = "http://localhost:" + port + "/students/";
+
+    // Warm up the server and the client connections
+    run(base, studentCount, clients, 500, false);
+
+    report("GET 200 from cache", run(base, studentCount, clients, perClient, false));
+
+    Thread writer = new Thread(() -> {
+      CommandOutput.discard(() -> {
+        try {
+          for (int i = 0; ; i++) {
+            Main.execute((i % 2 == 0 ? "MARK_PRESENT " : "MARK_ABSENT ")
+                + SyntheticRoster.student(i % studentCount));
+            Thread.sleep(WRITE_INTERVAL_MS);
+          }
+        } catch (InterruptedException e) {
+          // Benchmark finished
+        }
+      });
+    });
+    writer.start();
+    report("Polling with ETag", run(base, studentCount, clients, perClient, true));
+    writer.interrupt();
+    writer.join();
+    HttpApi.stop();
+  }
+
+  /**
+   * Sends requests from several client threads at once
+   * @param withEtag Whether clients send back the ETag of their previous response
+   * @return {elapsed nanos, not-modified count, failed count, latencies...}
+   */
+  private static long[] run(String base, int studentCount, int clients, int perClient,
+      boolean withEtag) throws InterruptedException {
+    long[] latencies = new long[clients * perClient];
+    AtomicInteger notModified = new AtomicInteger();
+    AtomicInteger failures = new AtomicInteger();
+    AtomicReference<String> firstFailure = new AtomicReference<>();
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch done = new CountDownLatch(clients);
+    for (int c = 0; c < clients; c++) {
+      int client = c;
+      new Thread(() -> {
+        // Each client polls its own small set of students, as a tablet would
+        String[] etags = new String[8];
+        try {
+          start.await();
+          for (int i = 0; i < perClient; i++) {
+            int slot = i % etags.length;
+            int student = (client * etags.length + slot) % studentCount;
+            long begin = System.nanoTime();
+            try {
+              HttpURLConnection connection = (HttpURLConnection) new URL(base
+                  + SyntheticRoster.student(student).replace(" ", "%20")).openConnection();
+              if (withEtag && etags[slot] != null) {
+                connection.setRequestProperty("If-None-Match", etags[slot]);
+              }
+              int status = connection.getResponseCode();
+              if (status == 304) {
+                notModified.incrementAndGet();
+              } else {
+                try (InputStream in = connection.getInputStream()) {
+                  in.readAllBytes();  // Reading to the end lets the connection be reused
+                }
+              }
+              etags[slot] = connection.getHeaderField("ETag");
+            } catch (IOException e) {
+              failures.incrementAndGet();
+              firstFailure.compareAndSet(null, e.toString());
+            }
+            latencies[client * perClient + i] = System.nanoTime() - begin;
+          }
+        } catch (InterruptedException e) {
+          failures.incrementAndGet();
+          firstFailure.compareAndSet(null, "client thread interrupted");
+        } finally {
+          done.countDown();
+        }
+      }).start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    long elapsed = System.nanoTime() - begin;
+
+    Arrays.sort(latencies);
+    if (firstFailure.get() != null) {
+      System.out.println(failures.get() + " request(s) failed; the first with "
+          + firstFailure.get());
+    }
+    long[] result = new long[latencies.length + 3];
+    result[0] = elapsed;
+    result[1] = notModified.get();
+    result[2] = failures.get();
+    System.arraycopy(latencies, 0, result, 3, latencies.length);
+    return result;
+  }
+
+  private static void report(String label, long[] result) {
+    int requests = result.length - 3;
+    System.out.printf("%-20s %,8.0f requests/s, p50 %.2f ms, p99 %.2f ms, %d of %d were 304,"
+        + " %d failed%n", label, requests / (result[0] / 1e9), result[3 + requests / 2] / 1e6,
+        result[3 + requests * 99 / 100] / 1e6, result[1], requests, result[2]);
+  }
+}
@@ -0,0 +1,73 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LazyGuardianBenchmark measures what keeping guardians as raw text saves on a large roster
+ * It loads the same synthetic rows twice: once decoding every student's guardians straight
+ * away, as the loader used to, and once leaving them as text the way LOAD_STUDENTS now does.
+ * For each it reports load time and the heap still in use afterwards, then times decoding the
+ * guardians of the few students a day's pickups would touch
+ *
+ * Usage: java LazyGuardianBenchmark [rows]
+ */
+public class LazyGuardianBenchmark {
+  // Share of students whose guardians are read on a typical day
+  private static final double TOUCHED = 0.02;
+
+  public static void main(String[] args) {
+    int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    List<String> rows = SyntheticRoster.rows(rowCount);
+    long rowBytes = SyntheticRoster.residentBytes();
+
+    // Warm up the parser on a slice so both runs use compiled code
+    for (int i = 0; i < 3; i++) {
+      load(rows.subList(0, Math.min(rowCount, 100_000)), true);
+    }
+
+    long start = System.nanoTime();
+    List<Student> eager = load(rows, true);
+    long eagerNanos = System.nanoTime() - start;
+    long eagerBytes = SyntheticRoster.residentBytes() - rowBytes;
+    report("Decoded at load", eagerNanos, eagerBytes, rowCount);
+    eager = null;
+
+    start = System.nanoTime();
+    List<Student> lazy = load(rows, false);
+    long lazyNanos = System.nanoTime() - start;
+    long lazyBytes = SyntheticRoster.residentBytes() - rowBytes;
+    report("Decoded on first use", lazyNanos, lazyBytes, rowCount);
+
+    Random random = new Random(3);
+    int touched = (int) (rowCount * TOUCHED);
+    int guardians = 0;
+    start = System.nanoTime();
+    for (int i = 0; i < touched; i++) {
+      guardians += lazy.get(random.nextInt(rowCount)).getAuthPickUp().length;
+    }
+    System.out.printf("First use for %,d students (%d guardians): %.1f ms%n", touched, guardians,
+        (System.nanoTime() - start) / 1e6);
+    System.out.printf("Load %.0f%% faster, %.0f%% less heap%n",
+        100.0 * (eagerNanos - lazyNanos) / eagerNanos, 100.0 * (eagerBytes - lazyBytes) / eagerBytes);
+  }
+
+  /**
+   * Parses rows the way LOAD_STUDENTS does, optionally forcing every guardian list to decode
+   */
+  private static List<Student> load(List<String> rows, boolean decodeNow) {
+    List<Student> students = new ArrayList<>(rows.size());
+    for (String row : rows) {
+      Student student = RowParser.parseStudent(row);
+      if (decodeNow) {
+        student.getAuthPickUp();
+      }
+      students.add(student);
+    }
+    return students;
+  }
+
+  private static void report(String label, long nanos, long bytes, int rows) {
+    System.out.printf("%-22s load %7.1f ms (%4.0f ns/row), resident %7.1f MB (%3d bytes/row)%n",
+        label, nanos / 1e6, (double) nanos / rows, bytes / 1e6, bytes / rows);
+  }
+}
@@ -1,9 +1,45 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.CRC32C;
 
 /**
  * Main class for the School Management System Provides a command-line interface for managing
@@ -11,28 +47,227 @@ import java.util.Scanner;
  * queries
  */
 public class Main {
-  // Data storage collections
-  private static ArrayList<Student> students = new ArrayList<>();  // List of all students
-  private static ArrayList<Staff> staff = new ArrayList<>();       // List of all staff
-  private static ArrayList<Room> rooms = new ArrayList<>();        // List of all rooms
+  // Data storage collections; copy-on-write so listings iterate a stable snapshot
+  private static List<Student> students = new CopyOnWriteArrayList<>();  // List of all students
+  private static List<Staff> staff = new CopyOnWriteArrayList<>();       // List of all staff
+  private static List<Room> rooms = new CopyOnWriteArrayList<>();        // List of all rooms
 
 
   // Hash maps for fast name-based lookups (case-insensitive)
-  private static Map<String, Student> studentMap = new HashMap<>();
-  private static Map<String, Staff> staffMap = new HashMap<>();
-  private static Map<String, Room> roomMap = new HashMap<>();
+  private static Map<String, Student> studentMap = new ConcurrentHashMap<>();
+  private static Map<String, Staff> staffMap = new ConcurrentHashMap<>();
+  private static Map<String, Room> roomMap = new ConcurrentHashMap<>();
+
+  // Students by grade for ASSIGN_GRADE; only used under the write lock, and grades do not change
+  // once loaded
+  private static Map<Integer, List<Student>> studentsByGrade = new HashMap<>();
+
+  // Sorted views for ALL_* listings, merged as rosters load; students can also be listed by
+  // room, which is read from the rooms themselves since it changes with every assignment
+  private static final Comparator<Student> STUDENT_NAME_ORDER =
+      Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER);
+  private static final Map<String, SortedView<Student>> studentViews = Map.of(
+      "name", new SortedView<>(STUDENT_NAME_ORDER),
+      "grade", new SortedView<>(Comparator.comparingInt(Student::getGrade)
+          .thenComparing(STUDENT_NAME_ORDER)));
+  private static final Set<String> STUDENT_SORTS = Set.of("name", "grade", "room");
+  private static final Comparator<Staff> STAFF_NAME_ORDER =
+      Comparator.comparing(Staff::getName, String.CASE_INSENSITIVE_ORDER);
+  private static final Map<String, SortedView<Staff>> staffViews = Map.of(
+      "name", new SortedView<>(STAFF_NAME_ORDER),
+      "position", new SortedView<>(Comparator.comparing(Staff::getPosition,
+          String.CASE_INSENSITIVE_ORDER).thenComparing(STAFF_NAME_ORDER)));
+  private static final Comparator<Room> ROOM_NAME_ORDER =
+      Comparator.comparing(Room::getName, String.CASE_INSENSITIVE_ORDER);
+  private static final Map<String, SortedView<Room>> roomViews = Map.of(
+      "name", new SortedView<>(ROOM_NAME_ORDER),
+      "capacity", new SortedView<>(Comparator.comparingInt(Room::getStudentCapacity)
+          .thenComparing(ROOM_NAME_ORDER)));
+
+  // Rooms AVAILABLE_ROOMS lists when not asked for a number of seats
+  private static final int AVAILABLE_ROOMS_LISTED = 10;
+
+  // Entries per page when an ALL_* listing asks for a page without a size, and the most allowed
+  public static final int DEFAULT_PAGE_SIZE = 50;
+  public static final int MAX_PAGE_SIZE = 10_000;
+
+  // Writers hold the write lock; listings read optimistically and retry if a write slipped in
+  private static final StampedLock stateLock = new StampedLock();
+  private static volatile long stateVersion = 0;   // Incremented by every mutating command
+  private static final int OPTIMISTIC_READ_ATTEMPTS = 3;
+
+  // Set on replication followers, which only accept mutating commands from the primary
+  private static volatile boolean readOnly = false;
+
+  // Schedule index over all staff shifts, rebuilt when the staff schedule version moves on
+  private static volatile ShiftIndex shiftIndex;
+
+  // Off-heap archive of historical students, searched by INFO after the live roster
+  private static volatile StudentArchive archive = new StudentArchive();
+
+  // ARCHIVE_OPEN and ARCHIVE_LOAD lines that built the archive, since the last ARCHIVE_OPEN, so a
+  // replication snapshot can rebuild it; changed only under the write lock
+  private static final List<String> archiveCommands = new ArrayList<>();
+
+  // Console subscription started by WATCH, or null
+  private static ChangeFeed.Subscription consoleWatch;
+
+  // How long PICKUP waits for the dismissal desk before returning to the prompt
+  private static final int PICKUP_TIMEOUT_SECONDS = 5;
+
+  // Size of the buffer used to write ALL_* listings
+  private static final int LISTING_BUFFER_SIZE = 1 << 16;
+
+  // Commands that change the school or its history and must run under the write lock
+  private static final Set<String> MUTATING_COMMANDS = Set.of("LOAD_STUDENTS", "LOAD_STAFF",
+      "LOAD_ROOMS", "ASSIGN_STUDENT", "ASSIGN_STAFF", "OPEN_ROOM", "CLOSE_ROOM", "MARK_PRESENT",
+      "MARK_ABSENT", "CLOCK_IN", "CLOCK_OUT", "TAG_ROOM", "UNTAG_ROOM", "SNAPSHOT_ATTENDANCE",
+      "ARCHIVE_LOAD", "ARCHIVE_OPEN", "MOVE_ROOM", "ASSIGN_GRADE");
+
+  // Other commands that change the school, write files or start something, which a trace replay
+  // must run only once; LOAD_ALL and PICKUP take the write lock themselves. ROLLCALL also writes
+  // a file when given a filename
+  private static final Set<String> SIDE_EFFECT_COMMANDS = Set.of("LOAD_ALL", "PICKUP", "EXPORT",
+      "ARCHIVE_SAVE", "VALIDATE", "WATCH", "UNWATCH");
+
+  // Attendance percentage below which CHRONIC_ABSENCE lists a student, and how many it shows
+  private static final double CHRONIC_ABSENCE_PERCENT = 90;
+  private static final int CHRONIC_ABSENCE_LISTED = 50;
 
   // Constants for minimum required fields in CSV files
-  private static final int MIN_STUDENT_FIELDS = 7;  // Minimum columns needed for student data
   private static final int MIN_STAFF_FIELDS = 3;    // Minimum columns needed for staff data
   private static final int MIN_ROOM_FIELDS = 2;     // Minimum columns needed for room data
 
+  /**
+   * Reads one roster file into a list without touching the current state
+   * @param <T> Type of record in the file
+   */
+  private interface FileParser<T> {
+    List<T> parse(String filename) throws FileNotFoundException;
+  }
+
+  /**
+   * One file being read by LOAD_ALL, with everything printed while it was read
+   * @param <T> Type of record in the file
+   */
+  private static class StagedFile<T> {
+    final RosterValidator.Kind kind;
+    final String filename;
+    final FileParser<T> parser;
+    List<T> loaded;       // Parsed records, or null if the file could not be loaded
+    String output = "";   // Messages from validating and parsing, printed once all are done
+    long nanos;
+
+    StagedFile(RosterValidator.Kind kind, String filename, FileParser<T> parser) {
+      this.kind = kind;
+      this.filename = filename;
+      this.parser = parser;
+    }
+  }
+
+  /**
+   * Sort order and page asked for by an ALL_* listing, e.g. "sort=grade page=3 size=50"
+   */
+  private static class ListingOptions {
+    String sort;                     // null for load order
+    int page = 0;                    // Page to print, counting from 1, or 0 for everything
+    int size = DEFAULT_PAGE_SIZE;
+
+    /**
+     * Reads the options after the command name
+     *
+     * @param parts Command parts array including the command itself
+     * @param sorts Orders this listing supports
+     * @return The options, or null after printing why they could not be read
+     */
+    static ListingOptions parse(String[] parts, Set<String> sorts) {
+      ListingOptions options = new ListingOptions();
+      try {
+        for (int i = 1; i < parts.length; i++) {
+          String option = parts[i].toLowerCase();
+          if (!option.contains("=")) {
+            continue;  // Listings have always ignored extra words
+          }
+          if (option.startsWith("sort=") && sorts.contains(option.substring(5))) {
+            options.sort = option.substring(5);
+          } else if (option.startsWith("sort=")) {
+            System.out.println("Cannot sort by " + option.substring(5) + "; choose from "
+                + String.join(", ", new TreeSet<>(sorts)));
+            return null;
+          } else if (option.startsWith("page=")) {
+            options.page = Integer.parseInt(option.substring(5));
+            if (options.page < 1) {
+              System.out.println("Pages count from 1");
+              return null;
+            }
+          } else if (option.startsWith("size=")) {
+            options.size = Integer.parseInt(option.substring(5));
+          } else {
+            System.out.println("Unknown option " + parts[i] + "; use sort=, page= and size=");
+            return null;
+          }
+        }
+      } catch (NumberFormatException e) {
+        System.out.println("Page and size must be numbers");
+        return null;
+      }
+      if (options.size < 1 || options.size > MAX_PAGE_SIZE) {
+        System.out.println("Pages hold 1 to " + MAX_PAGE_SIZE + " entries");
+        return null;
+      }
+      if (options.page == 0 && options.size != DEFAULT_PAGE_SIZE) {
+        options.page = 1;  // A size alone asks for the first page
+      }
+      return options;
+    }
+  }
+
   /**
    * Main method - entry point of the application Sets up the command loop and processes user input
    *
-   * @param args Command line arguments (not used)
+   * @param args Command line arguments: "--shard (port)" serves this process as a campus shard,
+   *             "--router (port,port,...)" runs the district router over local shards,
+   *             "--primary (port)" replicates changes to followers on that port, and
+   *             "--follower (port)" follows a primary and serves read-only commands, and
+   *             "--load (students),(staff),(rooms)" runs LOAD_ALL on those files at startup,
+   *             "--http (port)" also serves the JSON API on that port, on loopback unless
+   *             "--http-bind (address)" names another address, checking the token given by
+   *             "--http-token (token)" or generating one, and
+   *             "--record (file)" writes every command processed to a trace for TraceReplay
    */
   public static void main(String[] args) {
+    if (args.length >= 2 && args[0].equals("--shard")) {
+      CampusShard.serve(Integer.parseInt(args[1]));
+      return;
+    }
+    if (args.length >= 2 && args[0].equals("--router")) {
+      CampusRouter.run(args[1]);
+      return;
+    }
+    if (args.length >= 2 && args[0].equals("--primary")) {
+      try {
+        ReplicationPrimary.start(Integer.parseInt(args[1]));
+      } catch (IOException e) {
+        System.out.println("Could not start replication: " + e.getMessage());
+        return;
+      }
+    }
+    if (args.length >= 2 && args[0].equals("--follower")) {
+      readOnly = true;
+      ReplicationFollower.start(Integer.parseInt(args[1]));
+    }
+
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals("--record")) {
+        try {
+          TraceRecorder.start(Paths.get(args[i + 1]));
+          System.out.println("Recording commands to " + args[i + 1]);
+        } catch (IOException e) {
+          System.out.println("Could not record commands: " + e.getMessage());
+        }
+      }
+    }
+
     Scanner input = new Scanner(System.in);
     boolean running = true;
 
@@ -40,93 +275,416 @@ public class Main {
     System.out.println("Welcome to School Management! Please enter a command to continue!");
     printHelpMessage();
 
-    // Main command processing loop
+    // Files named with --load are read before the first prompt
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals("--load")) {
+        String load = "LOAD_ALL " + args[i + 1].replace(',', ' ');
+        TraceRecorder.record(load);
+        execute(load);
+        EventSink.flush();
+      }
+      if (args[i].equals("--http")) {
+        startHttpApi(Integer.parseInt(args[i + 1]), optionValue(args, "--http-bind"),
+            optionValue(args, "--http-token"));
+      }
+    }
+
+    // Main command processing loop; pending event messages are written before each prompt
     while (running) {
       System.out.print("> ");
-      String[] parts = input.nextLine().split(" ");
-      String command = parts[0].toUpperCase();  // Make commands case-insensitive
+      String line = input.nextLine();
+      TraceRecorder.record(line);
+      running = execute(line);
+      EventSink.flush();
+    }
+    TraceRecorder.finish();
+    HttpApi.stop();
+  }
 
-      // Process different commands using switch statement
-      switch (command) {
-        case "HELP":
-          printHelpMessage();
-          break;
-        case "LOAD_STUDENTS":
-          if (parts.length > 1) {
-            loadStudentsFromFile(parts[1]);
-          } else {
-            System.out.println("Please provide a filename.");
-          }
-          break;
-        case "LOAD_STAFF":
-          if (parts.length > 1) {
-            loadStaffFromFile(parts[1]);
-          } else {
-            System.out.println("Please provide a filename.");
-          }
-          break;
-        case "LOAD_ROOMS":
-          if (parts.length > 1) {
-            loadRoomsFromFile(parts[1]);
-          } else {
-            System.out.println("Please provide a filename.");
-          }
-          break;
-        case "INFO":
-          handleInfo(parts);
-          break;
-        case "ALL_STUDENTS":
-          printAllStudents();
-          break;
-        case "ALL_STAFF":
-          printAllStaff();
-          break;
-        case "ALL_ROOMS":
-          printAllRooms();
-          break;
-        case "ROOM_INFO":
-          if (parts.length > 1) {
-            handleRoomInfo(parts[1]);
-          } else {
-            System.out.println("Please provide a room name.");
+  /**
+   * @return The value following an option on the command line, or null if it is not given
+   */
+  private static String optionValue(String[] args, String option) {
+    for (int i = 0; i + 1 < args.length; i++) {
+      if (args[i].equals(option)) {
+        return args[i + 1];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Starts the HTTP API and prints where it listens and the token clients need
+   *
+   * @param port  Port to listen on
+   * @param bind  Address to listen on, or null for loopback only
+   * @param token Shared token, or null to generate one
+   */
+  private static void startHttpApi(int port, String bind, String token) {
+    try {
+      InetAddress address = bind == null ? InetAddress.getLoopbackAddress()
+          : InetAddress.getByName(bind);
+      int bound = HttpApi.start(address, port, token);
+      System.out.println("HTTP API listening on " + address.getHostAddress() + ":" + bound
+          + (address.isLoopbackAddress() ? "; POSTs" : "; all requests")
+          + " need the header Authorization: Bearer "
+          + (token == null ? HttpApi.getToken() : "(the --http-token value)"));
+    } catch (IOException e) {
+      System.out.println("Could not start the HTTP API: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Executes a single command line Mutating commands run under the state write lock so that
+   * listings running on other threads always see a consistent building
+   *
+   * @param line The command line to execute
+   * @return false if the command was QUIT, true otherwise
+   */
+  public static boolean execute(String line) {
+    String[] parts = line.split(" ");
+    String command = parts[0].toUpperCase();  // Make commands case-insensitive
+
+    if (!MUTATING_COMMANDS.contains(command)) {
+      return dispatch(command, parts);
+    }
+    if (readOnly) {
+      System.out.println("This follower is read-only; run " + command + " on the primary.");
+      return true;
+    }
+    return executeMutating(line, command, parts);
+  }
+
+  /**
+   * @param line A command line
+   * @return true if the command changes the school or writes anything, so running it twice
+   *         would not be the same as running it once
+   */
+  public static boolean hasSideEffects(String line) {
+    String[] parts = line.split(" ");
+    String command = parts[0].toUpperCase();
+    return MUTATING_COMMANDS.contains(command) || SIDE_EFFECT_COMMANDS.contains(command)
+        || (command.equals("ROLLCALL") && parts.length > 1);
+  }
+
+  /**
+   * Hashes where every student, staff member and room stands, so a replayed trace can be checked
+   * against the recording Covers names, grades, positions, locations, attendance, clock-ins,
+   * capacities, closures and occupancy in load order, but not times, which differ between runs
+   *
+   * @return The hash as hex digits
+   */
+  public static String stateHash() {
+    return readConsistent(() -> {
+      CRC32C crc = new CRC32C();
+      for (Student s : students) {
+        hashFields(crc, s.getName(), s.getGrade(), s.getLocation(), s.isPresent());
+      }
+      for (Staff s : staff) {
+        hashFields(crc, s.getName(), s.getPosition(), s.getLocation(), s.isClockedIn());
+      }
+      for (Room r : rooms) {
+        hashFields(crc, r.getName(), r.getStudentCapacity(), r.isClosed(),
+            r.getStudents().size(), r.getStaff().size());
+      }
+      return String.format("%08x-%d-%d-%d", crc.getValue(), students.size(), staff.size(),
+          rooms.size());
+    });
+  }
+
+  private static void hashFields(CRC32C crc, Object... fields) {
+    for (Object field : fields) {
+      crc.update(String.valueOf(field).getBytes(StandardCharsets.UTF_8));
+      crc.update(0);
+    }
+  }
+
+  /**
+   * Applies a mutating command received from the replication primary, bypassing the follower's
+   * read-only check
+   *
+   * @param line The replicated command line
+   */
+  public static void applyReplicated(String line) {
+    String[] parts = line.split(" ");
+    executeMutating(line, parts[0].toUpperCase(), parts);
+  }
+
+  /**
+   * Describes the whole school as lines for a replication snapshot, for a follower that needs
+   * commands the primary's log no longer holds Must be called under the read lock, so the lines
+   * match one sequence number
+   * Each line is "rooms", "students" or "staff" and a row for that file, in the EXPORT CSV
+   * format the loaders read, or "apply" and a command to run once the files are loaded: marking
+   * people present and clocked in, placing them in their rooms in the order they arrived,
+   * tagging and closing rooms, and rebuilding the archive
+   *
+   * @return The snapshot lines
+   * @throws IOException if the rows cannot be written to or read from temporary files
+   */
+  public static List<String> snapshotLines() throws IOException {
+    List<String> lines = new ArrayList<>();
+    Path file = Files.createTempFile("snapshot", ".csv");
+    try {
+      try (StateExporter out = new StateExporter(file)) {
+        out.writeRooms(rooms, false);
+      }
+      for (String row : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        lines.add("rooms " + row);
+      }
+      try (StateExporter out = new StateExporter(file)) {
+        out.writeStudents(students, false);
+      }
+      for (String row : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        lines.add("students " + row);
+      }
+      try (StateExporter out = new StateExporter(file)) {
+        out.writeStaff(staff, false);
+      }
+      for (String row : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        lines.add("staff " + row);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+
+    for (Student student : students) {
+      if (student.isPresent()) {
+        lines.add("apply MARK_PRESENT " + student.getName());
+      }
+    }
+    for (Staff member : staff) {
+      if (member.isClockedIn()) {
+        lines.add("apply CLOCK_IN " + member.getName());
+      }
+    }
+    // Rooms are tagged after they are filled, since tags turn allergic students away
+    for (Room room : rooms) {
+      for (Student student : room.getStudents()) {
+        lines.add("apply ASSIGN_STUDENT " + student.getName() + " " + room.getName());
+      }
+      for (Staff member : room.getStaff()) {
+        lines.add("apply ASSIGN_STAFF " + member.getName() + " " + room.getName());
+      }
+    }
+    for (Room room : rooms) {
+      if (!room.getTagMask().isEmpty()) {
+        lines.add("apply TAG_ROOM " + room.getName() + " "
+            + AllergenDictionary.ALLERGENS.describe(room.getTagMask()));
+      }
+      if (room.isClosed()) {
+        lines.add("apply CLOSE_ROOM " + room.getName());
+      }
+    }
+    for (String command : archiveCommands) {
+      lines.add("apply " + command);
+    }
+    return lines;
+  }
+
+  /**
+   * Runs a mutating command under the state write lock and, on a primary, appends it to the
+   * replication log while the lock is still held so followers apply commands in the same order
+   *
+   * @param line    The original command line
+   * @param command The upper-case command name
+   * @param parts   Command parts array including the command itself
+   * @return false if the command was QUIT, true otherwise
+   */
+  private static boolean executeMutating(String line, String command, String[] parts) {
+    long stamp = stateLock.writeLock();
+    try {
+      if (ReplicationPrimary.isEnabled()) {
+        ReplicationPrimary.append(line);
+      }
+      return dispatch(command, parts);
+    } finally {
+      // Bumped after the write so views cached under the old version are never reused
+      stateVersion++;
+      stateLock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Runs the handler for a command
+   *
+   * @param command The upper-case command name
+   * @param parts   Command parts array including the command itself
+   * @return false if the command was QUIT, true otherwise
+   */
+  private static boolean dispatch(String command, String[] parts) {
+    // Process different commands using switch statement
+    switch (command) {
+      case "HELP":
+        printHelpMessage();
+        break;
+      case "LOAD_STUDENTS":
+        if (parts.length > 1) {
+          if (isStrict(parts) && !validateFile(RosterValidator.Kind.STUDENTS, parts[1], true)) {
+            break;
           }
-          break;
-        case "ASSIGN_STUDENT":
-          handleAssignStudent(parts);
-          break;
-        case "ASSIGN_STAFF":
-          handleAssignStaff(parts);
-          break;
-        case "OPEN_ROOM":
-          if (parts.length > 1) {
-            handleOpenRoom(parts[1]);
-          } else {
-            System.out.println("Please provide a room name.");
+          loadStudentsFromFile(parts[1]);
+        } else {
+          System.out.println("Please provide a filename.");
+        }
+        break;
+      case "LOAD_STAFF":
+        if (parts.length > 1) {
+          if (isStrict(parts) && !validateFile(RosterValidator.Kind.STAFF, parts[1], true)) {
+            break;
           }
-          break;
-        case "CLOSE_ROOM":
-          if (parts.length > 1) {
-            handleCloseRoom(parts[1]);
-          } else {
-            System.out.println("Please provide a room name.");
+          loadStaffFromFile(parts[1]);
+        } else {
+          System.out.println("Please provide a filename.");
+        }
+        break;
+      case "LOAD_ROOMS":
+        if (parts.length > 1) {
+          if (isStrict(parts) && !validateFile(RosterValidator.Kind.ROOMS, parts[1], true)) {
+            break;
           }
-          break;
-        case "MARK_PRESENT":
-        case "MARK_ABSENT":
-          handleAttendance(command, parts);
-          break;
-        case "CLOCK_IN":
-        case "CLOCK_OUT":
-          handleClocking(command, parts);
-          break;
-        case "QUIT":
-          System.out.println("Thank You!");
-          running = false;
-          break;
-        default:
-          System.out.println("Unknown Command!");
-      }
+          loadRoomsFromFile(parts[1]);
+        } else {
+          System.out.println("Please provide a filename.");
+        }
+        break;
+      case "LOAD_ALL":
+        handleLoadAll(parts);
+        break;
+      case "INFO":
+        handleInfo(parts);
+        break;
+      case "ALL_STUDENTS":
+        printAllStudents(parts);
+        break;
+      case "ALL_STAFF":
+        printAllStaff(parts);
+        break;
+      case "ALL_ROOMS":
+        printAllRooms(parts);
+        break;
+      case "ROOM_INFO":
+        if (parts.length > 1) {
+          handleRoomInfo(parts[1]);
+        } else {
+          System.out.println("Please provide a room name.");
+        }
+        break;
+      case "ASSIGN_STUDENT":
+        handleAssignStudent(parts);
+        break;
+      case "ASSIGN_STAFF":
+        handleAssignStaff(parts);
+        break;
+      case "WATCH":
+        handleWatch(parts);
+        break;
+      case "UNWATCH":
+        handleUnwatch();
+        break;
+      case "PARA_GAPS":
+        handleParaGaps();
+        break;
+      case "AVAILABLE_ROOMS":
+        handleAvailableRooms(parts);
+        break;
+      case "MOVE_ROOM":
+        handleMoveRoom(parts);
+        break;
+      case "ASSIGN_GRADE":
+        handleAssignGrade(parts);
+        break;
+      case "OPEN_ROOM":
+        if (parts.length > 1) {
+          handleOpenRoom(parts[1]);
+        } else {
+          System.out.println("Please provide a room name.");
+        }
+        break;
+      case "CLOSE_ROOM":
+        if (parts.length > 1) {
+          handleCloseRoom(parts[1]);
+        } else {
+          System.out.println("Please provide a room name.");
+        }
+        break;
+      case "MARK_PRESENT":
+      case "MARK_ABSENT":
+        handleAttendance(command, parts);
+        break;
+      case "CLOCK_IN":
+      case "CLOCK_OUT":
+        handleClocking(command, parts);
+        break;
+      case "HOURS":
+        handleHours(parts);
+        break;
+      case "ON_DUTY":
+        handleOnDuty(parts);
+        break;
+      case "COVERAGE":
+        handleCoverage(parts);
+        break;
+      case "ROLLCALL":
+        handleRollCall(parts);
+        break;
+      case "EXPORT":
+        handleExport(parts);
+        break;
+      case "VALIDATE":
+        handleValidate(parts);
+        break;
+      case "TAG_ROOM":
+      case "UNTAG_ROOM":
+        handleRoomTags(command, parts);
+        break;
+      case "ALLERGEN_REPORT":
+        handleAllergenReport();
+        break;
+      case "SNAPSHOT_ATTENDANCE":
+        handleSnapshotAttendance(parts);
+        break;
+      case "ATTENDANCE_RATE":
+        handleAttendanceRate(parts);
+        break;
+      case "CHRONIC_ABSENCE":
+        handleChronicAbsence(parts);
+        break;
+      case "ARCHIVE_LOAD":
+      case "ARCHIVE_OPEN":
+      case "ARCHIVE_SAVE":
+        handleArchive(command, parts);
+        break;
+      case "ARCHIVE_STATS":
+        handleArchiveStats();
+        break;
+      case "SIBLINGS":
+        handleSiblings(parts);
+        break;
+      case "FAMILY":
+        handleFamily(parts);
+        break;
+      case "GUARDIAN_STATS":
+        handleGuardianStats();
+        break;
+      case "PICKUP":
+        handlePickup(parts);
+        break;
+      case "DISMISSAL":
+        System.out.print(DismissalDesk.status());
+        break;
+      case "REPLICATION":
+        System.out.print(readOnly ? ReplicationFollower.status()
+            : ReplicationPrimary.isEnabled() ? ReplicationPrimary.status()
+            : "Replication is not enabled\n");
+        break;
+      case "QUIT":
+        System.out.println("Thank You!");
+        return false;
+      default:
+        System.out.println("Unknown Command!");
     }
+    return true;
   }
 
   // --- HELPER METHODS ---
@@ -138,73 +696,207 @@ public class Main {
   public static void printHelpMessage() {
     System.out.println("\nList of commands:");
     System.out.println("HELP - Prints help message");
-    System.out.println("LOAD_STUDENTS (filename) - Loads student data from specified file");
-    System.out.println("LOAD_STAFF (filename) - Loads staff data from specified file");
-    System.out.println("LOAD_ROOMS (filename) - Loads room data from specified file");
+    System.out.println("LOAD_STUDENTS (filename) [STRICT] - Loads student data from specified file");
+    System.out.println("LOAD_STAFF (filename) [STRICT] - Loads staff data from specified file");
+    System.out.println("LOAD_ROOMS (filename) [STRICT] - Loads room data from specified file");
+    System.out.println("LOAD_ALL (students) (staff) (rooms) [STRICT] - Loads all three files at once, or none if any fails");
+    System.out.println("VALIDATE (students|staff|rooms) (filename) - Checks a file and writes an error report");
     System.out.println("INFO (FirstName LastName) - Returns info for specified person");
-    System.out.println("ALL_STUDENTS - Lists all students and info");
-    System.out.println("ALL_STAFF - Lists all staff and info");
-    System.out.println("ALL_ROOMS - Lists all rooms and info");
+    System.out.println("ARCHIVE_LOAD (filename) - Adds past students from a student file to the off-heap archive");
+    System.out.println("ARCHIVE_SAVE (filename) - Saves the archive to a file");
+    System.out.println("ARCHIVE_OPEN (filename) - Replaces the archive with a saved one, mapped from disk");
+    System.out.println("ARCHIVE_STATS - Shows archive size, heap use and garbage collection totals");
+    System.out.println("ALL_STUDENTS [sort=name|grade|room] [page=N] [size=N] - Lists all students and info");
+    System.out.println("ALL_STAFF [sort=name|position] [page=N] [size=N] - Lists all staff and info");
+    System.out.println("ALL_ROOMS [sort=name|capacity] [page=N] [size=N] - Lists all rooms and info");
     System.out.println("ROOM_INFO (RoomName) - Shows detailed room information");
-    System.out.println("ASSIGN_STUDENT (FirstName LastName) (RoomName) - Assigns student to room");
+    System.out.println("ASSIGN_STUDENT (FirstName LastName) (RoomName) [OVERFLOW] - Assigns student to room, or with OVERFLOW to the roomiest open room if that one cannot take them");
     System.out.println("ASSIGN_STAFF (FirstName LastName) (RoomName) - Assigns staff to room");
+    System.out.println("MOVE_ROOM (FromRoom) (ToRoom) - Moves everyone in a room to another room, or no one if they do not fit");
+    System.out.println("ASSIGN_GRADE (grade) (RoomName) - Assigns every present student of a grade to a room, or none if they do not fit");
+    System.out.println("WATCH [FirstName LastName | RoomName] - Prints moves, attendance and clock changes as they happen");
+    System.out.println("UNWATCH - Stops printing changes");
+    System.out.println("PARA_GAPS - Lists rooms where a student who needs a para has none present");
+    System.out.println("AVAILABLE_ROOMS [seats] - Lists open rooms with the most free seats, or the tightest room with enough seats");
     System.out.println("OPEN_ROOM (RoomName) - Opens a closed room");
     System.out.println("CLOSE_ROOM (RoomName) - Closes an open room");
+    System.out.println("TAG_ROOM (RoomName) (allergens) - Marks a room as holding allergens, e.g. peanuts, dairy");
+    System.out.println("UNTAG_ROOM (RoomName) (allergens) - Removes allergen tags from a room");
+    System.out.println("ALLERGEN_REPORT - Lists rooms where a student is allergic to a room tag");
     System.out.println("CLOCK_IN (FirstName LastName) - Clocks staff in");
     System.out.println("CLOCK_OUT (FirstName LastName) - Clocks staff out");
+    System.out.println("HOURS [FirstName LastName] - Shows worked vs scheduled hours per pay period");
+    System.out.println("ON_DUTY [time] - Lists staff scheduled at a time of day (default now)");
+    System.out.println("COVERAGE [position] - Shows staff scheduled per 15 minutes by position");
     System.out.println("MARK_PRESENT (FirstName LastName) - Marks student present");
     System.out.println("MARK_ABSENT (FirstName LastName) - Marks student absent");
+    System.out.println("SNAPSHOT_ATTENDANCE [YYYY-MM-DD] - Records who is present in the attendance history");
+    System.out.println("ATTENDANCE_RATE (FirstName LastName) [from] [to] - Shows a student's attendance over recorded days");
+    System.out.println("CHRONIC_ABSENCE [percent] [from] [to] - Lists students attending less than 90% (or percent) of days");
+    System.out.println("SIBLINGS (FirstName LastName) - Lists students who share a guardian with a student");
+    System.out.println("FAMILY (Guardian Name) [phone] - Lists the students a guardian can pick up");
+    System.out.println("GUARDIAN_STATS - Shows how many guardians are shared between students");
+    System.out.println("PICKUP (FirstName LastName) (Guardian Name) [phone] - Checks a guardian and releases the student");
+    System.out.println("DISMISSAL - Shows dismissal queue status");
+    System.out.println("ROLLCALL [filename] - Prints the emergency roll call, optionally exporting it");
+    System.out.println("EXPORT (csv|jsonl) (directory) - Exports students, staff and rooms with current status");
+    System.out.println("REPLICATION - Shows primary/follower replication status");
     System.out.println("QUIT - Quits program\n");
   }
 
   /**
    * Prints information for all students in the system Shows numbered list with complete student
-   * details
+   * details, in load order or sorted, optionally one page at a time
+   *
+   * @param parts Command parts array with optional sort=, page= and size= options
    */
-  public static void printAllStudents() {
-    if (students.isEmpty()) {
-      System.out.println("No Students!");
-      return;
+  public static void printAllStudents(String[] parts) {
+    ListingOptions options = ListingOptions.parse(parts, STUDENT_SORTS);
+    if (options != null) {
+      printListing("Student", options, () -> options.sort == null ? students
+          : options.sort.equals("room") ? studentsByRoom()
+          : studentViews.get(options.sort).snapshot(), Student::toBytes, "No Students!");
+    }
+  }
+
+  /**
+   * Prints information for all staff members in the system Shows numbered list with complete staff
+   * details, in load order or sorted, optionally one page at a time
+   *
+   * @param parts Command parts array with optional sort=, page= and size= options
+   */
+  public static void printAllStaff(String[] parts) {
+    ListingOptions options = ListingOptions.parse(parts, staffViews.keySet());
+    if (options != null) {
+      printListing("Staff", options, () -> options.sort == null ? staff
+          : staffViews.get(options.sort).snapshot(), Staff::toBytes, "No Staff!");
     }
+  }
 
-    // Loop through all students and display their information
-    for (int i = 0; i < students.size(); i++) {
-      System.out.println("----- Student " + (i + 1) + " -----");
-      System.out.println(students.get(i));
+  /**
+   * Prints information for all rooms in the system
+   * Shows numbered list with complete room details, in load order or sorted, optionally one page
+   * at a time
+   *
+   * @param parts Command parts array with optional sort=, page= and size= options
+   */
+  public static void printAllRooms(String[] parts) {
+    ListingOptions options = ListingOptions.parse(parts, roomViews.keySet());
+    if (options != null) {
+      printListing("Room", options, () -> options.sort == null ? rooms
+          : roomViews.get(options.sort).snapshot(), Room::toBytes, "No Rooms!");
     }
   }
 
   /**
-   * Prints information for all staff members in the system Shows numbered list with complete staff
-   * details
+   * Renders the requested page of a listing and prints it Only the entries on the page are
+   * rendered, so a page costs the same however large the roster is
+   *
+   * @param <T>          Type of entry listed
+   * @param label        Label for each entry header, such as "Student"
+   * @param options      Requested page, if any
+   * @param order        Supplies every entry in listing order as a random-access list
+   * @param renderer     Renders one entry
+   * @param emptyMessage Message to print when there is nothing to list
    */
-  public static void printAllStaff() {
-    if (staff.isEmpty()) {
-      System.out.println("No Staff!");
+  private static <T> void printListing(String label, ListingOptions options,
+      Supplier<List<T>> order, Function<T, byte[]> renderer, String emptyMessage) {
+    int[] total = new int[1];
+    // Collect each entry's cached view; only entries changed since the last listing re-render
+    List<byte[]> views = readConsistent(() -> {
+      List<T> all = order.get();
+      total[0] = all.size();
+      int from = options.page == 0 ? 0 : Math.min(all.size(), (options.page - 1) * options.size);
+      int to = options.page == 0 ? all.size() : Math.min(all.size(), from + options.size);
+      List<byte[]> list = new ArrayList<>(to - from);
+      for (T entry : all.subList(from, to)) {
+        list.add(renderer.apply(entry));
+      }
+      return list;
+    });
+
+    if (options.page == 0) {
+      printListing(label, views, 1, emptyMessage);
+      return;
+    }
+    int pages = (total[0] + options.size - 1) / options.size;
+    if (views.isEmpty() && total[0] > 0) {
+      System.out.println("Page " + options.page + " is past the end; the last page is " + pages
+          + ".");
       return;
     }
+    printListing(label, views, (options.page - 1) * options.size + 1, emptyMessage);
+    if (!views.isEmpty()) {
+      System.out.println("Page " + options.page + " of " + pages + " (" + total[0] + " in all)");
+    }
+  }
 
-    // Loop through all staff and display their information
-    for (int i = 0; i < staff.size(); i++) {
-      System.out.println("----- Staff " + (i + 1) + " -----");
-      System.out.println(staff.get(i));
+  /**
+   * Lists the students who are in a room, room by room in name order The list reads each
+   * room's occupants in place, so building it costs one step per room rather than per student
+   *
+   * @return Students in rooms, in the order the rooms sort and then the order they arrived
+   */
+  private static List<Student> studentsByRoom() {
+    List<Room> ordered = roomViews.get("name").snapshot();
+    List<List<Student>> occupants = new ArrayList<>(ordered.size());
+    int[] ends = new int[ordered.size()];  // Running count of students up to each room
+    int count = 0;
+    for (int i = 0; i < ordered.size(); i++) {
+      occupants.add(ordered.get(i).getStudents());
+      count += occupants.get(i).size();
+      ends[i] = count;
     }
+    int size = count;
+
+    return new AbstractList<Student>() {
+      @Override
+      public Student get(int index) {
+        // First room whose running count passes the index
+        int room = Arrays.binarySearch(ends, index + 1);
+        if (room < 0) {
+          room = -room - 1;
+        }
+        while (room > 0 && ends[room - 1] == index + 1) {
+          room--;  // Skip back over empty rooms sharing the same running count
+        }
+        return occupants.get(room).get(index - (room == 0 ? 0 : ends[room - 1]));
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   /**
-   * Prints information for all rooms in the system
-   * Shows numbered list with complete room details
+   * Writes a numbered listing of pre-rendered views through one large buffer
+   *
+   * @param label        Label for each entry header, such as "Student"
+   * @param views        Rendered views in listing order
+   * @param first        Number of the first entry, above 1 for later pages
+   * @param emptyMessage Message to print when there is nothing to list
    */
-  public static void printAllRooms() {
-    if (rooms.isEmpty()) {
-      System.out.println("No Rooms!");
+  private static void printListing(String label, List<byte[]> views, int first,
+      String emptyMessage) {
+    if (views.isEmpty()) {
+      System.out.println(emptyMessage);
       return;
     }
 
-    // Loop through all rooms and display their information
-    for (int i = 0; i < rooms.size(); i++) {
-      System.out.println("----- Room " + (i + 1) + " -----");
-      System.out.println(rooms.get(i));
+    // Not closed, since that would close System.out
+    BufferedOutputStream out = new BufferedOutputStream(System.out, LISTING_BUFFER_SIZE);
+    try {
+      int i = first;
+      for (byte[] view : views) {
+        out.write(("----- " + label + " " + (i++) + " -----\n").getBytes(StandardCharsets.UTF_8));
+        out.write(view);
+        out.write('\n');
+      }
+      out.flush();
+    } catch (IOException e) {
+      System.out.println("Error writing listing: " + e.getMessage());
     }
   }
 
@@ -213,288 +905,1573 @@ public class Main {
    * @param roomName The name of the room to get information for
    */
   public static void handleRoomInfo(String roomName) {
-    Room found = findRoomByName(roomName);
-    if (found != null) {
-      System.out.println(found);
-      System.out.println("Staff-to-Student Ratio: " + found.getRatio());
+    System.out.print(readConsistent(() -> {
+      StringBuilder sb = new StringBuilder();
+      Room found = findRoomByName(roomName);
+      if (found == null) {
+        return sb.append("Room ").append(roomName).append(" not found!\n").toString();
+      }
+
+      List<Student> roomStudents = found.getStudents();
+      List<Staff> roomStaff = found.getStaff();
+      sb.append(found).append("\n");
+      sb.append("Staff-to-Student Ratio: ").append(found.getRatio()).append("\n");
 
       // List all students in the room
-      if (!found.getStudents().isEmpty()) {
-        System.out.println("Students in room:");
-        for (Student s : found.getStudents()) {
-          System.out.println("  - " + s.getName());
+      if (!roomStudents.isEmpty()) {
+        sb.append("Students in room:\n");
+        for (Student s : roomStudents) {
+          sb.append("  - ").append(s.getName()).append("\n");
         }
       }
 
       // List all staff in the room
-      if (!found.getStaff().isEmpty()) {
-        System.out.println("Staff in room:");
-        for (Staff s : found.getStaff()) {
-          System.out.println("  - " + s.getName() + " (" + s.getPosition() + ")");
+      if (!roomStaff.isEmpty()) {
+        sb.append("Staff in room:\n");
+        for (Staff s : roomStaff) {
+          sb.append("  - ").append(s.getName()).append(" (").append(s.getPosition()).append(")\n");
         }
       }
-    } else {
-      System.out.println("Room " + roomName + " not found!");
+      return sb.toString();
+    }));
+  }
+
+  /**
+   * Handles the ROLLCALL command to print the emergency roll call for every open room, followed
+   * by present students who are not in any room
+   *
+   * @param parts Command parts array optionally containing an export filename
+   */
+  public static void handleRollCall(String[] parts) {
+    long start = System.nanoTime();
+    RollCall.Report report = readConsistent(() -> RollCall.render(rooms, students, stateVersion));
+    RollCall.publish(report);
+    long rendered = System.nanoTime();
+
+    String filename = parts.length > 1 ? parts[1] : null;
+    try {
+      RollCall.write(report, filename);
+    } catch (IOException e) {
+      System.out.println("Could not export roll call to " + filename + ": " + e.getMessage());
     }
+    long written = System.nanoTime();
+
+    System.out.println(String.format("Roll call built in %.3f ms, written in %.3f ms%s",
+        (rendered - start) / 1e6, (written - rendered) / 1e6,
+        filename != null ? " and exported to " + filename : ""));
   }
 
   /**
-   * Handles the ASSIGN_STUDENT command to assign a student to a room
-   * @param parts Command parts array containing student name and room name
+   * Handles the EXPORT command to write students, staff and rooms with their current status to
+   * students, staff and rooms files in the given directory The read lock is held for the
+   * duration so all three files reflect the same moment
+   *
+   * @param parts Command parts array containing the format and directory
    */
-  public static void handleAssignStudent(String[] parts) {
-    if (parts.length < 4) {
-      System.out.println("Please enter first name, last name, and room name");
+  public static void handleExport(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter a format (csv or jsonl) and a directory");
       return;
     }
 
-    String studentName = parts[1] + " " + parts[2];
-    String roomName = parts[3];
+    String format = parts[1].toLowerCase();
+    if (!format.equals("csv") && !format.equals("jsonl")) {
+      System.out.println("Unknown export format: " + parts[1]);
+      return;
+    }
+    boolean json = format.equals("jsonl");
 
-    Student student = findStudentByName(studentName);
-    Room room = findRoomByName(roomName);
+    long start = System.nanoTime();
+    long stamp = stateLock.readLock();
+    try {
+      Path dir = Files.createDirectories(Paths.get(parts[2]));
+      int studentRows;
+      int staffRows;
+      int roomRows;
+      try (StateExporter out = new StateExporter(dir.resolve("students." + format))) {
+        studentRows = out.writeStudents(students, json);
+      }
+      try (StateExporter out = new StateExporter(dir.resolve("staff." + format))) {
+        staffRows = out.writeStaff(staff, json);
+      }
+      try (StateExporter out = new StateExporter(dir.resolve("rooms." + format))) {
+        roomRows = out.writeRooms(rooms, json);
+      }
 
-    if (student == null) {
-      System.out.println("Student " + studentName + " not found!");
+      System.out.println(String.format("Exported %d students, %d staff and %d rooms to %s in %.1f ms",
+          studentRows, staffRows, roomRows, dir, (System.nanoTime() - start) / 1e6));
+    } catch (IOException e) {
+      System.out.println("Export failed: " + e.getMessage());
+    } finally {
+      stateLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Handles the VALIDATE command to check a roster file without loading it
+   * @param parts Command parts array containing the file kind and filename
+   */
+  public static void handleValidate(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter a file kind (students, staff or rooms) and a filename");
+      return;
+    }
+    RosterValidator.Kind kind = RosterValidator.Kind.fromName(parts[1]);
+    if (kind == null) {
+      System.out.println("Unknown file kind: " + parts[1]);
+      return;
+    }
+    validateFile(kind, parts[2], false);
+  }
+
+  /**
+   * Handles the LOAD_ALL command The student, staff and room files are read at the same time on
+   * separate threads into staging lists, and only once all three have been read are they added
+   * to the roster together under the write lock. If any file is missing or, with STRICT, has
+   * problems, nothing is added
+   *
+   * @param parts Command parts array containing the three filenames and an optional STRICT
+   */
+  public static void handleLoadAll(String[] parts) {
+    boolean strict = isStrict(parts);
+    if (parts.length < (strict ? 5 : 4)) {
+      System.out.println("Please provide the students, staff and rooms filenames.");
+      return;
+    }
+    if (readOnly) {
+      System.out.println("This follower is read-only; run LOAD_ALL on the primary.");
       return;
     }
 
-    if (room == null) {
-      System.out.println("Room " + roomName + " not found!");
+    StagedFile<Student> studentFile = new StagedFile<>(RosterValidator.Kind.STUDENTS, parts[1],
+        Main::parseStudentFile);
+    StagedFile<Staff> staffFile = new StagedFile<>(RosterValidator.Kind.STAFF, parts[2],
+        Main::parseStaffFile);
+    StagedFile<Room> roomFile = new StagedFile<>(RosterValidator.Kind.ROOMS, parts[3],
+        Main::parseRoomFile);
+    List<StagedFile<?>> files = List.of(studentFile, staffFile, roomFile);
+
+    long start = System.nanoTime();
+    ExecutorService pool = Executors.newFixedThreadPool(files.size());
+    try {
+      List<Callable<Object>> tasks = new ArrayList<>();
+      for (StagedFile<?> file : files) {
+        tasks.add(Executors.callable(() -> stage(file, strict)));
+      }
+      pool.invokeAll(tasks);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("Loading interrupted; nothing loaded.");
+      return;
+    } finally {
+      pool.shutdown();
+    }
+
+    boolean allLoaded = true;
+    for (StagedFile<?> file : files) {
+      allLoaded &= file.loaded != null;
+    }
+    if (!allLoaded) {
+      // Only the files that failed are worth reading about
+      for (StagedFile<?> file : files) {
+        if (file.loaded == null) {
+          System.out.print(file.output);
+        }
+      }
+      System.out.println("Nothing loaded; the existing students, staff and rooms are unchanged.");
+      return;
+    }
+    for (StagedFile<?> file : files) {
+      System.out.print(file.output);
+    }
+
+    // Followers replay the three plain loads, which leave them in the same state
+    applyChange(() -> {
+      addStudents(studentFile.loaded);
+      addStaff(staffFile.loaded);
+      addRooms(roomFile.loaded);
+      return List.of("LOAD_STUDENTS " + parts[1], "LOAD_STAFF " + parts[2],
+          "LOAD_ROOMS " + parts[3]);
+    });
+    long total = System.nanoTime() - start;
+
+    EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "students", studentFile.loaded.size());
+    EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "staff", staffFile.loaded.size());
+    EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "rooms", roomFile.loaded.size());
+    EventSink.flush();
+
+    long sequential = 0;
+    for (StagedFile<?> file : files) {
+      System.out.println(String.format("  %s: %d %s in %.1f ms", file.filename,
+          file.loaded.size(), file.kind.name().toLowerCase(), file.nanos / 1e6));
+      sequential += file.nanos;
+    }
+    System.out.println(String.format(
+        "Loaded all three files in %.1f ms (%.1f ms one after another)", total / 1e6,
+        sequential / 1e6));
+  }
+
+  /**
+   * Validates if asked, then parses one LOAD_ALL file, capturing everything it prints
+   * @param file   The file to read
+   * @param strict Whether to validate it first
+   */
+  private static <T> void stage(StagedFile<T> file, boolean strict) {
+    long start = System.nanoTime();
+    file.output = CommandOutput.capture(() -> {
+      try {
+        if (strict && !validateFile(file.kind, file.filename, true)) {
+          return;
+        }
+        file.loaded = file.parser.parse(file.filename);
+      } catch (FileNotFoundException e) {
+        System.out.println("File not found: " + file.filename);
+      } catch (RuntimeException e) {
+        System.out.println("Could not load " + file.filename + ": " + e.getMessage());
+      }
+    });
+    file.nanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Checks whether a LOAD_* command asked for the file to be validated first
+   * @param parts Command parts array
+   * @return true if the last argument is STRICT
+   */
+  private static boolean isStrict(String[] parts) {
+    return parts.length > 2 && parts[parts.length - 1].equalsIgnoreCase("STRICT");
+  }
+
+  /**
+   * Validates a roster file, printing a summary and writing the full report next to it as
+   * (filename).errors.csv when there are problems
+   *
+   * @param kind     What the file holds
+   * @param filename The file to check
+   * @param loading  true if a strict load is waiting on the result
+   * @return true if the file has no problems
+   */
+  private static boolean validateFile(RosterValidator.Kind kind, String filename,
+      boolean loading) {
+    Set<String> existing;
+    switch (kind) {
+      case STUDENTS:
+        existing = studentMap.keySet();
+        break;
+      case STAFF:
+        existing = staffMap.keySet();
+        break;
+      default:
+        existing = roomMap.keySet();
+    }
+
+    long start = System.nanoTime();
+    try {
+      RosterValidator.Report report = RosterValidator.validate(Paths.get(filename), kind,
+          existing);
+      Path reportFile = Paths.get(filename + ".errors.csv");
+      if (!report.isClean()) {
+        report.write(reportFile);
+      }
+      report.printSummary(reportFile);
+      System.out.println(String.format("Validated %s in %.1f ms", filename,
+          (System.nanoTime() - start) / 1e6));
+      if (loading && !report.isClean()) {
+        System.out.println("Nothing loaded; fix the problems above or load without STRICT.");
+      }
+      return report.isClean();
+    } catch (NoSuchFileException e) {
+      System.out.println("File not found: " + filename);
+    } catch (IOException e) {
+      System.out.println("Validation failed: " + e.getMessage());
+    }
+    return false;
+  }
+
+  /**
+   * Applies a state change made outside the command loop, such as a dismissal, under the state
+   * write lock On a primary the command lines that reproduce the change are replicated while
+   * the lock is still held, so followers stay in step
+   *
+   * @param change Makes the change and returns the equivalent command lines
+   */
+  public static void applyChange(Supplier<List<String>> change) {
+    long stamp = stateLock.writeLock();
+    try {
+      List<String> lines = change.get();
+      if (ReplicationPrimary.isEnabled()) {
+        for (String line : lines) {
+          ReplicationPrimary.append(line);
+        }
+      }
+    } finally {
+      stateVersion++;
+      stateLock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Renders a view of the current state without blocking writers The renderer first runs
+   * against an optimistic stamp and is retried if a mutating command ran meanwhile; only after
+   * repeated conflicts does it fall back to the read lock
+   *
+   * @param renderer Builds the output from the current students, staff and rooms
+   * @param <T>      Type of the rendered view
+   * @return Output rendered from a single consistent point in time
+   */
+  public static <T> T readConsistent(Supplier<T> renderer) {
+    for (int attempt = 0; attempt < OPTIMISTIC_READ_ATTEMPTS; attempt++) {
+      long stamp = stateLock.tryOptimisticRead();
+      if (stamp == 0) {
+        continue;  // A writer holds the lock right now
+      }
+      try {
+        T view = renderer.get();
+        if (stateLock.validate(stamp)) {
+          return view;
+        }
+      } catch (RuntimeException e) {
+        // A torn read can fail part way; only a real error survives validation
+        if (stateLock.validate(stamp)) {
+          throw e;
+        }
+      }
+    }
+
+    return readLocked(renderer);
+  }
+
+  /**
+   * Reads the state under the read lock, for reads that must not be retried or must see the
+   * same moment as something writers update under the write lock
+   *
+   * @param <T>    Type of the result
+   * @param reader Reads the state
+   * @return The reader's result
+   */
+  public static <T> T readLocked(Supplier<T> reader) {
+    long stamp = stateLock.readLock();
+    try {
+      return reader.get();
+    } finally {
+      stateLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Lists the lowercase names of every student, staff member and room in this process, one per
+   * line as "student name", "staff name" or "room name" Used by the district router to learn
+   * which campus owns which keys
+   *
+   * @return Newline-separated keys
+   */
+  public static String ownedKeys() {
+    return readConsistent(() -> {
+      StringBuilder sb = new StringBuilder();
+      for (String name : studentMap.keySet()) {
+        sb.append("student ").append(name).append("\n");
+      }
+      for (String name : staffMap.keySet()) {
+        sb.append("staff ").append(name).append("\n");
+      }
+      for (String name : roomMap.keySet()) {
+        sb.append("room ").append(name).append("\n");
+      }
+      return sb.toString();
+    });
+  }
+
+  /**
+   * @return Version of the school state, incremented by every mutating command
+   */
+  public static long getStateVersion() {
+    return stateVersion;
+  }
+
+  /**
+   * @return Every student; the list is copy-on-write, so iterating it never sees a partial change
+   */
+  public static List<Student> getStudents() {
+    return Collections.unmodifiableList(students);
+  }
+
+  /**
+   * @return Every staff member
+   */
+  public static List<Staff> getStaff() {
+    return Collections.unmodifiableList(staff);
+  }
+
+  /**
+   * @return Every room
+   */
+  public static List<Room> getRooms() {
+    return Collections.unmodifiableList(rooms);
+  }
+
+  /**
+   * Handles the ASSIGN_STUDENT command to assign a student to a room
+   * @param parts Command parts array containing student name and room name
+   */
+  public static void handleAssignStudent(String[] parts) {
+    if (parts.length < 4) {
+      System.out.println("Please enter first name, last name, and room name");
+      return;
+    }
+
+    String studentName = parts[1] + " " + parts[2];
+    String roomName = parts[3];
+
+    Student student = findStudentByName(studentName);
+    Room room = findRoomByName(roomName);
+
+    if (student == null) {
+      System.out.println("Student " + studentName + " not found!");
+      return;
+    }
+
+    if (room == null) {
+      System.out.println("Room " + roomName + " not found!");
+      return;
+    }
+
+    // With OVERFLOW, a room that is closed, full or tagged with the student's allergies gives
+    // way to the open room with the most free seats
+    if (parts.length > 4 && parts[4].equalsIgnoreCase("OVERFLOW") && !canTake(room, student)) {
+      Room overflow = RoomAvailability.overflowFor(student, room);
+      if (overflow == null) {
+        System.out.println("Cannot assign student to " + roomName
+            + " and no other open room has a free seat.");
+        return;
+      }
+      System.out.println(roomName + " cannot take " + student.getName() + "; using "
+          + overflow.getName() + " instead.");
+      room = overflow;
+      roomName = overflow.getName();
+    }
+
+    // Check if room is closed
+    if (room.isClosed()) {
+      System.out.println("Cannot assign student to " + roomName + " - room is closed.");
+      return;
+    }
+
+    // Refuse before leaving the current room if the student is allergic to a room tag
+    if (room.checkAllergenConflict(student)) {
+      return;
+    }
+
+    // Remove student from any current room first
+    removeStudentFromAllRooms(student);
+
+    room.addStudent(student);
+  }
+
+  /**
+   * @return true if the room is open, has a free seat and holds nothing the student is allergic
+   *         to, or the student is already in it
+   */
+  private static boolean canTake(Room room, Student student) {
+    if (room.getStudents().contains(student)) {
+      return true;
+    }
+    return !room.isClosed() && room.getStudents().size() < room.getStudentCapacity()
+        && !student.getAllergenMask().intersects(room.getTagMask());
+  }
+
+  /**
+   * Handles the AVAILABLE_ROOMS command Without arguments it lists the open rooms with the most
+   * free seats; given a number of seats it finds the tightest open room that fits them, so
+   * bigger rooms stay free for bigger groups
+   *
+   * @param parts Command parts array with an optional number of seats
+   */
+  public static void handleAvailableRooms(String[] parts) {
+    if (parts.length > 1) {
+      int seats;
+      try {
+        seats = Integer.parseInt(parts[1]);
+      } catch (NumberFormatException e) {
+        System.out.println("Seats must be a number: " + parts[1]);
+        return;
+      }
+      if (seats <= 0) {
+        System.out.println("Seats must be at least 1: " + parts[1]);
+        return;
+      }
+      System.out.println(readConsistent(() -> {
+        Room room = RoomAvailability.firstWithSeats(seats);
+        return room == null ? "No open room has " + seats + " free seats."
+            : "Room " + room.getName() + " has " + freeSeats(room) + " free seats.";
+      }));
+      return;
+    }
+
+    System.out.print(readConsistent(() -> {
+      List<Room> roomiest = RoomAvailability.mostFree(AVAILABLE_ROOMS_LISTED);
+      if (roomiest.isEmpty()) {
+        return "No open rooms.\n";
+      }
+      StringBuilder sb = new StringBuilder("Open rooms with the most free seats ("
+          + RoomAvailability.openRooms() + " open):\n");
+      for (Room room : roomiest) {
+        sb.append("  ").append(room.getName()).append(": ").append(freeSeats(room))
+            .append(" of ").append(room.getStudentCapacity()).append(" seats free\n");
+      }
+      return sb.toString();
+    }));
+  }
+
+  /**
+   * Handles the WATCH command to print changes to a person, a room, or everyone as they happen
+   * Replaces any earlier WATCH; changes are printed through the event sink, so they appear with
+   * other messages before the next prompt
+   *
+   * @param parts Command parts array with an optional person or room name
+   */
+  public static synchronized void handleWatch(String[] parts) {
+    Predicate<ChangeFeed.Change> filter;
+    String watching;
+    if (parts.length >= 3) {
+      String fullName = parts[1] + " " + parts[2];
+      if (findStudentByName(fullName) == null && findStaffByName(fullName) == null) {
+        System.out.println(fullName + " Not found!");
+        return;
+      }
+      filter = ChangeFeed.forEntity(fullName);
+      watching = fullName;
+    } else if (parts.length == 2) {
+      if (findRoomByName(parts[1]) == null) {
+        System.out.println("Room " + parts[1] + " not found!");
+        return;
+      }
+      filter = ChangeFeed.forRoom(parts[1]);
+      watching = "room " + parts[1];
+    } else {
+      filter = change -> true;
+      watching = "everyone";
+    }
+
+    if (consoleWatch != null) {
+      consoleWatch.close();
+    }
+    consoleWatch = ChangeFeed.subscribe(filter, batch -> {
+      for (ChangeFeed.Change change : batch) {
+        EventSink.publish(EventSink.Type.MESSAGE, "[watch] " + change);
+      }
+    });
+    System.out.println("Watching " + watching + ". UNWATCH to stop.");
+  }
+
+  /**
+   * Handles the UNWATCH command to stop printing changes
+   */
+  public static synchronized void handleUnwatch() {
+    if (consoleWatch == null) {
+      System.out.println("Not watching anything.");
+      return;
+    }
+    consoleWatch.close();
+    consoleWatch = null;
+    System.out.println("Stopped watching.");
+  }
+
+  /**
+   * Handles the PARA_GAPS command to list rooms where a student who needs a paraprofessional
+   * has none present Reads only the rooms that have a gap
+   */
+  public static void handleParaGaps() {
+    System.out.print(readConsistent(() -> {
+      List<Room> gaps = ParaCoverage.gaps();
+      if (gaps.isEmpty()) {
+        return "Every student who needs a para has one in the room.\n";
+      }
+      StringBuilder sb = new StringBuilder("Rooms without para coverage:\n");
+      for (Room room : gaps) {
+        sb.append("  ").append(room.getName()).append(": ").append(room.getParaStudentCount())
+            .append(" student(s) need a para, ").append(room.getStaff().size())
+            .append(" staff present\n");
+      }
+      return sb.toString();
+    }));
+  }
+
+  private static int freeSeats(Room room) {
+    return room.getStudentCapacity() - room.getStudents().size();
+  }
+
+  /**
+   * Handles the ASSIGN_STAFF command to assign a staff member to a room
+   * @param parts Command parts array containing staff name and room name
+   */
+  public static void handleAssignStaff(String[] parts) {
+    if (parts.length < 4) {
+      System.out.println("Please enter first name, last name, and room name");
+      return;
+    }
+
+    String staffName = parts[1] + " " + parts[2];
+    String roomName = parts[3];
+
+    Staff staffMember = findStaffByName(staffName);
+    Room room = findRoomByName(roomName);
+
+    if (staffMember == null) {
+      System.out.println("Staff " + staffName + " not found!");
+      return;
+    }
+
+    if (room == null) {
+      System.out.println("Room " + roomName + " not found!");
+      return;
+    }
+
+    // Check if room is closed
+    if (room.isClosed()) {
+      System.out.println("Cannot assign staff to " + roomName + " - room is closed.");
+      return;
+    }
+
+    // Remove staff from any current room first
+    removeStaffFromAllRooms(staffMember);
+
+    room.addStaff(staffMember);
+  }
+
+  /**
+   * Handles the MOVE_ROOM command to move every student and staff member in one room to another
+   * Capacity and allergen tags are checked for the whole group before anyone moves, so either
+   * everyone moves or no one does
+   *
+   * @param parts Command parts array containing the two room names
+   */
+  public static void handleMoveRoom(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter the room to move from and the room to move to");
+      return;
+    }
+
+    Room from = findRoomByName(parts[1]);
+    Room to = findRoomByName(parts[2]);
+    if (from == null || to == null) {
+      System.out.println("Room " + (from == null ? parts[1] : parts[2]) + " not found!");
+      return;
+    }
+    if (from == to) {
+      System.out.println("Students are already in " + to.getName() + ".");
+      return;
+    }
+    if (to.isClosed()) {
+      System.out.println("Cannot move to " + to.getName() + " - room is closed.");
+      return;
+    }
+
+    List<Student> moving = from.getStudents();
+    int movingStaff = from.getStaff().size();
+    if (moving.isEmpty() && movingStaff == 0) {
+      System.out.println("Room " + from.getName() + " is empty.");
+      return;
+    }
+
+    // The room's allergy mask covers every student in it, so one test rules out a conflict
+    if (from.getAllergenMask().intersects(to.getTagMask())) {
+      List<Student> conflicts = new ArrayList<>();
+      for (Student student : moving) {
+        if (student.getAllergenMask().intersects(to.getTagMask())) {
+          conflicts.add(student);
+        }
+      }
+      System.out.println("Nobody moved - " + to.getName() + " holds "
+          + AllergenDictionary.ALLERGENS.describe(
+              AllergenDictionary.both(from.getAllergenMask(), to.getTagMask())) + ", which "
+          + namesOf(conflicts) + (conflicts.size() == 1 ? " is" : " are") + " allergic to.");
+      return;
+    }
+
+    int free = to.getStudentCapacity() - to.getStudents().size();
+    if (moving.size() > free) {
+      System.out.println("Nobody moved - " + to.getName() + " has room for " + free
+          + " more students but " + from.getName() + " has " + moving.size() + ".");
+      return;
+    }
+
+    int movingStudents = moving.size();
+    from.moveOccupantsTo(to);
+    System.out.println("Moved " + movingStudents + " students and " + movingStaff + " staff from "
+        + from.getName() + " to " + to.getName() + ".");
+  }
+
+  /**
+   * Handles the ASSIGN_GRADE command to assign every present student in a grade to a room
+   * Students are found through the grade index and taken out of their current rooms one room
+   * at a time, so the work grows with the number of students moved rather than the school. If
+   * the room cannot take all of them, no one is moved
+   *
+   * @param parts Command parts array containing the grade and room name
+   */
+  public static void handleAssignGrade(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter a grade and room name");
+      return;
+    }
+
+    int grade;
+    try {
+      grade = Integer.parseInt(parts[1]);
+    } catch (NumberFormatException e) {
+      System.out.println("Grade must be a number: " + parts[1]);
+      return;
+    }
+    Room room = findRoomByName(parts[2]);
+    if (room == null) {
+      System.out.println("Room " + parts[2] + " not found!");
+      return;
+    }
+    if (room.isClosed()) {
+      System.out.println("Cannot assign students to " + room.getName() + " - room is closed.");
+      return;
+    }
+
+    // Present students of the grade who are not already in the room, grouped by current room
+    List<Student> moving = new ArrayList<>();
+    List<Student> conflicts = new ArrayList<>();
+    Map<Room, Set<Student>> leaving = new HashMap<>();
+    int alreadyThere = 0;
+    for (Student student : studentsByGrade.getOrDefault(grade, Collections.emptyList())) {
+      if (!student.isPresent()) {
+        continue;
+      }
+      Room current = findRoomByName(student.getLocation());
+      if (current == room) {
+        alreadyThere++;
+        continue;
+      }
+      if (student.getAllergenMask().intersects(room.getTagMask())) {
+        conflicts.add(student);
+      }
+      moving.add(student);
+      if (current != null) {
+        leaving.computeIfAbsent(current, r -> new HashSet<>()).add(student);
+      }
+    }
+
+    if (moving.isEmpty()) {
+      System.out.println(alreadyThere == 0 ? "No present students in grade " + grade + "."
+          : "Every present student in grade " + grade + " is already in " + room.getName() + ".");
+      return;
+    }
+    if (!conflicts.isEmpty()) {
+      System.out.println("Nobody moved - " + room.getName() + " holds "
+          + AllergenDictionary.ALLERGENS.describe(room.getTagMask()) + ", which "
+          + namesOf(conflicts)
+          + (conflicts.size() == 1 ? " is" : " are") + " allergic to.");
+      return;
+    }
+    int free = room.getStudentCapacity() - room.getStudents().size();
+    if (moving.size() > free) {
+      System.out.println("Nobody moved - " + room.getName() + " has room for " + free
+          + " more students but " + moving.size() + " present students in grade " + grade
+          + " need a place.");
+      return;
+    }
+
+    for (Map.Entry<Room, Set<Student>> entry : leaving.entrySet()) {
+      entry.getKey().removeStudents(entry.getValue());
+    }
+    room.addStudents(moving);
+    System.out.println("Assigned " + moving.size() + " grade " + grade + " students to "
+        + room.getName() + (alreadyThere > 0 ? " (" + alreadyThere + " already there)." : "."));
+  }
+
+  /**
+   * @return Names of the students separated by commas, for messages
+   */
+  private static String namesOf(List<Student> students) {
+    StringBuilder sb = new StringBuilder();
+    for (Student student : students) {
+      sb.append(sb.length() > 0 ? ", " : "").append(student.getName());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Removes a student from all rooms they might be assigned to
+   * @param student The student to remove from all rooms
+   */
+  public static void removeStudentFromAllRooms(Student student) {
+    for (Room room : rooms) {
+      if (room.removeStudent(student)) {
+        EventSink.publish(EventSink.Type.REMOVED_FROM_ROOM, student.getName(), room.getName());
+        break; // Student should only be in one room at a time
+      }
+    }
+  }
+
+  /**
+   * Removes a staff member from all rooms they might be assigned to
+   * @param staff The staff member to remove from all rooms
+   */
+  private static void removeStaffFromAllRooms(Staff staff) {
+    for (Room room : rooms) {
+      if (room.removeStaff(staff)) {
+        EventSink.publish(EventSink.Type.REMOVED_FROM_ROOM, staff.getName(), room.getName());
+        break; // Staff should only be in one room at a time
+      }
+    }
+  }
+
+  /**
+   * Handles the OPEN_ROOM command to open a closed room
+   * @param roomName The name of the room to open
+   */
+  public static void handleOpenRoom(String roomName) {
+    Room room = findRoomByName(roomName);
+
+    if (room == null) {
+      System.out.println("Room " + roomName + " not found!");
+      return;
+    }
+
+    if (!room.isClosed()) {
+      System.out.println("Room " + roomName + " is already open!");
+    } else {
+      room.setClosed(false);
+      System.out.println("Room " + roomName + " has been opened.");
+    }
+  }
+
+  /**
+   * Handles the CLOSE_ROOM command to close an open room
+   * @param roomName The name of the room to close
+   */
+  public static void handleCloseRoom(String roomName) {
+    Room room = findRoomByName(roomName);
+
+    if (room == null) {
+      System.out.println("Room " + roomName + " not found!");
+      return;
+    }
+
+    if (room.isClosed()) {
+      System.out.println("Room " + roomName + " is already closed!");
+    } else {
+      // Remove all students and staff from the room before closing
+      int studentCount = room.getStudents().size();
+      int staffCount = room.getStaff().size();
+
+      // Clear students and staff and reset their locations
+      room.clearOccupants();
+
+      // Close the room
+      room.setClosed(true);
+
+      System.out.println("Room " + roomName + " has been closed.");
+      if (studentCount > 0 || staffCount > 0) {
+        System.out.println("Removed " + studentCount + " students and " + staffCount + " staff from the room.");
+      }
+    }
+  }
+
+  /**
+   * Handles the TAG_ROOM and UNTAG_ROOM commands to add or remove a room's allergen tags
+   * Tagging warns about students already in the room who are allergic to the new tags
+   *
+   * @param command TAG_ROOM or UNTAG_ROOM
+   * @param parts   Command parts array containing the room name and allergens
+   */
+  public static void handleRoomTags(String command, String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter a room name and one or more allergens");
+      return;
+    }
+    Room room = findRoomByName(parts[1]);
+    if (room == null) {
+      System.out.println("Room " + parts[1] + " not found!");
+      return;
+    }
+
+    AllergenDictionary allergens = AllergenDictionary.ALLERGENS;
+    BitSet mask = allergens.maskOfArguments(Arrays.copyOfRange(parts, 2, parts.length));
+    if (mask.isEmpty()) {
+      System.out.println("No allergens given.");
+      return;
+    }
+
+    if (command.equals("UNTAG_ROOM")) {
+      room.removeTags(mask);
+      System.out.println("Removed " + allergens.describe(mask) + " from " + room.getName());
+      return;
+    }
+
+    room.addTags(mask);
+    System.out.println("Tagged " + room.getName() + " with " + allergens.describe(mask));
+    if (mask.intersects(room.getAllergenMask())) {
+      System.out.print(describeConflicts(room,
+          AllergenDictionary.both(mask, room.getAllergenMask())));
+    }
+  }
+
+  /**
+   * Handles the ALLERGEN_REPORT command Rooms are checked with one mask operation each, and
+   * students are only listed for rooms that are actually at risk
+   */
+  public static void handleAllergenReport() {
+    String report = readConsistent(() -> {
+      StringBuilder sb = new StringBuilder("----- Allergen Report -----\n");
+      int atRisk = 0;
+      for (Room room : rooms) {
+        BitSet conflict = room.getConflictMask();
+        if (!conflict.isEmpty()) {
+          atRisk++;
+          sb.append("AT RISK: ").append(room.getName()).append(" holds ")
+              .append(AllergenDictionary.ALLERGENS.describe(room.getTagMask())).append("\n");
+          sb.append(describeConflicts(room, conflict));
+        }
+      }
+      if (atRisk == 0) {
+        sb.append("No rooms at risk.\n");
+      }
+
+      // Allergies present in each occupied room, to help decide what to tag or keep out
+      sb.append("Allergies by room:\n");
+      boolean any = false;
+      for (Room room : rooms) {
+        BitSet present = room.getAllergenMask();
+        if (present.isEmpty()) {
+          continue;
+        }
+        any = true;
+        sb.append("  ").append(room.getName()).append(": ");
+        String separator = "";
+        for (int id = present.nextSetBit(0); id >= 0; id = present.nextSetBit(id + 1)) {
+          sb.append(separator).append(AllergenDictionary.ALLERGENS.nameOf(id)).append(" (")
+              .append(room.getAllergenCount(id)).append(")");
+          separator = ", ";
+        }
+        if (!room.getMedsMask().isEmpty()) {
+          sb.append("; medications: ")
+              .append(AllergenDictionary.MEDICATIONS.describe(room.getMedsMask()));
+        }
+        sb.append("\n");
+      }
+      if (!any) {
+        sb.append("  No allergic students are in a room.\n");
+      }
+      return sb.toString();
+    });
+    System.out.print(report);
+  }
+
+  /**
+   * Lists the students in a room who are allergic to any of the given allergens
+   *
+   * @param room     The room to check
+   * @param conflict Bitmask of allergens to look for
+   * @return One line per affected student
+   */
+  private static String describeConflicts(Room room, BitSet conflict) {
+    StringBuilder sb = new StringBuilder();
+    for (Student student : room.getStudents()) {
+      if (student.getAllergenMask().intersects(conflict)) {
+        BitSet hit = AllergenDictionary.both(student.getAllergenMask(), conflict);
+        sb.append("  Warning: ").append(student.getName()).append(" is allergic to ")
+            .append(AllergenDictionary.ALLERGENS.describe(hit)).append("\n");
+      }
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Handles the INFO command to display information about a person Searches both student and staff
+   * lists for the given name
+   *
+   * @param parts Command parts array containing first and last name
+   */
+  public static void handleInfo(String[] parts) {
+    // Check if enough parameters were provided
+    if (parts.length < 3) {
+      System.out.println("Please enter first and last name");
+      return;
+    }
+
+    // Combine first and last name
+    String fullName = parts[1] + " " + parts[2];
+
+    // Search in both student and staff collections
+    Student foundStudent = findStudentByName(fullName);
+    Staff foundStaff = findStaffByName(fullName);
+
+    // Display found information
+    System.out.print(readConsistent(() -> {
+      StringBuilder sb = new StringBuilder();
+      if (foundStudent != null) {
+        sb.append(foundStudent).append("\n");
+      }
+      if (foundStaff != null) {
+        sb.append(foundStaff).append("\n");
+      }
+      if (foundStudent == null && foundStaff == null) {
+        StudentArchive.Record archived = archive.find(fullName);
+        if (archived != null) {
+          sb.append("Archived student:\n").append(archived.toStudent()).append("\n");
+        } else {
+          sb.append(fullName).append(" not found!\n");
+        }
+      }
+      return sb.toString();
+    }));
+  }
+
+  /**
+   * Handles the ARCHIVE_LOAD, ARCHIVE_SAVE and ARCHIVE_OPEN commands for the off-heap archive
+   *
+   * @param command The archive command
+   * @param parts   Command parts array containing the file name
+   */
+  public static void handleArchive(String command, String[] parts) {
+    if (parts.length < 2) {
+      System.out.println("Please enter a filename");
+      return;
+    }
+    String filename = String.join(" ", Arrays.copyOfRange(parts, 1, parts.length));
+    Path file = Paths.get(filename);
+    if (!command.equals("ARCHIVE_SAVE")) {
+      if (command.equals("ARCHIVE_OPEN")) {
+        archiveCommands.clear();
+      }
+      archiveCommands.add(command + " " + filename);
+    }
+    try {
+      switch (command) {
+        case "ARCHIVE_LOAD":
+          loadArchiveFromFile(file);
+          break;
+        case "ARCHIVE_SAVE":
+          archive.save(file);
+          System.out.println("Saved " + archive.size() + " archived students to " + filename);
+          break;
+        default:
+          archive = StudentArchive.open(file);
+          System.out.println("Opened archive of " + archive.size() + " students from " + filename);
+      }
+    } catch (NoSuchFileException e) {
+      System.out.println("File not found: " + filename);
+    } catch (IOException e) {
+      System.out.println("Could not " + (command.equals("ARCHIVE_SAVE") ? "save" : "read")
+          + " " + filename + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds every student in a student file to the archive Rows are stored as text without
+   * building Students, so no per-row message is printed; malformed rows are counted
+   *
+   * @param file Student file in the LOAD_STUDENTS format
+   * @throws IOException if the file cannot be read
+   */
+  private static void loadArchiveFromFile(Path file) throws IOException {
+    int added = 0;
+    int replaced = 0;
+    int skipped = 0;
+    try (BufferedReader reader = Files.newBufferedReader(file)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        String[] parts = RowParser.splitFields(line);
+        int grade;
+        try {
+          grade = parts.length >= 7 ? Integer.parseInt(parts[1].trim()) : -1;
+        } catch (NumberFormatException e) {
+          grade = -1;
+        }
+        if (grade < 0) {
+          skipped++;
+          continue;
+        }
+        if (archive.add(parts[0].trim(), grade, parts[2].trim(), parts[3].trim(),
+            parts[4].trim(), parts[5].trim().equalsIgnoreCase("yes"), parts[6].trim())) {
+          added++;
+        } else {
+          replaced++;
+        }
+      }
+    }
+    System.out.println("Archived " + added + " students"
+        + (replaced > 0 ? ", updated " + replaced : "")
+        + (skipped > 0 ? ", skipped " + skipped + " malformed rows" : ""));
+  }
+
+  /**
+   * Handles the ARCHIVE_STATS command Reports the archive's size next to heap use and the
+   * collector's totals, so the effect of archiving on garbage collection can be seen
+   */
+  public static void handleArchiveStats() {
+    Runtime runtime = Runtime.getRuntime();
+    StringBuilder sb = new StringBuilder();
+    int superseded = archive.recordCount() - archive.size();
+    sb.append(String.format("Archive: %d students%s, %.1f MB off-heap%s%n", archive.size(),
+        superseded > 0 ? " (" + superseded + " superseded records)" : "",
+        archive.offHeapBytes() / 1e6, archive.isMapped() ? " (mapped from file)" : ""));
+    sb.append(String.format("Heap: %.1f MB used of %.1f MB%n",
+        (runtime.totalMemory() - runtime.freeMemory()) / 1e6, runtime.totalMemory() / 1e6));
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      sb.append(String.format("GC %s: %d collections, %d ms total%n", gc.getName(),
+          gc.getCollectionCount(), gc.getCollectionTime()));
+    }
+    System.out.print(sb);
+  }
+
+  /**
+   * Handles attendance commands (MARK_PRESENT and MARK_ABSENT) Updates student attendance status
+   *
+   * @param command The attendance command (MARK_PRESENT or MARK_ABSENT)
+   * @param parts   Command parts array containing the student name
+   */
+  public static void handleAttendance(String command, String[] parts) {
+    // Check if enough parameters were provided
+    if (parts.length < 3) {
+      System.out.println("Please enter first and last name");
+      return;
+    }
+
+    // Combine first and last name and search for student
+    String fullName = parts[1] + " " + parts[2];
+    Student found = findStudentByName(fullName);
+
+    if (found != null) {
+      // Call appropriate method based on command
+      if (command.equals("MARK_PRESENT")) {
+        found.markPresent();
+      } else {
+        found.markAbsent();
+        removeStudentFromAllRooms(found);
+      }
+    } else {
+      System.out.println(fullName + " Not found!");
+    }
+  }
+
+  /**
+   * Handles the SIBLINGS command to list the students who share a guardian with a student
+   * @param parts Command parts array containing the student's first and last name
+   */
+  public static void handleSiblings(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter first and last name");
+      return;
+    }
+    String fullName = parts[1] + " " + parts[2];
+    Student student = findStudentByName(fullName);
+    if (student == null) {
+      System.out.println(fullName + " Not found!");
+      return;
+    }
+
+    List<Student> siblings = GuardianPool.siblingsOf(student, students);
+    if (siblings.isEmpty()) {
+      System.out.println(student.getName() + " has no siblings on the roster.");
+      return;
+    }
+    StringBuilder sb = new StringBuilder("Siblings of " + student.getName() + ":\n");
+    for (Student sibling : siblings) {
+      sb.append("  ").append(sibling.getName()).append(" (grade ").append(sibling.getGrade())
+          .append(", ").append(sibling.getLocation()).append(")\n");
+    }
+    System.out.print(sb);
+  }
+
+  /**
+   * Handles the FAMILY command to list the students who list a guardian A trailing number is
+   * taken as the guardian's phone number, to tell apart people with the same name
+   *
+   * @param parts Command parts array containing the guardian's name and optional phone number
+   */
+  public static void handleFamily(String[] parts) {
+    int nameEnd = parts.length;
+    String phone = null;
+    if (nameEnd > 2 && parts[nameEnd - 1].matches("[0-9()+\\-.]+")) {
+      phone = parts[--nameEnd];
+    }
+    if (nameEnd < 2) {
+      System.out.println("Please enter the guardian's name");
+      return;
+    }
+    String name = String.join(" ", Arrays.copyOfRange(parts, 1, nameEnd));
+
+    Map<Guardian, List<Student>> families = GuardianPool.familyOf(name, phone, students);
+    if (families.isEmpty()) {
+      System.out.println("No student lists " + name + (phone == null ? "" : " at " + phone)
+          + " as a guardian.");
+      return;
+    }
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<Guardian, List<Student>> family : families.entrySet()) {
+      sb.append(family.getKey().getName()).append(", Phone: ")
+          .append(family.getKey().getPhoneNumber()).append(":\n");
+      for (Student child : family.getValue()) {
+        sb.append("  ").append(child.getName()).append(" (grade ").append(child.getGrade())
+            .append(", ").append(child.getLocation()).append(")\n");
+      }
+    }
+    System.out.print(sb);
+  }
+
+  /**
+   * Handles the GUARDIAN_STATS command to show how much guardian sharing saves
+   */
+  public static void handleGuardianStats() {
+    long[] stats = GuardianPool.stats();
+    System.out.println("Distinct guardians: " + stats[0]);
+    System.out.println("Guardian entries decoded for students: " + stats[1]);
+    System.out.println("Copies avoided by sharing: " + (stats[1] - stats[0]));
+  }
+
+  /**
+   * Handles the PICKUP command by queueing the request at the dismissal desk and waiting for
+   * its decision A trailing number is taken as the guardian's phone number
+   *
+   * @param parts Command parts array containing the student name, guardian name and phone
+   */
+  public static void handlePickup(String[] parts) {
+    if (parts.length < 4) {
+      System.out.println("Please enter the student's first and last name, then the guardian's name");
+      return;
+    }
+    if (readOnly) {
+      System.out.println("This follower is read-only; run PICKUP on the primary.");
+      return;
+    }
+
+    String studentName = parts[1] + " " + parts[2];
+    int guardianEnd = parts.length;
+    String phone = null;
+    if (parts.length > 4 && Character.isDigit(parts[parts.length - 1].charAt(0))) {
+      phone = parts[parts.length - 1];
+      guardianEnd--;
+    }
+    String guardianName = String.join(" ", Arrays.copyOfRange(parts, 3, guardianEnd));
+
+    try {
+      DismissalDesk.Result result = DismissalDesk.submit(studentName, guardianName, phone)
+          .get(PICKUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+      System.out.println(result.getMessage());
+    } catch (TimeoutException e) {
+      System.out.println("Pickup for " + studentName + " is still queued; check DISMISSAL.");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      System.out.println("Pickup failed: " + e.getCause());
+    }
+  }
+
+  /**
+   * Handles clocking commands (CLOCK_IN and CLOCK_OUT) Updates staff clock status
+   *
+   * @param command The clocking command (CLOCK_IN or CLOCK_OUT)
+   * @param parts   Command parts array containing the staff name
+   */
+  public static void handleClocking(String command, String[] parts) {
+    // Check if enough parameters were provided
+    if (parts.length < 3) {
+      System.out.println("Please enter first and last name");
+      return;
+    }
+
+    // Combine first and last name and search for staff
+    String fullName = parts[1] + " " + parts[2];
+    Staff found = findStaffByName(fullName);
+
+    if (found != null) {
+      // Call appropriate method based on command, recording a punch when the status changes
+      if (command.equals("CLOCK_IN")) {
+        if (found.clockIn()) {
+          PunchLog.record(found, PunchLog.Type.IN);
+        }
+      } else {
+        if (found.clockOut()) {
+          PunchLog.record(found, PunchLog.Type.OUT);
+        }
+        removeStaffFromAllRooms(found);
+      }
+    } else {
+      System.out.println(fullName + " Not found!");
+    }
+  }
+
+  /**
+   * Handles the HOURS command to report worked hours per pay period Reports on a single staff
+   * member when a name is given, otherwise on every staff member
+   *
+   * @param parts Command parts array optionally containing the staff name
+   */
+  public static void handleHours(String[] parts) {
+    if (parts.length >= 3) {
+      String fullName = parts[1] + " " + parts[2];
+      Staff found = findStaffByName(fullName);
+      if (found == null) {
+        System.out.println(fullName + " Not found!");
+        return;
+      }
+      PunchLog.printHours(found);
       return;
     }
 
-    // Check if room is closed
-    if (room.isClosed()) {
-      System.out.println("Cannot assign student to " + roomName + " - room is closed.");
+    if (staff.isEmpty()) {
+      System.out.println("No Staff!");
       return;
     }
 
-    // Remove student from any current room first
-    removeStudentFromAllRooms(student);
-
-    room.addStudent(student);
+    // Each staff member's punches are streamed from their own file in turn
+    for (Staff staffMember : staff) {
+      PunchLog.printHours(staffMember);
+    }
   }
 
   /**
-   * Handles the ASSIGN_STAFF command to assign a staff member to a room
-   * @param parts Command parts array containing staff name and room name
+   * Handles the ON_DUTY command to list the staff scheduled at a time of day
+   * @param parts Command parts array, optionally containing a time such as 10:30am
    */
-  public static void handleAssignStaff(String[] parts) {
-    if (parts.length < 4) {
-      System.out.println("Please enter first name, last name, and room name");
-      return;
+  public static void handleOnDuty(String[] parts) {
+    int minute;
+    if (parts.length > 1) {
+      minute = Shift.parseTime(String.join("", Arrays.copyOfRange(parts, 1, parts.length)));
+      if (minute < 0) {
+        System.out.println("Please enter a time such as 10:30am or 14:00");
+        return;
+      }
+    } else {
+      LocalTime now = LocalTime.now();
+      minute = now.getHour() * 60 + now.getMinute();
     }
 
-    String staffName = parts[1] + " " + parts[2];
-    String roomName = parts[3];
-
-    Staff staffMember = findStaffByName(staffName);
-    Room room = findRoomByName(roomName);
-
-    if (staffMember == null) {
-      System.out.println("Staff " + staffName + " not found!");
-      return;
+    List<Staff> found = currentShiftIndex().onDuty(minute);
+    StringBuilder sb = new StringBuilder();
+    sb.append("On duty at ").append(Shift.formatTime(minute)).append(": ").append(found.size())
+        .append(" staff\n");
+    for (Staff member : found) {
+      sb.append("  ").append(member.getName()).append(" (").append(member.getPosition())
+          .append(") ").append(Shift.format(member.getShifts())).append("\n");
     }
+    System.out.print(sb);
+  }
 
-    if (room == null) {
-      System.out.println("Room " + roomName + " not found!");
-      return;
+  /**
+   * Handles the COVERAGE command to show how many staff are scheduled in each 15-minute slot,
+   * broken down by position Only the part of the day with anyone scheduled is shown
+   *
+   * @param parts Command parts array, optionally containing a position to show on its own
+   */
+  public static void handleCoverage(String[] parts) {
+    ShiftIndex index = currentShiftIndex();
+    Map<String, int[]> byPosition = index.getSlotsByPosition();
+    int[] totals = index.getSlotTotals();
+
+    if (parts.length > 1) {
+      String position = String.join(" ", Arrays.copyOfRange(parts, 1, parts.length));
+      totals = byPosition.get(position);
+      if (totals == null) {
+        System.out.println("No staff with position " + position + " have a shift.");
+        return;
+      }
+      byPosition = Map.of(position, totals);
     }
 
-    // Check if room is closed
-    if (room.isClosed()) {
-      System.out.println("Cannot assign staff to " + roomName + " - room is closed.");
+    int first = 0;
+    int last = totals.length - 1;
+    while (first <= last && totals[first] == 0) {
+      first++;
+    }
+    while (last >= first && totals[last] == 0) {
+      last--;
+    }
+    if (first > last) {
+      System.out.println("No staff shifts scheduled.");
       return;
     }
 
-    // Remove staff from any current room first
-    removeStaffFromAllRooms(staffMember);
-
-    room.addStaff(staffMember);
+    StringBuilder sb = new StringBuilder("Staff scheduled per " + ShiftIndex.SLOT_MINUTES
+        + " minutes:\n");
+    for (int slot = first; slot <= last; slot++) {
+      sb.append(String.format("  %-8s %4d", Shift.formatTime(slot * ShiftIndex.SLOT_MINUTES),
+          totals[slot]));
+      String separator = "  ";
+      for (Map.Entry<String, int[]> position : byPosition.entrySet()) {
+        int count = position.getValue()[slot];
+        if (count > 0) {
+          sb.append(separator).append(position.getKey()).append(": ").append(count);
+          separator = ", ";
+        }
+      }
+      sb.append("\n");
+    }
+    if (index.getUnscheduledCount() > 0) {
+      sb.append(index.getUnscheduledCount()).append(" staff have a shift that could not be read.\n");
+    }
+    System.out.print(sb);
   }
 
   /**
-   * Removes a student from all rooms they might be assigned to
-   * @param student The student to remove from all rooms
+   * Returns the schedule index for the current staff, building it again only if staff were
+   * loaded or a schedule changed since it was last built
+   *
+   * @return Up-to-date schedule index
    */
-  private static void removeStudentFromAllRooms(Student student) {
-    for (Room room : rooms) {
-      if (room.getStudents().contains(student)) {
-        room.getStudents().remove(student);
-        student.setLocation("N/A");
-        System.out.println("Removed " + student.getName() + " from " + room.getName());
-        break; // Student should only be in one room at a time
-      }
+  private static ShiftIndex currentShiftIndex() {
+    ShiftIndex index = shiftIndex;
+    if (index == null || index.getVersion() != Staff.getScheduleVersion()) {
+      index = readConsistent(() -> new ShiftIndex(staff, Staff.getScheduleVersion()));
+      shiftIndex = index;
     }
+    return index;
   }
 
   /**
-   * Removes a staff member from all rooms they might be assigned to
-   * @param staff The staff member to remove from all rooms
+   * Handles the SNAPSHOT_ATTENDANCE command to record today's presence in the attendance history
+   * @param parts Command parts array, optionally containing the date to record it under
    */
-  private static void removeStaffFromAllRooms(Staff staff) {
-    for (Room room : rooms) {
-      if (room.getStaff().contains(staff)) {
-        room.getStaff().remove(staff);
-        staff.setLocation("N/A");
-        System.out.println("Removed " + staff.getName() + " from " + room.getName());
-        break; // Staff should only be in one room at a time
-      }
+  public static void handleSnapshotAttendance(String[] parts) {
+    LocalDate day = parts.length > 1 ? parseDate(parts[1]) : LocalDate.now();
+    if (day == null) {
+      return;
+    }
+    if (students.isEmpty()) {
+      System.out.println("No Students!");
+      return;
+    }
+    try {
+      int present = AttendanceHistory.snapshot(students, day);
+      System.out.println("Recorded attendance for " + day + ": " + present + " of "
+          + students.size() + " present");
+    } catch (IOException e) {
+      System.out.println("Could not write attendance history: " + e.getMessage());
     }
   }
 
   /**
-   * Handles the OPEN_ROOM command to open a closed room
-   * @param roomName The name of the room to open
+   * Handles the ATTENDANCE_RATE command to show one student's attendance over a range of days
+   * @param parts Command parts array containing the student name and an optional date range
    */
-  public static void handleOpenRoom(String roomName) {
-    Room room = findRoomByName(roomName);
-
-    if (room == null) {
-      System.out.println("Room " + roomName + " not found!");
+  public static void handleAttendanceRate(String[] parts) {
+    if (parts.length < 3) {
+      System.out.println("Please enter first and last name");
+      return;
+    }
+    LocalDate[] range = parseDateRange(parts, 3);
+    if (range == null) {
       return;
     }
 
-    if (!room.isClosed()) {
-      System.out.println("Room " + roomName + " is already open!");
-    } else {
-      room.setClosed(false);
-      System.out.println("Room " + roomName + " has been opened.");
+    String fullName = parts[1] + " " + parts[2];
+    try {
+      AttendanceHistory.Rate rate = AttendanceHistory.rateOf(fullName, range[0], range[1]);
+      if (rate == null || rate.getEnrolledDays() == 0) {
+        System.out.println("No attendance recorded for " + fullName + describeRange(range));
+        return;
+      }
+      System.out.printf("%s: present %d of %d days (%.1f%%)%s%n", rate.getName(),
+          rate.getPresentDays(), rate.getEnrolledDays(), rate.getPercent(), describeRange(range));
+    } catch (IOException e) {
+      System.out.println("Could not read attendance history: " + e.getMessage());
     }
   }
 
   /**
-   * Handles the CLOSE_ROOM command to close an open room
-   * @param roomName The name of the room to close
+   * Handles the CHRONIC_ABSENCE command to list students whose attendance is below a threshold
+   * @param parts Command parts array with an optional percentage threshold and date range
    */
-  public static void handleCloseRoom(String roomName) {
-    Room room = findRoomByName(roomName);
-
-    if (room == null) {
-      System.out.println("Room " + roomName + " not found!");
+  public static void handleChronicAbsence(String[] parts) {
+    double threshold = CHRONIC_ABSENCE_PERCENT;
+    int next = 1;
+    if (parts.length > 1 && !parts[1].contains("-")) {
+      try {
+        threshold = Double.parseDouble(parts[1].replace("%", ""));
+        next = 2;
+      } catch (NumberFormatException e) {
+        System.out.println("Please enter the threshold as a percentage such as 90");
+        return;
+      }
+    }
+    LocalDate[] range = parseDateRange(parts, next);
+    if (range == null) {
       return;
     }
 
-    if (room.isClosed()) {
-      System.out.println("Room " + roomName + " is already closed!");
-    } else {
-      // Remove all students and staff from the room before closing
-      int studentCount = room.getStudents().size();
-      int staffCount = room.getStaff().size();
-
-      // Clear students and reset their locations
-      for (Student student : room.getStudents()) {
-        student.setLocation("N/A");
+    try {
+      long start = System.nanoTime();
+      long[] totals = AttendanceHistory.totals(range[0], range[1]);
+      List<AttendanceHistory.Rate> chronic =
+          AttendanceHistory.chronicAbsence(threshold, range[0], range[1]);
+      long micros = (System.nanoTime() - start) / 1000;
+      if (totals[2] == 0) {
+        System.out.println("No attendance recorded" + describeRange(range));
+        return;
       }
-      room.getStudents().clear();
 
-      // Clear staff
-      for (Staff staff : room.getStaff()) {
-        staff.setLocation("N/A");
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("Attendance over %d days%s: %.1f%%%n", totals[2],
+          describeRange(range), totals[1] == 0 ? 100.0 : totals[0] * 100.0 / totals[1]));
+      sb.append(String.format("%d students below %.0f%%", chronic.size(), threshold));
+      sb.append(String.format(" (computed in %.1f ms)%n", micros / 1000.0));
+      for (int i = 0; i < chronic.size() && i < CHRONIC_ABSENCE_LISTED; i++) {
+        AttendanceHistory.Rate rate = chronic.get(i);
+        sb.append(String.format("  %-30s %5.1f%%  present %d of %d days%n", rate.getName(),
+            rate.getPercent(), rate.getPresentDays(), rate.getEnrolledDays()));
       }
-      room.getStaff().clear();
-
-      // Close the room
-      room.setClosed(true);
-
-      System.out.println("Room " + roomName + " has been closed.");
-      if (studentCount > 0 || staffCount > 0) {
-        System.out.println("Removed " + studentCount + " students and " + staffCount + " staff from the room.");
+      if (chronic.size() > CHRONIC_ABSENCE_LISTED) {
+        sb.append("  ... and ").append(chronic.size() - CHRONIC_ABSENCE_LISTED).append(" more\n");
       }
+      System.out.print(sb);
+    } catch (IOException e) {
+      System.out.println("Could not read attendance history: " + e.getMessage());
     }
   }
 
   /**
-   * Handles the INFO command to display information about a person Searches both student and staff
-   * lists for the given name
+   * Parses an optional "from [to]" pair of dates; a missing end means up to the same day when a
+   * start is given, and every recorded day when neither is
    *
-   * @param parts Command parts array containing first and last name
+   * @param parts Command parts array
+   * @param from  Index of the first date, if present
+   * @return {first, last}, or null after printing an error
    */
-  public static void handleInfo(String[] parts) {
-    // Check if enough parameters were provided
-    if (parts.length < 3) {
-      System.out.println("Please enter first and last name");
-      return;
+  private static LocalDate[] parseDateRange(String[] parts, int from) {
+    if (parts.length <= from) {
+      return new LocalDate[] {LocalDate.MIN, LocalDate.MAX};
     }
-
-    // Combine first and last name
-    String fullName = parts[1] + " " + parts[2];
-
-    // Search in both student and staff collections
-    Student foundStudent = findStudentByName(fullName);
-    Staff foundStaff = findStaffByName(fullName);
-
-    // Display found information
-    if (foundStudent != null) {
-      System.out.println(foundStudent);
+    LocalDate first = parseDate(parts[from]);
+    if (first == null) {
+      return null;
     }
-    if (foundStaff != null) {
-      System.out.println(foundStaff);
+    LocalDate last = parts.length > from + 1 ? parseDate(parts[from + 1]) : first;
+    if (last == null) {
+      return null;
     }
-    if (foundStudent == null && foundStaff == null) {
-      System.out.println(fullName + " not found!");
+    if (last.isBefore(first)) {
+      System.out.println("The end date is before the start date.");
+      return null;
     }
+    return new LocalDate[] {first, last};
   }
 
   /**
-   * Handles attendance commands (MARK_PRESENT and MARK_ABSENT) Updates student attendance status
-   *
-   * @param command The attendance command (MARK_PRESENT or MARK_ABSENT)
-   * @param parts   Command parts array containing the student name
+   * @return The date, or null after printing an error if it is not YYYY-MM-DD
    */
-  public static void handleAttendance(String command, String[] parts) {
-    // Check if enough parameters were provided
-    if (parts.length < 3) {
-      System.out.println("Please enter first and last name");
-      return;
-    }
-
-    // Combine first and last name and search for student
-    String fullName = parts[1] + " " + parts[2];
-    Student found = findStudentByName(fullName);
-
-    if (found != null) {
-      // Call appropriate method based on command
-      if (command.equals("MARK_PRESENT")) {
-        found.markPresent();
-      } else {
-        found.markAbsent();
-        removeStudentFromAllRooms(found);
-      }
-    } else {
-      System.out.println(fullName + " Not found!");
+  private static LocalDate parseDate(String text) {
+    try {
+      return LocalDate.parse(text);
+    } catch (DateTimeParseException e) {
+      System.out.println("Please enter dates as YYYY-MM-DD");
+      return null;
     }
   }
 
   /**
-   * Handles clocking commands (CLOCK_IN and CLOCK_OUT) Updates staff clock status
-   *
-   * @param command The clocking command (CLOCK_IN or CLOCK_OUT)
-   * @param parts   Command parts array containing the staff name
+   * @return " from A to B" for a bounded range, or "" for every recorded day
    */
-  public static void handleClocking(String command, String[] parts) {
-    // Check if enough parameters were provided
-    if (parts.length < 3) {
-      System.out.println("Please enter first and last name");
-      return;
-    }
-
-    // Combine first and last name and search for staff
-    String fullName = parts[1] + " " + parts[2];
-    Staff found = findStaffByName(fullName);
-
-    if (found != null) {
-      // Call appropriate method based on command
-      if (command.equals("CLOCK_IN")) {
-        found.clockIn();
-      } else {
-        found.clockOut();
-        removeStaffFromAllRooms(found);
-      }
-    } else {
-      System.out.println(fullName + " Not found!");
+  private static String describeRange(LocalDate[] range) {
+    if (range[0].equals(LocalDate.MIN)) {
+      return "";
     }
+    return range[0].equals(range[1]) ? " on " + range[0] : " from " + range[0] + " to " + range[1];
   }
 
   /**
@@ -527,32 +2504,54 @@ public class Main {
   }
 
   /**
-   * Adds a student to both the ArrayList and HashMap for storage and lookup
+   * Adds a batch of students to both the list and map for storage and lookup The batch is
+   * appended in one step so the copy-on-write list is copied once per file, not once per row
+   * The dismissal desk forgets its releases, since they may be of students the batch replaces
    *
-   * @param student The student to add
+   * @param batch The students to add
    */
-  private static void addStudent(Student student) {
-    students.add(student);
-    studentMap.put(student.getName().toLowerCase(), student);
+  private static void addStudents(List<Student> batch) {
+    DismissalDesk.forgetReleases();
+    for (Student student : batch) {
+      studentMap.put(student.getName().toLowerCase(), student);
+      studentsByGrade.computeIfAbsent(student.getGrade(), g -> new ArrayList<>()).add(student);
+    }
+    students.addAll(batch);
+    for (SortedView<Student> view : studentViews.values()) {
+      view.addAll(batch);
+    }
+    GuardianPool.addChildren(batch);
   }
 
   /**
-   * Adds a staff member to both the ArrayList and HashMap for storage and lookup
+   * Adds a batch of staff members to both the list and map for storage and lookup
    *
-   * @param staffMember The staff member to add
+   * @param batch The staff members to add
    */
-  private static void addStaff(Staff staffMember) {
-    staff.add(staffMember);
-    staffMap.put(staffMember.getName().toLowerCase(), staffMember);
+  private static void addStaff(List<Staff> batch) {
+    for (Staff staffMember : batch) {
+      staffMap.put(staffMember.getName().toLowerCase(), staffMember);
+    }
+    staff.addAll(batch);
+    for (SortedView<Staff> view : staffViews.values()) {
+      view.addAll(batch);
+    }
+    Staff.scheduleChanged();
   }
 
   /**
-   * Adds a room to both the ArrayList and HashMap for storage and lookup
-   * @param room The room to add
+   * Adds a batch of rooms to both the list and map for storage and lookup
+   * @param batch The rooms to add
    */
-  private static void addRoom(Room room) {
-    rooms.add(room);
-    roomMap.put(room.getName().toLowerCase(), room);
+  private static void addRooms(List<Room> batch) {
+    for (Room room : batch) {
+      roomMap.put(room.getName().toLowerCase(), room);
+      RoomAvailability.track(room);
+    }
+    rooms.addAll(batch);
+    for (SortedView<Room> view : roomViews.values()) {
+      view.addAll(batch);
+    }
   }
 
   /**
@@ -562,30 +2561,53 @@ public class Main {
    * @param filename The path to the CSV file containing student data
    */
   public static void loadStudentsFromFile(String filename) {
+    try {
+      List<Student> loaded = parseStudentFile(filename);
+      addStudents(loaded);  // Adds to both list and map
+      EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "students", loaded.size());
+
+    } catch (FileNotFoundException e) {
+      System.out.println("File not found: " + filename);
+    }
+  }
+
+  /**
+   * Parses a student file without adding anything to the roster Each row is reported as it is
+   * loaded or skipped
+   *
+   * @param filename The path to the CSV file containing student data
+   * @return The students parsed from the file
+   * @throws FileNotFoundException if the file does not exist
+   */
+  private static List<Student> parseStudentFile(String filename) throws FileNotFoundException {
     try (Scanner fileScanner = new Scanner(new File(filename))) {
-      int loadedCount = 0;
+      List<Student> loaded = new ArrayList<>();
 
       // Process each line in the file
       while (fileScanner.hasNextLine()) {
         String line = fileScanner.nextLine();
-        String[] parts = line.split(",");
-
-        // Skip lines that don't have enough fields
-        if (parts.length < MIN_STUDENT_FIELDS) {
-          System.out.println("Skipping malformed line: " + line);
-          continue;
-        }
 
-        // Create student from the parsed data
-        Student s = createStudentFromParts(parts);
+        // Parse the row in one pass; malformed rows are reported and skipped
+        Student s = RowParser.parseStudent(line);
         if (s != null) {
-          addStudent(s);  // Adds to both ArrayList and HashMap
-          System.out.println("Loaded student: " + s.getName());
-          loadedCount++;
+          loaded.add(s);
+          EventSink.publish(EventSink.Type.LOADED, s.getName(), "student");
         }
       }
+      return loaded;
+    }
+  }
 
-      System.out.println("Finished loading " + loadedCount + " students.");
+  /**
+   * Loads staff data from a CSV file Expected format: name,position,shift,email
+   *
+   * @param filename The path to the CSV file containing staff data
+   */
+  public static void loadStaffFromFile(String filename) {
+    try {
+      List<Staff> loaded = parseStaffFile(filename);
+      addStaff(loaded);  // Adds to both list and map
+      EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "staff", loaded.size());
 
     } catch (FileNotFoundException e) {
       System.out.println("File not found: " + filename);
@@ -593,35 +2615,48 @@ public class Main {
   }
 
   /**
-   * Loads staff data from a CSV file Expected format: name,position,shift,email
+   * Parses a staff file without adding anything to the roster
    *
    * @param filename The path to the CSV file containing staff data
+   * @return The staff members parsed from the file
+   * @throws FileNotFoundException if the file does not exist
    */
-  public static void loadStaffFromFile(String filename) {
+  private static List<Staff> parseStaffFile(String filename) throws FileNotFoundException {
     try (Scanner fileScanner = new Scanner(new File(filename))) {
-      int loadedCount = 0;
+      List<Staff> loaded = new ArrayList<>();
 
       // Process each line in the file
       while (fileScanner.hasNextLine()) {
         String line = fileScanner.nextLine();
-        String[] parts = line.split(",");
+        String[] parts = RowParser.splitFields(line);  // Quoted fields may hold commas
 
         // Skip lines that don't have enough fields
         if (parts.length < MIN_STAFF_FIELDS) {
-          System.out.println("Skipping malformed line: " + line);
+          EventSink.publish(EventSink.Type.MALFORMED_LINE, line);
           continue;
         }
 
         // Create staff member from the parsed data
         Staff s = createStaffFromParts(parts);
         if (s != null) {
-          addStaff(s);  // Adds to both ArrayList and HashMap
-          System.out.println("Loaded staff: " + s.getName());
-          loadedCount++;
+          loaded.add(s);
+          EventSink.publish(EventSink.Type.LOADED, s.getName(), "staff");
         }
       }
+      return loaded;
+    }
+  }
 
-      System.out.println("Finished loading " + loadedCount + " staff.");
+  /**
+   * Loads room data from a CSV file
+   * Expected format: name,capacity
+   * @param filename The path to the CSV file containing room data
+   */
+  public static void loadRoomsFromFile(String filename) {
+    try {
+      List<Room> loaded = parseRoomFile(filename);
+      addRooms(loaded);  // Adds to both list and map
+      EventSink.publish(EventSink.Type.LOAD_FINISHED, null, "rooms", loaded.size());
 
     } catch (FileNotFoundException e) {
       System.out.println("File not found: " + filename);
@@ -629,38 +2664,35 @@ public class Main {
   }
 
   /**
-   * Loads room data from a CSV file
-   * Expected format: name,capacity
+   * Parses a room file without adding anything to the building
+   *
    * @param filename The path to the CSV file containing room data
+   * @return The rooms parsed from the file
+   * @throws FileNotFoundException if the file does not exist
    */
-  public static void loadRoomsFromFile(String filename) {
+  private static List<Room> parseRoomFile(String filename) throws FileNotFoundException {
     try (Scanner fileScanner = new Scanner(new File(filename))) {
-      int loadedCount = 0;
+      List<Room> loaded = new ArrayList<>();
 
       // Process each line in the file
       while (fileScanner.hasNextLine()) {
         String line = fileScanner.nextLine();
-        String[] parts = line.split(",");
+        String[] parts = RowParser.splitFields(line);  // Quoted fields may hold commas
 
         // Skip lines that don't have enough fields
         if (parts.length < MIN_ROOM_FIELDS) {
-          System.out.println("Skipping malformed line: " + line);
+          EventSink.publish(EventSink.Type.MALFORMED_LINE, line);
           continue;
         }
 
         // Create room from the parsed data
         Room r = createRoomFromParts(parts);
         if (r != null) {
-          addRoom(r);  // Adds to both ArrayList and HashMap
-          System.out.println("Loaded room: " + r.getName());
-          loadedCount++;
+          loaded.add(r);
+          EventSink.publish(EventSink.Type.LOADED, r.getName(), "room");
         }
       }
-
-      System.out.println("Finished loading " + loadedCount + " rooms.");
-
-    } catch (FileNotFoundException e) {
-      System.out.println("File not found: " + filename);
+      return loaded;
     }
   }
 
@@ -676,7 +2708,8 @@ public class Main {
       String name = parts[0].trim();
       int grade = Integer.parseInt(parts[1].trim());  // May throw NumberFormatException
       String gender = parts[2].trim();
-      Guardian[] guardians = parseGuardians(parts[3].trim());  // Parse complex guardian data
+      String guardians = parts[3].trim();  // Checked now, decoded on first use
+      RowParser.checkGuardians(guardians, 0, guardians.length());
       String allergies = parts[4].trim();
       boolean needsPara = parts[5].trim().equalsIgnoreCase("yes");  // Convert to boolean
       String meds = parts[6].trim();
@@ -684,10 +2717,10 @@ public class Main {
       return new Student(name, grade, gender, guardians, allergies, needsPara, meds);
 
     } catch (NumberFormatException e) {
-      System.out.println("Error parsing grade - invalid number format, skipping.");
+      EventSink.publish(EventSink.Type.MESSAGE, "Error parsing grade - invalid number format, skipping.");
       return null;
     } catch (Exception e) {
-      System.out.println("Error creating student from line, skipping.");
+      EventSink.publish(EventSink.Type.MESSAGE, "Error creating student from line, skipping.");
       return null;
     }
   }
@@ -709,7 +2742,7 @@ public class Main {
       return new Staff(name, position, shift, email);
 
     } catch (Exception e) {
-      System.out.println("Error creating staff from line, skipping.");
+      EventSink.publish(EventSink.Type.MESSAGE, "Error creating staff from line, skipping.");
       return null;
     }
   }
@@ -729,10 +2762,10 @@ public class Main {
       return new Room(name, capacity);
 
     } catch (NumberFormatException e) {
-      System.out.println("Error parsing room capacity - invalid number format, skipping.");
+      EventSink.publish(EventSink.Type.MESSAGE, "Error parsing room capacity - invalid number format, skipping.");
       return null;
     } catch (Exception e) {
-      System.out.println("Error creating room from line, skipping.");
+      EventSink.publish(EventSink.Type.MESSAGE, "Error creating room from line, skipping.");
       return null;
     }
   }
@@ -740,50 +2773,12 @@ public class Main {
   /**
    * Parses guardian information from a specially formatted string Expected format:
    * ((name1;relationship1;phone1) (name2;relationship2;phone2))
+   * Delegates to the single-pass RowParser
    *
    * @param guardiansStr The formatted guardian string from CSV
    * @return Array of Guardian objects
    */
   public static Guardian[] parseGuardians(String guardiansStr) {
-    // Handle empty or "none" guardian cases
-    if (guardiansStr.equalsIgnoreCase("none") || guardiansStr.isEmpty()) {
-      return new Guardian[0];
-    }
-
-    guardiansStr = guardiansStr.trim();
-
-    // Check for expected format with double parentheses
-    if (guardiansStr.startsWith("((") && guardiansStr.endsWith("))")) {
-      // Remove outer parentheses
-      guardiansStr = guardiansStr.substring(2, guardiansStr.length() - 2);
-    } else {
-      System.out.println("Warning: Guardians string format unexpected: " + guardiansStr);
-      return new Guardian[0];
-    }
-
-    // Split individual guardian entries by ") ("
-    String[] guardianParts = guardiansStr.split("\\) \\(");
-    Guardian[] guardians = new Guardian[guardianParts.length];
-
-    // Parse each guardian entry
-    for (int i = 0; i < guardianParts.length; i++) {
-      String[] fields = guardianParts[i].split(";");  // Split by semicolon
-
-      // Handle malformed guardian data
-      if (fields.length < 3) {
-        System.out.println("Malformed guardian info: " + guardianParts[i]);
-        guardians[i] = new Guardian("Unknown", "Unknown", "Unknown");
-        continue;
-      }
-
-      // Extract guardian information
-      String name = fields[0].trim();
-      String relation = fields[1].trim();
-      String phone = fields[2].trim();
-
-      guardians[i] = new Guardian(name, relation, phone);
-    }
-
-    return guardians;
+    return RowParser.parseGuardians(guardiansStr, 0, guardiansStr.length());
   }
 }
@@ -0,0 +1,50 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ParaCoverage watches for rooms where a student who needs a paraprofessional has no para with
+ * them
+ * Each Room keeps its own counts of such students and of staff who can cover them, updated as
+ * people come and go, and reports here after every change. A room that has just lost its cover
+ * raises an alert straight away, and the set of uncovered rooms is kept as it changes, so
+ * PARA_GAPS lists them without looking at any other room
+ *
+ * Alerts go to the console whichever thread made the change, so a dismissal, HTTP request or
+ * replayed command cannot swallow them, and to ChangeFeed subscribers as PARA_COVERAGE changes
+ */
+public class ParaCoverage {
+  private static final Set<Room> gaps = new LinkedHashSet<>();  // In the order they opened
+
+  /**
+   * Records a room's coverage after its occupants changed, raising an alert if it has just lost
+   * its para and a notice when it is covered again
+   *
+   * @param room The room that changed
+   */
+  public static synchronized void update(Room room) {
+    if (room.hasParaGap()) {
+      if (gaps.add(room)) {
+        EventSink.publishToConsole("ALERT: " + room.getName() + " has "
+            + room.getParaStudentCount() + " student(s) who need a para and no para present.");
+        ChangeFeed.publish(ChangeFeed.Kind.PARA_COVERAGE, room.getName(), room.getName(),
+            room.getName(), true);
+      }
+    } else if (gaps.remove(room)) {
+      // Either a para arrived, or the students who needed one have left
+      EventSink.publishToConsole(room.getParaStudentCount() > 0
+          ? "Para coverage restored in " + room.getName() + "."
+          : "Para coverage no longer needed in " + room.getName() + ".");
+      ChangeFeed.publish(ChangeFeed.Kind.PARA_COVERAGE, room.getName(), room.getName(),
+          room.getName(), false);
+    }
+  }
+
+  /**
+   * @return Rooms where a student needs a para and none is present, oldest gap first
+   */
+  public static synchronized List<Room> gaps() {
+    return new ArrayList<>(gaps);
+  }
+}
@@ -0,0 +1,146 @@
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * ParserBenchmark compares the single-pass RowParser with the split-based student parsing the
+ * loader used before it, on synthetic student rows with one to three guardians
+ * Reports time and bytes allocated per row for each parser after a warm-up
+ *
+ * Usage: java ParserBenchmark [rows] [rounds]
+ */
+public class ParserBenchmark {
+  public static void main(String[] args) {
+    int rowCount = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    List<String> rows = SyntheticRoster.rows(rowCount);
+    long checksum = 0;
+
+    // Warm up both paths so the JIT has compiled them before measuring
+    for (int i = 0; i < 3; i++) {
+      checksum += runLegacy(rows) + runRowParser(rows);
+    }
+
+    long legacyNanos = 0;
+    long legacyBytes = 0;
+    long parserNanos = 0;
+    long parserBytes = 0;
+    for (int round = 0; round < rounds; round++) {
+      long bytes = allocatedBytes();
+      long start = System.nanoTime();
+      checksum += runLegacy(rows);
+      legacyNanos += System.nanoTime() - start;
+      legacyBytes += allocatedBytes() - bytes;
+
+      bytes = allocatedBytes();
+      start = System.nanoTime();
+      checksum += runRowParser(rows);
+      parserNanos += System.nanoTime() - start;
+      parserBytes += allocatedBytes() - bytes;
+    }
+
+    long parsed = (long) rowCount * rounds;
+    System.out.println("Rows: " + rowCount + ", rounds: " + rounds + " (checksum " + checksum
+        + ")");
+    report("split + parseGuardians", legacyNanos, legacyBytes, parsed);
+    report("RowParser", parserNanos, parserBytes, parsed);
+  }
+
+  /**
+   * Prints time and allocation per row for one parser
+   */
+  private static void report(String label, long nanos, long bytes, long rows) {
+    System.out.printf("%-24s %7.1f ns/row  %6d bytes/row%n", label, (double) nanos / rows,
+        bytes < 0 ? -1 : bytes / rows);
+  }
+
+  /**
+   * @return Bytes allocated so far by the current thread, or -1 if the JVM cannot tell
+   */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+          .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static long runRowParser(List<String> rows) {
+    long sum = 0;
+    for (String row : rows) {
+      Student s = RowParser.parseStudent(row);
+      sum += s.getGrade() + s.getAuthPickUp().length;
+    }
+    return sum;
+  }
+
+  private static long runLegacy(List<String> rows) {
+    long sum = 0;
+    for (String row : rows) {
+      Student s = legacyParseStudent(row);
+      sum += s.getGrade() + s.getAuthPickUp().length;
+    }
+    return sum;
+  }
+
+  /**
+   * The student parsing the loader used before RowParser, kept as the benchmark baseline
+   * @param line The row to parse
+   * @return The student, or null if the row was skipped
+   */
+  static Student legacyParseStudent(String line) {
+    String[] parts = line.split(",");
+    if (parts.length < 7) {
+      EventSink.publish(EventSink.Type.MALFORMED_LINE, line);
+      return null;
+    }
+    try {
+      String name = parts[0].trim();
+      int grade = Integer.parseInt(parts[1].trim());
+      String gender = parts[2].trim();
+      Guardian[] guardians = legacyParseGuardians(parts[3].trim());
+      String allergies = parts[4].trim();
+      boolean needsPara = parts[5].trim().equalsIgnoreCase("yes");
+      String meds = parts[6].trim();
+      return new Student(name, grade, gender, guardians, allergies, needsPara, meds);
+    } catch (NumberFormatException e) {
+      EventSink.publish(EventSink.Type.MESSAGE,
+          "Error parsing grade - invalid number format, skipping.");
+      return null;
+    } catch (Exception e) {
+      EventSink.publish(EventSink.Type.MESSAGE, "Error creating student from line, skipping.");
+      return null;
+    }
+  }
+
+  /**
+   * The regex-based guardian parsing used before RowParser
+   */
+  static Guardian[] legacyParseGuardians(String guardiansStr) {
+    if (guardiansStr.equalsIgnoreCase("none") || guardiansStr.isEmpty()) {
+      return new Guardian[0];
+    }
+    guardiansStr = guardiansStr.trim();
+    if (guardiansStr.startsWith("((") && guardiansStr.endsWith("))")) {
+      guardiansStr = guardiansStr.substring(2, guardiansStr.length() - 2);
+    } else {
+      EventSink.publish(EventSink.Type.MESSAGE,
+          "Warning: Guardians string format unexpected: " + guardiansStr);
+      return new Guardian[0];
+    }
+
+    String[] guardianParts = guardiansStr.split("\\) \\(");
+    Guardian[] guardians = new Guardian[guardianParts.length];
+    for (int i = 0; i < guardianParts.length; i++) {
+      String[] fields = guardianParts[i].split(";");
+      if (fields.length < 3) {
+        EventSink.publish(EventSink.Type.MESSAGE, "Malformed guardian info: " + guardianParts[i]);
+        guardians[i] = new Guardian("Unknown", "Unknown", "Unknown");
+        continue;
+      }
+      guardians[i] = new Guardian(fields[0].trim(), fields[1].trim(), fields[2].trim());
+    }
+    return guardians;
+  }
+}
@@ -0,0 +1,317 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * PunchLog stores timestamped clock-in and clock-out punches for staff members
+ * Each staff member has an append-only file of "epochMillis,IN|OUT" lines, which is streamed
+ * line by line when hours are computed so a full year of punches never has to be held in memory
+ *
+ * Punches are timestamped when they happen and appended by a background writer, so clocking in
+ * never waits on the disk while the state lock is held. Processes sharing a working directory,
+ * such as campus shards, followers and trace replays, each keep their own directory; see
+ * useDirectory
+ */
+public class PunchLog {
+  // Directory holding one punch file per staff member; shards and followers each use their own
+  private static volatile File punchDir = new File("punches");
+
+  // Punches waiting for the writer, and how many have been queued and written so far
+  private static final BlockingQueue<Punch> pending = new LinkedBlockingQueue<>();
+  private static final Object progress = new Object();
+  private static long queued = 0;
+  private static long written = 0;
+  private static Thread writer;
+
+  // Set on threads applying state that was punched elsewhere, such as a replication snapshot
+  private static final ThreadLocal<Boolean> unrecorded = ThreadLocal.withInitial(() -> false);
+
+  // Pay periods are two weeks long, starting on a Monday
+  private static final int PAY_PERIOD_DAYS = 14;
+  private static final LocalDate PAY_PERIOD_ANCHOR = LocalDate.of(2024, 1, 1);
+
+  private static final ZoneId ZONE = ZoneId.systemDefault();
+
+  /**
+   * Type of punch recorded in the log
+   */
+  public enum Type {
+    IN,
+    OUT
+  }
+
+  /**
+   * One punch waiting to be appended to its file
+   */
+  private static class Punch {
+    final String name;
+    final File file;
+    final String line;
+
+    Punch(String name, File file, String line) {
+      this.name = name;
+      this.file = file;
+      this.line = line;
+    }
+  }
+
+  /**
+   * Keeps punches in another directory from now on Processes sharing a working directory call
+   * this so they do not append to each other's punch files
+   *
+   * @param name Directory name, e.g. "punches-7001"
+   */
+  public static void useDirectory(String name) {
+    flush();
+    punchDir = new File(name);
+  }
+
+  /**
+   * Runs an action without recording the punches it causes, for clock-ins that were already
+   * punched on another process, such as the commands of a replication snapshot
+   *
+   * @param action The action to run
+   */
+  public static void withoutPunches(Runnable action) {
+    boolean previous = unrecorded.get();
+    unrecorded.set(true);
+    try {
+      action.run();
+    } finally {
+      unrecorded.set(previous);
+    }
+  }
+
+  /**
+   * Queues a punch for the given staff member, timestamped with the current time
+   * @param staffMember The staff member who clocked in or out
+   * @param type Whether this is a clock-in or clock-out punch
+   */
+  public static void record(Staff staffMember, Type type) {
+    if (unrecorded.get()) {
+      return;
+    }
+    Punch punch = new Punch(staffMember.getName(), punchFile(staffMember),
+        System.currentTimeMillis() + "," + type + "\n");
+    synchronized (progress) {
+      if (writer == null) {
+        writer = new Thread(PunchLog::writePunches, "punch-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(PunchLog::flush, "punch-flush"));
+      }
+      queued++;
+    }
+    pending.add(punch);
+  }
+
+  /**
+   * Waits until every punch queued so far has been written
+   */
+  public static void flush() {
+    synchronized (progress) {
+      long target = queued;
+      while (written < target) {
+        try {
+          progress.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  /**
+   * Body of the writer thread: appends queued punches a batch at a time, opening each staff
+   * member's file once per batch
+   */
+  private static void writePunches() {
+    List<Punch> batch = new ArrayList<>();
+    while (true) {
+      try {
+        batch.add(pending.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+      pending.drainTo(batch);
+
+      Map<File, StringBuilder> byFile = new LinkedHashMap<>();
+      Map<File, String> names = new LinkedHashMap<>();
+      for (Punch punch : batch) {
+        byFile.computeIfAbsent(punch.file, f -> new StringBuilder()).append(punch.line);
+        names.putIfAbsent(punch.file, punch.name);
+      }
+      for (Map.Entry<File, StringBuilder> entry : byFile.entrySet()) {
+        File dir = entry.getKey().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+          System.out.println("Could not create punch directory: " + dir);
+          continue;
+        }
+        adoptOldFile(entry.getKey(), names.get(entry.getKey()));
+        try (FileWriter out = new FileWriter(entry.getKey(), true)) {
+          out.write(entry.getValue().toString());
+        } catch (IOException e) {
+          System.out.println("Could not record punch for " + names.get(entry.getKey()) + ": "
+              + e.getMessage());
+        }
+      }
+
+      synchronized (progress) {
+        written += batch.size();
+        progress.notifyAll();
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Prints worked hours per pay period for a staff member, compared against the scheduled
+   * duration of their shifts for every day they punched in
+   *
+   * @param staffMember The staff member to report on
+   */
+  public static void printHours(Staff staffMember) {
+    System.out.println("----- " + staffMember.getName() + " -----");
+
+    List<Shift> shifts = staffMember.getShifts();
+    int scheduledPerDay = Shift.totalMinutes(shifts);
+    if (shifts.isEmpty()) {
+      System.out.println("Warning: shift format unexpected: " + staffMember.getShift());
+    } else {
+      System.out.println("Scheduled shift: " + Shift.format(shifts) + " ("
+          + formatHours(scheduledPerDay) + " hrs)");
+    }
+
+    flush();
+    File file = punchFile(staffMember);
+    adoptOldFile(file, staffMember.getName());
+    if (!file.isFile()) {
+      System.out.println("No punches recorded.");
+      return;
+    }
+
+    // Worked and scheduled minutes keyed by pay period index; at most ~26 entries per year
+    TreeMap<Long, long[]> periods = new TreeMap<>();
+    long openIn = -1;        // Timestamp of the current unmatched clock-in, or -1
+    LocalDate lastDay = null;  // Last day a shift was started, so each day is scheduled once
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+          continue;
+        }
+        long time = Long.parseLong(line.substring(0, comma));
+        Type type = Type.valueOf(line.substring(comma + 1).trim());
+
+        if (type == Type.IN) {
+          openIn = time;
+          LocalDate day = Instant.ofEpochMilli(time).atZone(ZONE).toLocalDate();
+          if (!day.equals(lastDay)) {
+            periods.computeIfAbsent(payPeriodOf(day), k -> new long[2])[1] += scheduledPerDay;
+            lastDay = day;
+          }
+        } else if (openIn >= 0) {
+          // Worked time is credited to the pay period the shift started in
+          LocalDate day = Instant.ofEpochMilli(openIn).atZone(ZONE).toLocalDate();
+          periods.computeIfAbsent(payPeriodOf(day), k -> new long[2])[0] += (time - openIn) / 60000;
+          openIn = -1;
+        }
+      }
+    } catch (IOException | IllegalArgumentException e) {
+      System.out.println("Error reading punches for " + staffMember.getName() + ": " + e.getMessage());
+      return;
+    }
+
+    for (Map.Entry<Long, long[]> entry : periods.entrySet()) {
+      LocalDate start = PAY_PERIOD_ANCHOR.plusDays(entry.getKey() * PAY_PERIOD_DAYS);
+      LocalDate end = start.plusDays(PAY_PERIOD_DAYS - 1);
+      long worked = entry.getValue()[0];
+      long scheduled = entry.getValue()[1];
+      long difference = worked - scheduled;
+      System.out.println("Pay period " + start + " to " + end + ": worked " + formatHours(worked)
+          + " hrs, scheduled " + formatHours(scheduled) + " hrs ("
+          + (difference >= 0 ? "+" : "-") + formatHours(Math.abs(difference)) + ")");
+    }
+
+    if (openIn >= 0) {
+      System.out.println("Currently clocked in since " + Instant.ofEpochMilli(openIn).atZone(ZONE)
+          .toLocalDateTime().truncatedTo(ChronoUnit.MINUTES));
+    }
+  }
+
+  /**
+   * Gets the pay period index containing the given day
+   * @param day The day to look up
+   * @return Number of whole pay periods between the anchor date and the day
+   */
+  private static long payPeriodOf(LocalDate day) {
+    return Math.floorDiv(ChronoUnit.DAYS.between(PAY_PERIOD_ANCHOR, day), PAY_PERIOD_DAYS);
+  }
+
+  /**
+   * Gets the punch file for a staff member, derived from their lowercase name
+   * Spaces become "_" and any other character but a letter or digit is written as "-" and its
+   * four-digit hex code, so "O'Brien" and "O Brien" get different files
+   *
+   * @param staffMember The staff member
+   * @return File holding that staff member's punches
+   */
+  private static File punchFile(Staff staffMember) {
+    String name = staffMember.getName().toLowerCase();
+    StringBuilder key = new StringBuilder(name.length());
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+        key.append(c);
+      } else if (c == ' ') {
+        key.append('_');
+      } else {
+        key.append(String.format("-%04x", (int) c));
+      }
+    }
+    return new File(punchDir, key + ".csv");
+  }
+
+  /**
+   * Renames a punch file written under the old naming, which turned every run of punctuation
+   * and spaces into "_", to the staff member's current file name if that has none yet
+   *
+   * @param file The staff member's punch file
+   * @param name The staff member's name
+   */
+  private static void adoptOldFile(File file, String name) {
+    if (file.exists()) {
+      return;
+    }
+    String oldKey = name.toLowerCase().replaceAll("[^a-z0-9]+", "_");
+    File old = new File(file.getParentFile(), oldKey + ".csv");
+    if (!old.equals(file) && old.isFile() && !old.renameTo(file)) {
+      System.out.println("Could not rename old punch file " + old);
+    }
+  }
+
+  /**
+   * Formats a number of minutes as hours with two decimal places
+   * @param minutes Number of minutes
+   * @return Hours such as "6.50"
+   */
+  private static String formatHours(long minutes) {
+    return String.format("%.2f", minutes / 60.0);
+  }
+}
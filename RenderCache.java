@@ -0,0 +1,65 @@
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * RenderCache holds the last rendered text of an entity view together with the entity version
+ * it was rendered from, so repeated listings reuse the same String and bytes until the entity
+ * changes
+ */
+public class RenderCache {
+  private volatile Entry entry;  // Last rendered view, or null if never rendered
+
+  /**
+   * Immutable rendered view tagged with the version it was rendered from
+   */
+  private static class Entry {
+    private final long version;
+    private final String text;
+    private final byte[] bytes;
+
+    Entry(long version, String text) {
+      this.version = version;
+      this.text = text;
+      this.bytes = text.getBytes(StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * Gets the rendered text for the given version, rendering it if the cache is stale
+   *
+   * @param version  Current modification version of the entity
+   * @param renderer Renders the entity view
+   * @return Rendered view text
+   */
+  public String text(long version, Supplier<String> renderer) {
+    return get(version, renderer).text;
+  }
+
+  /**
+   * Gets the rendered view as UTF-8 bytes, rendering it if the cache is stale
+   *
+   * @param version  Current modification version of the entity
+   * @param renderer Renders the entity view
+   * @return Rendered view bytes; callers must not modify the array
+   */
+  public byte[] bytes(long version, Supplier<String> renderer) {
+    return get(version, renderer).bytes;
+  }
+
+  /**
+   * Looks up or refreshes the cached entry The version must be read before rendering, so a view
+   * rendered during a concurrent change is tagged with the older version and simply re-rendered
+   *
+   * @param version  Current modification version of the entity
+   * @param renderer Renders the entity view
+   * @return Cached entry for the version
+   */
+  private Entry get(long version, Supplier<String> renderer) {
+    Entry current = entry;
+    if (current == null || current.version != version) {
+      current = new Entry(version, renderer.get());
+      entry = current;
+    }
+    return current;
+  }
+}
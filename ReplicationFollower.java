@@ -0,0 +1,200 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * ReplicationFollower keeps this process's state in step with a ReplicationPrimary
+ * A background thread receives batches of mutating commands and applies them in sequence order
+ * with their output discarded, while the local console serves read-only commands. After a
+ * disconnect it reconnects and resumes from the last sequence number it applied
+ *
+ * A new follower whose commands the primary has already dropped from its log is sent a snapshot
+ * of the school instead, and carries on from there. A follower that already holds state and
+ * falls that far behind cannot take a snapshot over it, so it stops and says to restart it
+ */
+public class ReplicationFollower {
+  // Delay between reconnection attempts
+  private static final long RETRY_MILLIS = 1000;
+
+  private static volatile long appliedSeq = 0;     // Last sequence number applied
+  private static volatile boolean connected = false;
+  private static volatile boolean stopped = false;  // Fell too far behind to catch up
+
+  /**
+   * Starts following the primary on the given loopback port in the background
+   * @param port Port the primary is replicating on
+   */
+  public static void start(int port) {
+    // Replicated SNAPSHOT_ATTENDANCE and CLOCK_IN commands must not append to the primary's
+    // history and punch files
+    AttendanceHistory.useFileName("history-follower-" + port + ".dat");
+    PunchLog.useDirectory("punches-follower-" + port);
+    Thread follower = new Thread(() -> {
+      while (!stopped) {
+        try {
+          follow(port);
+        } catch (IOException e) {
+          if (connected) {
+            System.out.println("Lost primary at sequence " + appliedSeq + ": " + e.getMessage());
+          }
+        }
+        connected = false;
+        try {
+          Thread.sleep(RETRY_MILLIS);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }, "replication-follower");
+    follower.setDaemon(true);
+    follower.start();
+  }
+
+  /**
+   * @return Status line describing the follower's position
+   */
+  public static String status() {
+    return "Follower at sequence " + appliedSeq + (stopped ? " (stopped; restart it to catch up)"
+        : connected ? " (connected)" : " (reconnecting)") + "\n";
+  }
+
+  /**
+   * Connects once, resumes after the last applied sequence number and applies batches until
+   * the connection fails
+   *
+   * @param port Port the primary is replicating on
+   * @throws IOException if the connection fails or the stream is out of sequence
+   */
+  private static void follow(int port) throws IOException {
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      out.write("RESUME " + appliedSeq + "\n");
+      out.flush();
+      connected = true;
+
+      String header;
+      while ((header = in.readLine()) != null) {
+        String[] fields = header.split(" ");
+        if (fields.length != 3 || !(fields[0].equals("BATCH") || fields[0].equals("SNAPSHOT"))) {
+          throw new IOException("Unexpected replication header: " + header);
+        }
+        long seq = Long.parseLong(fields[1]);
+        int count = Integer.parseInt(fields[2]);
+        if (fields[0].equals("SNAPSHOT")) {
+          if (appliedSeq > 0) {
+            stopped = true;
+            System.out.println("Fell too far behind the primary at sequence " + appliedSeq
+                + " to catch up; restart this follower to copy the primary afresh");
+            return;
+          }
+          applySnapshot(in, seq, count);
+          out.write("ACK " + appliedSeq + "\n");
+          out.flush();
+          continue;
+        }
+        if (seq > appliedSeq + 1) {
+          throw new IOException("Gap in replication stream at " + seq);
+        }
+
+        for (int i = 0; i < count; i++, seq++) {
+          String line = in.readLine();
+          if (line == null) {
+            throw new IOException("Primary closed the connection mid-batch");
+          }
+          // Entries already applied before a reconnect are skipped
+          if (seq <= appliedSeq) {
+            continue;
+          }
+          try {
+            CommandOutput.discard(() -> Main.applyReplicated(line));
+          } catch (RuntimeException e) {
+            // The primary applied the same command, so carry on rather than stall the stream
+            System.out.println("Error applying replicated command " + seq + ": " + e);
+          }
+          appliedSeq = seq;
+        }
+
+        out.write("ACK " + appliedSeq + "\n");
+        out.flush();
+      }
+      throw new IOException("Primary closed the connection");
+    } catch (NumberFormatException e) {
+      throw new IOException("Malformed replication batch: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Rebuilds the school from a snapshot: writes its rows to roster files in a scratch directory,
+   * loads them, then runs its commands
+   *
+   * @param in    Reader positioned after the snapshot header
+   * @param seq   Sequence number the snapshot matches
+   * @param count Number of snapshot lines
+   * @throws IOException if the snapshot is cut short or the files cannot be written
+   */
+  private static void applySnapshot(BufferedReader in, long seq, int count) throws IOException {
+    // Files in load order, rooms first so students' rooms exist
+    Map<String, List<String>> files = new LinkedHashMap<>();
+    files.put("rooms", new ArrayList<>());
+    files.put("students", new ArrayList<>());
+    files.put("staff", new ArrayList<>());
+    List<String> commands = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      String line = in.readLine();
+      if (line == null) {
+        throw new IOException("Primary closed the connection mid-snapshot");
+      }
+      int space = line.indexOf(' ');
+      String kind = space < 0 ? line : line.substring(0, space);
+      if (kind.equals("apply")) {
+        commands.add(line.substring(space + 1));
+      } else if (files.containsKey(kind)) {
+        files.get(kind).add(line.substring(space + 1));
+      } else {
+        throw new IOException("Unexpected snapshot line: " + line);
+      }
+    }
+
+    // A relative directory, so the LOAD commands' file names have no spaces in them
+    Path dir = Files.createTempDirectory(Paths.get(""), "snapshot");
+    try {
+      List<String> loads = new ArrayList<>();
+      for (Map.Entry<String, List<String>> file : files.entrySet()) {
+        Path path = dir.resolve(file.getKey() + ".csv");
+        Files.write(path, file.getValue(), StandardCharsets.UTF_8);
+        loads.add("LOAD_" + file.getKey().toUpperCase() + " " + path);
+      }
+      commands.addAll(0, loads);
+      for (String command : commands) {
+        try {
+          // Staff in the snapshot clocked in on the primary, which already punched them
+          PunchLog.withoutPunches(
+              () -> CommandOutput.discard(() -> Main.applyReplicated(command)));
+        } catch (RuntimeException e) {
+          System.out.println("Error applying snapshot command " + command + ": " + e);
+        }
+      }
+    } finally {
+      for (String file : files.keySet()) {
+        Files.deleteIfExists(dir.resolve(file + ".csv"));
+      }
+      Files.deleteIfExists(dir);
+    }
+    appliedSeq = seq;
+    System.out.println("Copied the primary's state at sequence " + seq);
+  }
+}
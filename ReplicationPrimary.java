@@ -0,0 +1,268 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ReplicationPrimary streams every mutating command run on this process to follower processes
+ * Commands are numbered in the order they were applied under the state write lock and kept in
+ * an in-memory log, so a follower that reconnects resumes from the last sequence number it
+ * applied. Entries are sent in batches without waiting for acknowledgements; followers ack
+ * asynchronously
+ *
+ * The log only keeps what followers may still ask for: entries every connected follower has
+ * acknowledged are dropped, except for the last RETAINED_ENTRIES so a follower can reconnect
+ * after a short outage, and never more than MAX_LOG_ENTRIES are kept whoever is behind. A
+ * follower that asks for an entry no longer in the log is sent a snapshot of the whole school
+ * instead, taken under the read lock so it matches one sequence number
+ *
+ * Protocol, one text line per item:
+ *   follower -> primary: "RESUME (lastSeq)", then "ACK (seq)" after each applied batch
+ *   primary -> follower: "BATCH (firstSeq) (count)" followed by count command lines, or
+ *                        "SNAPSHOT (seq) (count)" followed by count lines of Main.snapshotLines
+ */
+public class ReplicationPrimary {
+  // Most commands sent in a single batch
+  private static final int MAX_BATCH = 256;
+
+  // Entries kept after every follower has them, so a briefly disconnected follower can resume
+  private static final int RETAINED_ENTRIES = 10_000;
+
+  // Most entries kept however far behind a follower is; beyond this it gets a snapshot
+  private static final int MAX_LOG_ENTRIES = 1_000_000;
+
+  // Entries dropped at once, so trimming the head of the list is paid for rarely
+  private static final int TRIM_CHUNK = 4_096;
+
+  // Replicated command log; the command with sequence number n is at index n - 1 - base
+  private static final List<String> log = new ArrayList<>();
+  private static long base = 0;  // Entries dropped from the head of the log; guarded by log
+  private static volatile boolean enabled = false;
+
+  // Last sequence number acknowledged by each connected follower, keyed by remote address
+  private static final Map<String, Long> acked = new ConcurrentHashMap<>();
+
+  /**
+   * Starts accepting follower connections on the loopback interface in the background
+   * @param port Port to listen on
+   * @throws IOException if the port cannot be opened
+   */
+  public static void start(int port) throws IOException {
+    ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    enabled = true;
+
+    Thread acceptor = new Thread(() -> {
+      while (true) {
+        try {
+          Socket socket = server.accept();
+          Thread sender = new Thread(() -> serve(socket), "replication-" + socket.getPort());
+          sender.setDaemon(true);
+          sender.start();
+        } catch (IOException e) {
+          System.out.println("Replication listener stopped: " + e.getMessage());
+          return;
+        }
+      }
+    }, "replication-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    System.out.println("Replicating to followers on " + server.getLocalSocketAddress());
+  }
+
+  /**
+   * @return true if this process is acting as a replication primary
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Appends a mutating command to the replication log Called while the state write lock is
+   * held, so sequence numbers follow the order commands were applied
+   *
+   * @param line The command line that was executed
+   */
+  public static void append(String line) {
+    synchronized (log) {
+      log.add(line);
+      if (log.size() >= RETAINED_ENTRIES + TRIM_CHUNK) {
+        trim();
+      }
+      log.notifyAll();
+    }
+  }
+
+  /**
+   * @return Sequence number of the last command appended
+   */
+  public static long sequence() {
+    synchronized (log) {
+      return base + log.size();
+    }
+  }
+
+  /**
+   * @return Status lines describing the log and each follower's acknowledged position
+   */
+  public static String status() {
+    long size;
+    long first;
+    synchronized (log) {
+      size = base + log.size();
+      first = base + 1;
+    }
+    StringBuilder sb = new StringBuilder("Primary at sequence " + size
+        + (first > 1 ? " (log kept from " + first + ")" : "") + "\n");
+    if (acked.isEmpty()) {
+      sb.append("No followers connected\n");
+    }
+    for (Map.Entry<String, Long> follower : acked.entrySet()) {
+      sb.append("  Follower ").append(follower.getKey()).append(" acked ")
+          .append(follower.getValue()).append(" (").append(size - follower.getValue())
+          .append(" behind)\n");
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Streams the log to one follower, starting after the sequence number it asks to resume from
+   * @param socket The follower connection
+   */
+  private static void serve(Socket socket) {
+    String follower = socket.getRemoteSocketAddress().toString();
+    try (socket;
+        BufferedReader in = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Writer out = new BufferedWriter(
+            new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+      String hello = in.readLine();
+      if (hello == null || !hello.startsWith("RESUME ")) {
+        return;
+      }
+      long sent = Long.parseLong(hello.substring("RESUME ".length()).trim());
+      acked.put(follower, sent);
+
+      // Acks arrive on their own thread so sending never waits for the follower
+      Thread ackReader = new Thread(() -> readAcks(in, follower), "replication-acks");
+      ackReader.setDaemon(true);
+      ackReader.start();
+
+      while (true) {
+        List<String> batch = waitForEntries(sent);
+        if (batch == null) {
+          sent = sendSnapshot(out);
+          System.out.println("Sent follower " + follower + " a snapshot at sequence " + sent);
+          continue;
+        }
+        out.write("BATCH " + (sent + 1) + " " + batch.size() + "\n");
+        for (String line : batch) {
+          out.write(line);
+          out.write("\n");
+        }
+        out.flush();
+        sent += batch.size();
+      }
+    } catch (IOException | UncheckedIOException | NumberFormatException e) {
+      System.out.println("Follower " + follower + " disconnected: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      acked.remove(follower);
+    }
+  }
+
+  /**
+   * Sends the whole school as a snapshot, for a follower that needs entries the log dropped
+   *
+   * @param out Writer for the follower connection
+   * @return The sequence number the snapshot matches
+   * @throws IOException if the snapshot cannot be built or sent
+   */
+  private static long sendSnapshot(Writer out) throws IOException {
+    long[] seq = new long[1];
+    List<String> lines = Main.readLocked(() -> {
+      seq[0] = sequence();  // Commands are appended under the write lock, so this is exact
+      try {
+        return Main.snapshotLines();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+    out.write("SNAPSHOT " + seq[0] + " " + lines.size() + "\n");
+    for (String line : lines) {
+      out.write(line);
+      out.write("\n");
+    }
+    out.flush();
+    return seq[0];
+  }
+
+  /**
+   * Records acknowledgements from a follower until the connection closes
+   * @param in Reader for the follower connection
+   * @param follower Follower address used as the status key
+   */
+  private static void readAcks(BufferedReader in, String follower) {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        if (line.startsWith("ACK ")) {
+          acked.put(follower, Long.parseLong(line.substring(4).trim()));
+          synchronized (log) {
+            trim();
+          }
+        }
+      }
+    } catch (IOException | NumberFormatException e) {
+      // The sender notices the closed connection and cleans up
+    }
+  }
+
+  /**
+   * Blocks until the log holds entries after the given sequence number
+   * @param after Last sequence number already sent
+   * @return Up to MAX_BATCH entries following it, or null if the next one was already dropped
+   * @throws InterruptedException if interrupted while waiting
+   */
+  private static List<String> waitForEntries(long after) throws InterruptedException {
+    synchronized (log) {
+      while (base + log.size() <= after) {
+        log.wait();
+      }
+      if (after < base) {
+        return null;
+      }
+      int from = (int) (after - base);
+      int to = Math.min(log.size(), from + MAX_BATCH);
+      return new ArrayList<>(log.subList(from, to));
+    }
+  }
+
+  /**
+   * Drops entries that no connected follower still needs, keeping the last RETAINED_ENTRIES
+   * and at most MAX_LOG_ENTRIES Called with the log lock held
+   */
+  private static void trim() {
+    long end = base + log.size();
+    long keepFrom = end - RETAINED_ENTRIES;
+    for (long follower : acked.values()) {
+      keepFrom = Math.min(keepFrom, follower);
+    }
+    keepFrom = Math.max(keepFrom, end - MAX_LOG_ENTRIES);
+    if (keepFrom - base >= TRIM_CHUNK) {
+      log.subList(0, (int) (keepFrom - base)).clear();
+      base = keepFrom;
+    }
+  }
+}
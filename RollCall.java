@@ -0,0 +1,203 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * RollCall produces the emergency roll-call report: who should be in every room, with the
+ * needsPara, allergy and medication flags, followed by present students who have no room
+ * Each room's roster is kept pre-rendered and only re-rendered when the room's version changes,
+ * so a full building report is a list of cached byte blocks written straight to the outputs
+ */
+public class RollCall {
+  // Pre-rendered roster per room, tagged with the room and occupant versions it was rendered from
+  private static final Map<Room, Segment> roomSegments = new ConcurrentHashMap<>();
+
+  // Last assembled report that was read consistently, reused until the state changes
+  private static volatile Report lastReport;
+
+  // Size of the export file buffer
+  private static final int EXPORT_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * Immutable pre-rendered block of report output
+   */
+  private static class Segment {
+    private final long version;
+    private final byte[] bytes;
+    private final int people;  // Number of people listed in this block
+
+    Segment(long version, byte[] bytes, int people) {
+      this.version = version;
+      this.bytes = bytes;
+      this.people = people;
+    }
+  }
+
+  /**
+   * Immutable assembled report tagged with the state version it was built from
+   */
+  public static class Report {
+    private final long version;
+    private final byte[][] blocks;
+
+    Report(long version, byte[][] blocks) {
+      this.version = version;
+      this.blocks = blocks;
+    }
+  }
+
+  /**
+   * Builds the full roll-call report, reusing each room's roster unless that room has changed
+   * The report is not kept for reuse until the caller has validated the read; see publish
+   *
+   * @param rooms        All rooms in the building
+   * @param students     All students, scanned for present students without a room
+   * @param stateVersion Current state version, used to reuse the whole report when nothing changed
+   * @return The report
+   */
+  public static Report render(List<Room> rooms, List<Student> students, long stateVersion) {
+    Report cached = lastReport;
+    if (cached != null && cached.version == stateVersion) {
+      return cached;
+    }
+
+    List<byte[]> blocks = new ArrayList<>(rooms.size() + 3);
+    blocks.add(utf8("===== EMERGENCY ROLL CALL =====\n"));
+
+    int expected = 0;
+    for (Room room : rooms) {
+      if (room.isClosed()) {
+        continue;
+      }
+      Segment segment = roomSegments.get(room);
+      if (segment == null || segment.version != rosterVersion(room)) {
+        segment = renderRoom(room);
+        roomSegments.put(room, segment);
+      }
+      blocks.add(segment.bytes);
+      expected += segment.people;
+    }
+
+    // Present students with no location are the ones nobody can vouch for
+    StringBuilder sb = new StringBuilder();
+    int unaccounted = 0;
+    for (Student student : students) {
+      if (student.isPresent() && student.getLocation().equals("N/A")) {
+        appendStudent(sb, student);
+        unaccounted++;
+      }
+    }
+    blocks.add(utf8("--- Unaccounted (present, no room): " + unaccounted + " ---\n" + sb
+        + "Total: " + expected + " expected in rooms, " + unaccounted + " unaccounted\n"));
+
+    return new Report(stateVersion, blocks.toArray(new byte[0][]));
+  }
+
+  /**
+   * Keeps a report for reuse until the state changes Only reports from a validated read may be
+   * published, so a torn render is never served again
+   *
+   * @param report A report rendered from one consistent point in time
+   */
+  public static void publish(Report report) {
+    lastReport = report;
+  }
+
+  /**
+   * Writes the report to the console, and to a file in the same pass when a filename is given
+   *
+   * @param report   The rendered report
+   * @param filename File to export to, or null to only print
+   * @throws IOException if the export file cannot be written
+   */
+  public static void write(Report report, String filename) throws IOException {
+    PrintStream console = System.out;
+    if (filename == null) {
+      for (byte[] block : report.blocks) {
+        console.write(block, 0, block.length);
+      }
+      console.flush();
+      return;
+    }
+
+    try (BufferedOutputStream file = new BufferedOutputStream(new FileOutputStream(filename),
+        EXPORT_BUFFER_SIZE)) {
+      for (byte[] block : report.blocks) {
+        console.write(block, 0, block.length);
+        file.write(block);
+      }
+    }
+    console.flush();
+  }
+
+  /**
+   * Computes a version for a room's roster that changes whenever the room or any occupant
+   * changes Entity versions only ever increase, so their sum does too for a fixed membership,
+   * and any membership change bumps the room's own version
+   *
+   * @param room The room to check
+   * @return Combined version of the room and its occupants
+   */
+  private static long rosterVersion(Room room) {
+    long version = room.getVersion() << 32;
+    for (Student student : room.getStudents()) {
+      version += student.getVersion();
+    }
+    for (Staff staffMember : room.getStaff()) {
+      version += staffMember.getVersion();
+    }
+    return version;
+  }
+
+  /**
+   * Renders the roster for a single room
+   * @param room The room to render
+   * @return Segment tagged with the roster version at the start of rendering
+   */
+  private static Segment renderRoom(Room room) {
+    long version = rosterVersion(room);
+    List<Student> roomStudents = room.getStudents();
+    List<Staff> roomStaff = room.getStaff();
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("--- ").append(room.getName()).append(": ").append(roomStudents.size())
+        .append(" students, ").append(roomStaff.size()).append(" staff ---\n");
+    for (Student student : roomStudents) {
+      appendStudent(sb, student);
+    }
+    for (Staff staffMember : roomStaff) {
+      sb.append("  [Staff] ").append(staffMember.getName()).append(" (")
+          .append(staffMember.getPosition()).append(")\n");
+    }
+
+    return new Segment(version, utf8(sb.toString()),
+        roomStudents.size() + roomStaff.size());
+  }
+
+  /**
+   * Appends one roll-call line for a student
+   * @param sb Builder to append to
+   * @param student The student to describe
+   */
+  private static void appendStudent(StringBuilder sb, Student student) {
+    sb.append("  ").append(student.getName())
+        .append(" | Needs Para: ").append(student.needsPara() ? "Yes" : "No")
+        .append(" | Allergies: ").append(student.getAllergies())
+        .append(" | Meds: ").append(student.getMeds()).append("\n");
+  }
+
+  /**
+   * Encodes text as UTF-8
+   * @param text Text to encode
+   * @return Encoded bytes
+   */
+  private static byte[] utf8(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+}
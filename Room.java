@@ -1,4 +1,8 @@
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Represents a room in a school or educational facility that can contain students and staff.
@@ -11,13 +15,31 @@ public class Room {
   // Capacity constraints
   private int studentCapacity;
 
-  // Collections to track current occupants
-  private ArrayList<Student> students;  // Students currently in the room
-  private ArrayList<Staff> staff;       // Staff members currently assigned to the room
+  // Collections to track current occupants; copy-on-write so listings can iterate a stable
+  // snapshot while assignments change the room
+  private List<Student> students;  // Students currently in the room
+  private List<Staff> staff;       // Staff members currently assigned to the room
 
   // Room status
   private boolean isClosed;             // Whether the room is closed/unavailable
 
+  // Allergen bookkeeping as AllergenDictionary bitmasks: how many students in the room have each
+  // allergy or medication, the union of those, and the allergens the room is tagged as holding
+  // The masks are replaced rather than changed, so readers can hold on to the one they got
+  private int[] allergenCounts = new int[64];
+  private int[] medsCounts = new int[64];
+  private BitSet allergenMask = AllergenDictionary.NONE;
+  private BitSet medsMask = AllergenDictionary.NONE;
+  private BitSet tagMask = AllergenDictionary.NONE;
+
+  // Students in the room who need a paraprofessional, and staff in the room who can cover them
+  private int paraStudents;
+  private int paraStaff;
+
+  // Incremented whenever the room or its occupants change, so cached views can tell if stale
+  private volatile long version;
+  private final RenderCache view = new RenderCache();
+
   /**
    * Constructor to create a new room with specified name and student capacity.
    * Initializes empty collections for students and staff, and sets room as open by default.
@@ -28,8 +50,8 @@ public class Room {
   public Room(String name, int studentCapacity) {
     this.name = name;
     this.studentCapacity = studentCapacity;
-    this.students = new ArrayList<>();  // Initialize empty student list
-    this.staff = new ArrayList<>();     // Initialize empty staff list
+    this.students = new CopyOnWriteArrayList<>();  // Initialize empty student list
+    this.staff = new CopyOnWriteArrayList<>();     // Initialize empty staff list
     this.isClosed = false;              // Room starts as open
   }
 
@@ -50,16 +72,16 @@ public class Room {
   }
 
   /**
-   * @return ArrayList of students currently in the room
+   * @return List of students currently in the room
    */
-  public ArrayList<Student> getStudents() {
+  public List<Student> getStudents() {
     return students;
   }
 
   /**
-   * @return ArrayList of staff currently assigned to the room
+   * @return List of staff currently assigned to the room
    */
-  public ArrayList<Staff> getStaff() {
+  public List<Staff> getStaff() {
     return staff;
   }
 
@@ -70,6 +92,71 @@ public class Room {
     return isClosed;
   }
 
+  /**
+   * @return Modification version, incremented whenever the room or its occupants change
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return Union of the allergies of every student in the room
+   */
+  public BitSet getAllergenMask() {
+    return allergenMask;
+  }
+
+  /**
+   * @return Union of the medications of every student in the room
+   */
+  public BitSet getMedsMask() {
+    return medsMask;
+  }
+
+  /**
+   * @return Allergens the room is tagged as holding, such as a snack program's peanuts
+   */
+  public BitSet getTagMask() {
+    return tagMask;
+  }
+
+  /**
+   * @return Allergens that are both tagged on the room and allergies of a student in it
+   */
+  public BitSet getConflictMask() {
+    return AllergenDictionary.both(tagMask, allergenMask);
+  }
+
+  /**
+   * @return Number of students in the room who need a paraprofessional
+   */
+  public int getParaStudentCount() {
+    return paraStudents;
+  }
+
+  /**
+   * @return Number of staff in the room who can cover students who need a paraprofessional
+   */
+  public int getParaStaffCount() {
+    return paraStaff;
+  }
+
+  /**
+   * @return true if a student in the room needs a paraprofessional and none is there
+   */
+  public boolean hasParaGap() {
+    return paraStudents > 0 && paraStaff == 0;
+  }
+
+  /**
+   * @param id An AllergenDictionary.ALLERGENS id
+   * @return Number of students in the room with that allergy
+   */
+  public int getAllergenCount(int id) {
+    int[] counts = allergenCounts;
+    return id < counts.length ? counts[id] : 0;
+  }
+
   /**
    * Gets a formatted string showing the staff-to-student ratio in the room.
    *
@@ -83,77 +170,378 @@ public class Room {
 
   /**
    * Attempts to add a student to the room with validation checks.
+   * The outcome is also published to the EventSink for display.
    *
    * @param student The student to add to the room
-   * @return true if student was successfully added, false otherwise
+   * @return ASSIGNED if the student was added, otherwise the reason they were not
    */
-  public boolean addStudent(Student student) {
+  public AssignResult addStudent(Student student) {
     // Check if student is present/available
     if (!student.isPresent()) {
-      System.out.println("Cannot add student " + student.getName() + " - student is not present.");
-      return false;
+      EventSink.publish(EventSink.Type.STUDENT_NOT_PRESENT, student.getName());
+      return AssignResult.NOT_AVAILABLE;
     }
 
     // Check for duplicate assignment
     if (students.contains(student)) {
-      System.out.println("Student " + student.getName() + " is already in this room.");
-      return false;
+      EventSink.publish(EventSink.Type.STUDENT_ALREADY_IN_ROOM, student.getName());
+      return AssignResult.ALREADY_ASSIGNED;
+    }
+
+    // Check the student is not allergic to anything the room is tagged with
+    if (checkAllergenConflict(student)) {
+      return AssignResult.ALLERGEN_CONFLICT;
     }
 
     // Check if room has reached student capacity
     if (students.size() >= studentCapacity) {
-      System.out.println("Cannot add student " + student.getName() + " - room " + this.name +
-          " is at capacity (" + studentCapacity + " students).");
-      return false;
+      EventSink.publish(EventSink.Type.ROOM_AT_CAPACITY, student.getName(), this.name,
+          studentCapacity);
+      return AssignResult.AT_CAPACITY;
     }
 
     // Add student and update their location
     students.add(student);
     student.setLocation(this.name);     // Update student's current location
-    System.out.println("Student " + student.getName() + " added to " + this.name);
-    return true;
+    countStudent(student, 1);
+    version++;
+    EventSink.publish(EventSink.Type.STUDENT_ADDED, student.getName(), this.name);
+    occupancyChanged();
+    return AssignResult.ASSIGNED;
   }
 
   /**
    * Attempts to add a staff member to the room with validation checks.
+   * The outcome is also published to the EventSink for display.
    *
    * @param staffMember The staff member to assign to the room
-   * @return true if staff was successfully added, false otherwise
+   * @return ASSIGNED if the staff member was added, otherwise the reason they were not
    */
-  public boolean addStaff(Staff staffMember) {
+  public AssignResult addStaff(Staff staffMember) {
     // Check if staff member is clocked in/available
     if (!staffMember.isClockedIn()) {
-      System.out.println("Cannot add staff " + staffMember.getName() + " - staff is not clocked in.");
-      return false;
+      EventSink.publish(EventSink.Type.STAFF_NOT_CLOCKED_IN, staffMember.getName());
+      return AssignResult.NOT_AVAILABLE;
     }
 
     // Check for duplicate assignment
     if (staff.contains(staffMember)) {
-      System.out.println("Staff " + staffMember.getName() + " is already assigned to this room.");
-      return false;
+      EventSink.publish(EventSink.Type.STAFF_ALREADY_IN_ROOM, staffMember.getName());
+      return AssignResult.ALREADY_ASSIGNED;
     }
 
     // Add staff and update their location
     staff.add(staffMember);
     staffMember.setLocation(this.name); // Update staff member's current location
-    System.out.println("Staff " + staffMember.getName() + " assigned to " + this.name);
+    countStaff(staffMember, 1);
+    version++;
+    EventSink.publish(EventSink.Type.STAFF_ASSIGNED, staffMember.getName(), this.name);
+    occupancyChanged();
+    return AssignResult.ASSIGNED;
+  }
+
+  /**
+   * Removes a student from the room and resets their location
+   *
+   * @param student The student to remove
+   * @return true if the student was in the room, false otherwise
+   */
+  public boolean removeStudent(Student student) {
+    if (!students.remove(student)) {
+      return false;
+    }
+    student.setLocation("N/A");
+    countStudent(student, -1);
+    version++;
+    occupancyChanged();
+    return true;
+  }
+
+  /**
+   * Removes a staff member from the room and resets their location
+   *
+   * @param staffMember The staff member to remove
+   * @return true if the staff member was in the room, false otherwise
+   */
+  public boolean removeStaff(Staff staffMember) {
+    if (!staff.remove(staffMember)) {
+      return false;
+    }
+    staffMember.setLocation("N/A");
+    countStaff(staffMember, -1);
+    version++;
+    occupancyChanged();
     return true;
   }
 
+  /**
+   * Removes every student and staff member from the room and resets their locations
+   */
+  public void clearOccupants() {
+    for (Student student : students) {
+      student.setLocation("N/A");
+      countStudent(student, -1);
+    }
+    students.clear();
+
+    for (Staff staffMember : staff) {
+      staffMember.setLocation("N/A");
+      countStaff(staffMember, -1);
+    }
+    staff.clear();
+    version++;
+    occupancyChanged();
+  }
+
+  /**
+   * Adds students that have already been checked against the room's capacity and tags The list
+   * is copied once for the whole group rather than once per student
+   *
+   * @param arriving Students to add, none of whom is in a room
+   */
+  public void addStudents(List<Student> arriving) {
+    students.addAll(arriving);
+    for (Student student : arriving) {
+      student.setLocation(this.name);
+      countStudent(student, 1);
+    }
+    version++;
+    occupancyChanged();
+  }
+
+  /**
+   * Removes a group of students in one copy of the list and resets their locations
+   *
+   * @param leaving Students to remove, all of whom are in this room
+   */
+  public void removeStudents(Set<Student> leaving) {
+    students.removeIf(leaving::contains);
+    for (Student student : leaving) {
+      student.setLocation("N/A");
+      countStudent(student, -1);
+    }
+    version++;
+    occupancyChanged();
+  }
+
+  /**
+   * Moves every student and staff member into another room The caller checks the other room's
+   * capacity and tags first; both lists are copied once whatever the number moved
+   *
+   * @param target The room to move everyone into
+   */
+  public void moveOccupantsTo(Room target) {
+    // Staff go first so the target is never seen with students and without their para
+    target.staff.addAll(staff);
+    for (Staff staffMember : staff) {
+      staffMember.setLocation(target.name);
+      target.countStaff(staffMember, 1);
+      countStaff(staffMember, -1);
+    }
+    target.version++;
+    staff.clear();
+
+    target.addStudents(students);
+    for (Student student : students) {
+      countStudent(student, -1);
+    }
+    students.clear();
+    version++;
+    occupancyChanged();
+  }
+
+  /**
+   * Checks whether a student is allergic to anything the room is tagged with, publishing the
+   * refusal if so A single mask operation, so it is cheap enough for bulk placement
+   *
+   * @param student The student to check
+   * @return true if the student must not be placed in this room
+   */
+  public boolean checkAllergenConflict(Student student) {
+    if (!student.getAllergenMask().intersects(tagMask)) {
+      return false;
+    }
+    BitSet conflict = AllergenDictionary.both(student.getAllergenMask(), tagMask);
+    EventSink.publish(EventSink.Type.MESSAGE, "Cannot add student " + student.getName()
+        + " - room " + this.name + " holds " + AllergenDictionary.ALLERGENS.describe(conflict)
+        + ", which the student is allergic to.");
+    return true;
+  }
+
+  /**
+   * Tags the room as holding allergens, such as the foods used by a snack program
+   * @param mask AllergenDictionary bitmask of allergens to add
+   */
+  public void addTags(BitSet mask) {
+    tagMask = AllergenDictionary.either(tagMask, mask);
+    version++;
+  }
+
+  /**
+   * Removes allergen tags from the room
+   * @param mask AllergenDictionary bitmask of allergens to remove
+   */
+  public void removeTags(BitSet mask) {
+    tagMask = AllergenDictionary.without(tagMask, mask);
+    version++;
+  }
+
+  /**
+   * Adds a student to the room's allergy, medication and para counts, or takes them away
+   *
+   * @param student The student entering or leaving the room
+   * @param delta 1 when the student enters, -1 when they leave
+   */
+  private void countStudent(Student student, int delta) {
+    countAllergens(student, delta);
+    if (student.needsPara()) {
+      paraStudents += delta;
+    }
+  }
+
+  /**
+   * Adds a staff member to the room's para count if they can cover students who need one
+   *
+   * @param staffMember The staff member entering or leaving the room
+   * @param delta 1 when they enter, -1 when they leave
+   */
+  private void countStaff(Staff staffMember, int delta) {
+    if (staffMember.isPara()) {
+      paraStaff += delta;
+    }
+  }
+
+  /**
+   * Tells the room indexes that occupancy, capacity or the open state changed
+   */
+  private void occupancyChanged() {
+    RoomAvailability.update(this);
+    ParaCoverage.update(this);
+  }
+
+  /**
+   * Adds a student's allergies and medications to the room's counts, or takes them away
+   *
+   * @param student The student entering or leaving the room
+   * @param delta 1 when the student enters, -1 when they leave
+   */
+  private void countAllergens(Student student, int delta) {
+    BitSet allergies = student.getAllergenMask();
+    if (!allergies.isEmpty()) {
+      allergenCounts = grow(allergenCounts, allergies);
+      allergenMask = adjust(allergenCounts, allergenMask, allergies, delta);
+    }
+    BitSet meds = student.getMedsMask();
+    if (!meds.isEmpty()) {
+      medsCounts = grow(medsCounts, meds);
+      medsMask = adjust(medsCounts, medsMask, meds, delta);
+    }
+  }
+
+  /**
+   * @return The counts, or a longer copy if a bit in the mask is past their end
+   */
+  private static int[] grow(int[] counts, BitSet bits) {
+    int needed = bits.length();
+    return needed <= counts.length ? counts
+        : Arrays.copyOf(counts, Math.max(needed, counts.length * 2));
+  }
+
+  /**
+   * Adjusts per-id counts for the bits in a mask and returns the updated union mask, a new one if
+   * any bit came or went
+   */
+  private static BitSet adjust(int[] counts, BitSet union, BitSet bits, int delta) {
+    BitSet result = union;
+    for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+      counts[id] += delta;
+      boolean present = counts[id] > 0;
+      if (present != result.get(id)) {
+        if (result == union) {
+          result = (BitSet) union.clone();
+        }
+        result.set(id, present);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Applies a change to a student in the room that may alter their allergies, medications or
+   * need for a para, keeping the room's counts in step Does nothing more than run the change if
+   * the student is not in the room
+   *
+   * @param student The student being changed
+   * @param change  Makes the change
+   */
+  public void updateStudent(Student student, Runnable change) {
+    if (!students.contains(student)) {
+      change.run();
+      return;
+    }
+    countStudent(student, -1);
+    change.run();
+    countStudent(student, 1);
+    version++;
+    occupancyChanged();
+  }
+
+  /**
+   * Applies a change to a staff member in the room that may alter whether they can cover a
+   * student who needs a para, keeping the room's count in step
+   *
+   * @param staffMember The staff member being changed
+   * @param change      Makes the change
+   */
+  public void updateStaff(Staff staffMember, Runnable change) {
+    if (!staff.contains(staffMember)) {
+      change.run();
+      return;
+    }
+    countStaff(staffMember, -1);
+    change.run();
+    countStaff(staffMember, 1);
+    version++;
+    occupancyChanged();
+  }
+
   /**
    * Provides a formatted string representation of the room's current state.
    * Includes room name, capacity, current occupancy, and status.
+   * The text is cached and only rebuilt after the room changes.
    *
    * @return Multi-line string with room details
    */
   @Override
   public String toString() {
+    return view.text(version, this::render);
+  }
+
+  /**
+   * Returns the same text as toString() as cached UTF-8 bytes for bulk output.
+   *
+   * @return Room details as bytes; must not be modified
+   */
+  public byte[] toBytes() {
+    return view.bytes(version, this::render);
+  }
+
+  /**
+   * Builds the formatted room details.
+   *
+   * @return Multi-line string with room details
+   */
+  private String render() {
     StringBuilder sb = new StringBuilder();
     sb.append("Room Name: ").append(name).append("\n");
     sb.append("Student Capacity: ").append(studentCapacity).append("\n");
     sb.append("Current Students: ").append(students.size()).append("\n");
     sb.append("Current Staff: ").append(staff.size()).append("\n");
     sb.append("Is Closed: ").append(isClosed ? "Yes" : "No").append("\n");
+    if (!tagMask.isEmpty()) {
+      sb.append("Allergen Tags: ").append(AllergenDictionary.ALLERGENS.describe(tagMask))
+          .append("\n");
+    }
     return sb.toString();
   }
 
@@ -165,6 +553,7 @@ public class Room {
    */
   public void setName(String name) {
     this.name = name;
+    version++;
   }
 
   /**
@@ -173,22 +562,40 @@ public class Room {
    */
   public void setStudentCapacity(int studentCapacity) {
     this.studentCapacity = studentCapacity;
+    version++;
+    occupancyChanged();
   }
 
   /**
    * Replaces the entire student list with a new list
-   * @param students New ArrayList of students
+   * @param students New list of students
    */
-  public void setStudents(ArrayList<Student> students) {
-    this.students = students;
+  public void setStudents(List<Student> students) {
+    for (Student student : this.students) {
+      countStudent(student, -1);
+    }
+    this.students = new CopyOnWriteArrayList<>(students);
+    for (Student student : this.students) {
+      countStudent(student, 1);
+    }
+    version++;
+    occupancyChanged();
   }
 
   /**
    * Replaces the entire staff list with a new list
-   * @param staff New ArrayList of staff members
+   * @param staff New list of staff members
    */
-  public void setStaff(ArrayList<Staff> staff) {
-    this.staff = staff;
+  public void setStaff(List<Staff> staff) {
+    for (Staff staffMember : this.staff) {
+      countStaff(staffMember, -1);
+    }
+    this.staff = new CopyOnWriteArrayList<>(staff);
+    for (Staff staffMember : this.staff) {
+      countStaff(staffMember, 1);
+    }
+    version++;
+    occupancyChanged();
   }
 
   /**
@@ -197,5 +604,8 @@ public class Room {
    */
   public void setClosed(boolean isClosed) {
     this.isClosed = isClosed;
+    version++;
+    ChangeFeed.publish(ChangeFeed.Kind.ROOM_STATUS, name, name, name, isClosed);
+    occupancyChanged();
   }
 }
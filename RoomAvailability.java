@@ -0,0 +1,124 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * RoomAvailability keeps every open room ordered by how many student seats it has free, so
+ * AVAILABLE_ROOMS and overflow assignment can find a room without checking each one
+ * Rooms report themselves whenever their occupancy, capacity or open state changes. Each room
+ * sits in a sorted set under the free count it had when it last reported, so finding the room
+ * with the most space, or the tightest room with at least a given number of seats, is a
+ * logarithmic search however many rooms the district has
+ */
+public class RoomAvailability {
+  /**
+   * A room's place in the order, fixed when it is inserted so it can be found again to remove
+   */
+  private static class Slot {
+    final Room room;
+    final int free;
+    final String name;
+
+    Slot(Room room, int free, String name) {
+      this.room = room;
+      this.free = free;
+      this.name = name;
+    }
+  }
+
+  private static final Comparator<Slot> ORDER = Comparator.<Slot>comparingInt(s -> s.free)
+      .thenComparing(s -> s.name, String.CASE_INSENSITIVE_ORDER)
+      .thenComparingInt(s -> System.identityHashCode(s.room));
+
+  private static final TreeSet<Slot> open = new TreeSet<>(ORDER);
+  private static final Map<Room, Slot> slots = new IdentityHashMap<>();     // Open rooms' places
+  private static final Map<Room, Boolean> tracked = new IdentityHashMap<>();  // School's rooms
+
+  /**
+   * Starts tracking a room added to the school
+   * @param room The room
+   */
+  public static synchronized void track(Room room) {
+    tracked.put(room, Boolean.TRUE);
+    update(room);
+  }
+
+  /**
+   * Moves a room to its new place after its occupancy, capacity or open state changed Rooms
+   * that are not part of the school yet are ignored
+   *
+   * @param room The room that changed
+   */
+  public static synchronized void update(Room room) {
+    if (!tracked.containsKey(room)) {
+      return;
+    }
+    Slot old = slots.remove(room);
+    if (old != null) {
+      open.remove(old);
+    }
+    if (!room.isClosed()) {
+      Slot slot = new Slot(room, room.getStudentCapacity() - room.getStudents().size(),
+          room.getName());
+      slots.put(room, slot);
+      open.add(slot);
+    }
+  }
+
+  /**
+   * @return Number of open rooms
+   */
+  public static synchronized int openRooms() {
+    return open.size();
+  }
+
+  /**
+   * Lists the open rooms with the most free seats
+   * @param limit Most rooms to return
+   * @return Rooms with the most free seats first
+   */
+  public static synchronized List<Room> mostFree(int limit) {
+    List<Room> result = new ArrayList<>(limit);
+    for (Slot slot : open.descendingSet()) {
+      if (result.size() == limit) {
+        break;
+      }
+      result.add(slot.room);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the open room that fits a group most tightly, leaving bigger rooms for bigger groups
+   * @param seats Free seats needed
+   * @return The room with the fewest free seats that still has enough, or null if none has
+   */
+  public static synchronized Room firstWithSeats(int seats) {
+    Slot slot = open.ceiling(new Slot(null, seats, ""));
+    return slot == null ? null : slot.room;
+  }
+
+  /**
+   * Finds a room for a student who cannot go where they were sent Rooms are tried from the most
+   * free seats down, skipping the refused room and any tagged with the student's allergies, so
+   * usually only the first room is looked at
+   *
+   * @param student The student to place
+   * @param refused The room that could not take them
+   * @return An open room with a free seat, or null if there is none
+   */
+  public static synchronized Room overflowFor(Student student, Room refused) {
+    for (Slot slot : open.descendingSet()) {
+      if (slot.free <= 0) {
+        return null;
+      }
+      if (slot.room != refused && !slot.room.getTagMask().intersects(student.getAllergenMask())) {
+        return slot.room;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,350 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * RosterValidator checks a whole student, staff or room file before it is loaded
+ * Lines are checked independently in parallel, then names are compared in a single pass to find
+ * duplicates within the file and collisions with what is already loaded. Every problem is
+ * reported with its line and field number in one sorted, deduplicated report
+ */
+public class RosterValidator {
+  // Most issues echoed to the console; the report file always has all of them
+  private static final int CONSOLE_ISSUES = 20;
+
+  /**
+   * Kinds of roster file, with the fields the loaders expect
+   */
+  public enum Kind {
+    STUDENTS(7, "student"),
+    STAFF(3, "staff member"),
+    ROOMS(2, "room");
+
+    private final int minFields;
+    private final String noun;
+
+    Kind(int minFields, String noun) {
+      this.minFields = minFields;
+      this.noun = noun;
+    }
+
+    /**
+     * Looks up a kind from a command argument such as "students" or "STAFF"
+     * @param name The argument
+     * @return Matching kind, or null if there is none
+     */
+    public static Kind fromName(String name) {
+      for (Kind kind : values()) {
+        if (kind.name().equalsIgnoreCase(name)) {
+          return kind;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * One problem found in a roster file Field 0 means the problem concerns the whole line
+   */
+  public static class Issue implements Comparable<Issue> {
+    private final int line;
+    private final int field;
+    private final String message;
+
+    public Issue(int line, int field, String message) {
+      this.line = line;
+      this.field = field;
+      this.message = message;
+    }
+
+    public int getLine() {
+      return line;
+    }
+
+    public int getField() {
+      return field;
+    }
+
+    public String getMessage() {
+      return message;
+    }
+
+    @Override
+    public int compareTo(Issue other) {
+      if (line != other.line) {
+        return Integer.compare(line, other.line);
+      }
+      if (field != other.field) {
+        return Integer.compare(field, other.field);
+      }
+      return message.compareTo(other.message);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Issue)) {
+        return false;
+      }
+      Issue other = (Issue) o;
+      return line == other.line && field == other.field && message.equals(other.message);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(line, field, message);
+    }
+
+    @Override
+    public String toString() {
+      return "Line " + line + (field > 0 ? ", field " + field : "") + ": " + message;
+    }
+  }
+
+  /**
+   * Result of validating one file
+   */
+  public static class Report {
+    private final int lineCount;
+    private final List<Issue> issues;
+
+    Report(int lineCount, List<Issue> issues) {
+      this.lineCount = lineCount;
+      this.issues = issues;
+    }
+
+    public int getLineCount() {
+      return lineCount;
+    }
+
+    /**
+     * @return Issues sorted by line, then field, with duplicates removed
+     */
+    public List<Issue> getIssues() {
+      return issues;
+    }
+
+    public boolean isClean() {
+      return issues.isEmpty();
+    }
+
+    /**
+     * @return Number of distinct lines with at least one issue
+     */
+    public long getBadLineCount() {
+      return issues.stream().mapToInt(Issue::getLine).distinct().count();
+    }
+
+    /**
+     * Writes the report as CSV with the columns line,field,message
+     * @param file Where to write the report
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Path file) throws IOException {
+      try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+        out.write("line,field,message\n");
+        for (Issue issue : issues) {
+          out.write(Integer.toString(issue.line));
+          out.write(',');
+          out.write(Integer.toString(issue.field));
+          out.write(",\"");
+          out.write(issue.message.replace("\"", "\"\""));
+          out.write("\"\n");
+        }
+      }
+    }
+
+    /**
+     * Prints a summary and the first few issues to System.out
+     * @param reportFile Where the full report was written, or null if it was not
+     */
+    public void printSummary(Path reportFile) {
+      if (issues.isEmpty()) {
+        System.out.println("Checked " + lineCount + " lines: no problems found.");
+        return;
+      }
+      System.out.println("Checked " + lineCount + " lines: " + issues.size() + " problems on "
+          + getBadLineCount() + " lines.");
+      for (int i = 0; i < issues.size() && i < CONSOLE_ISSUES; i++) {
+        System.out.println("  " + issues.get(i));
+      }
+      if (issues.size() > CONSOLE_ISSUES) {
+        System.out.println("  ... and " + (issues.size() - CONSOLE_ISSUES) + " more");
+      }
+      if (reportFile != null) {
+        System.out.println("Full report written to " + reportFile);
+      }
+    }
+  }
+
+  /**
+   * Validates a roster file
+   *
+   * @param file The file to check
+   * @param kind What the file holds
+   * @param existingNames Lower-case names already loaded, checked for collisions
+   * @return The validation report
+   * @throws IOException if the file cannot be read
+   */
+  public static Report validate(Path file, Kind kind, Set<String> existingNames)
+      throws IOException {
+    List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+    int count = lines.size();
+    String[] names = new String[count];  // Lower-case name on each line, or null
+
+    // Per-line checks are independent, so run them in parallel
+    List<Issue> issues = IntStream.range(0, count).parallel()
+        .mapToObj(i -> checkLine(lines.get(i), i + 1, kind, names, i))
+        .flatMap(List::stream)
+        .collect(Collectors.toCollection(ArrayList::new));
+
+    // Names must be compared across lines, which is a single cheap pass
+    Map<String, Integer> firstSeen = new HashMap<>(count * 2);
+    for (int i = 0; i < count; i++) {
+      String name = names[i];
+      if (name == null) {
+        continue;
+      }
+      Integer first = firstSeen.putIfAbsent(name, i + 1);
+      if (first != null) {
+        issues.add(new Issue(i + 1, 1, "Duplicate " + kind.noun + " name, first seen on line "
+            + first));
+      } else if (existingNames.contains(name)) {
+        issues.add(new Issue(i + 1, 1, "A " + kind.noun + " with this name is already loaded"));
+      }
+    }
+
+    List<Issue> sorted = issues.parallelStream().distinct().sorted()
+        .collect(Collectors.toList());
+    return new Report(count, sorted);
+  }
+
+  /**
+   * Checks one line, recording its name for the duplicate pass
+   *
+   * @param line The raw line
+   * @param lineNumber 1-based line number
+   * @param kind What the file holds
+   * @param names Array receiving the lower-case name for each line
+   * @param index Index of this line in the names array
+   * @return Issues found on the line
+   */
+  private static List<Issue> checkLine(String line, int lineNumber, Kind kind, String[] names,
+      int index) {
+    List<Issue> issues = new ArrayList<>(2);
+    if (line.isBlank()) {
+      issues.add(new Issue(lineNumber, 0, "Blank line"));
+      return issues;
+    }
+
+    String[] parts = RowParser.splitFields(line);
+    if (parts.length < kind.minFields) {
+      issues.add(new Issue(lineNumber, 0, "Expected at least " + kind.minFields
+          + " fields but found " + parts.length));
+      return issues;
+    }
+
+    String name = parts[0].trim();
+    if (name.isEmpty()) {
+      issues.add(new Issue(lineNumber, 1, "Name is empty"));
+    } else {
+      names[index] = name.toLowerCase();
+    }
+
+    switch (kind) {
+      case STUDENTS:
+        checkInteger(parts[1], lineNumber, 2, "Grade", issues);
+        checkGuardians(parts[3].trim(), lineNumber, 4, issues);
+        break;
+      case STAFF:
+        if (Shift.parseAll(parts[2]) == null) {
+          issues.add(new Issue(lineNumber, 3, "Shift \"" + parts[2].trim()
+              + "\" is not a time range such as 9:00am-3:00pm (or several separated by ;)"));
+        }
+        break;
+      case ROOMS:
+        checkInteger(parts[1], lineNumber, 2, "Capacity", issues);
+        break;
+    }
+    return issues;
+  }
+
+  /**
+   * Checks that a field holds a non-negative whole number
+   */
+  private static void checkInteger(String value, int lineNumber, int field, String label,
+      List<Issue> issues) {
+    String trimmed = value.trim();
+    try {
+      if (Integer.parseInt(trimmed) < 0) {
+        issues.add(new Issue(lineNumber, field, label + " " + trimmed + " is negative"));
+      }
+    } catch (NumberFormatException e) {
+      issues.add(new Issue(lineNumber, field, label + " \"" + trimmed
+          + "\" is not a whole number"));
+    }
+  }
+
+  /**
+   * Checks guardian syntax: "None", empty, or ((name;relationship;phone) (...))
+   */
+  private static void checkGuardians(String value, int lineNumber, int field,
+      List<Issue> issues) {
+    if (value.isEmpty() || value.equalsIgnoreCase("none")) {
+      return;
+    }
+    if (!value.startsWith("((") || !value.endsWith("))")) {
+      issues.add(new Issue(lineNumber, field,
+          "Guardians must be None or look like ((name;relationship;phone) (...))"));
+      return;
+    }
+
+    String inner = value.substring(2, value.length() - 2);
+    int guardian = 1;
+    int start = 0;
+    while (start <= inner.length()) {
+      int end = inner.indexOf(") (", start);
+      if (end < 0) {
+        end = inner.length();
+      }
+      String entry = inner.substring(start, end);
+      if (entry.indexOf('(') >= 0 || entry.indexOf(')') >= 0) {
+        issues.add(new Issue(lineNumber, field, "Guardian " + guardian
+            + " has unbalanced parentheses"));
+      } else {
+        int semicolons = 0;
+        boolean emptyPart = false;
+        int partStart = 0;
+        for (int i = 0; i <= entry.length(); i++) {
+          if (i == entry.length() || entry.charAt(i) == ';') {
+            if (entry.substring(partStart, i).isBlank()) {
+              emptyPart = true;
+            }
+            if (i < entry.length()) {
+              semicolons++;
+            }
+            partStart = i + 1;
+          }
+        }
+        if (semicolons != 2) {
+          issues.add(new Issue(lineNumber, field, "Guardian " + guardian
+              + " needs name;relationship;phone"));
+        } else if (emptyPart) {
+          issues.add(new Issue(lineNumber, field, "Guardian " + guardian
+              + " has an empty name, relationship or phone"));
+        }
+      }
+      guardian++;
+      start = end + 3;
+    }
+  }
+}
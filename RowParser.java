@@ -0,0 +1,362 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * RowParser reads roster CSV rows in a single pass without regular expressions
+ * Fields are separated by commas and trimmed; a field may be wrapped in double quotes so it can
+ * contain commas ("Peanuts, Tree Nuts"), with "" standing for a literal quote. Like
+ * String.split, trailing empty fields are dropped. Student rows are parsed straight from the
+ * line, including the guardian list, so only the final field values are allocated
+ */
+public class RowParser {
+  // Number of fields in a student row
+  private static final int STUDENT_FIELDS = 7;
+
+  /**
+   * Splits a CSV row into trimmed fields, honouring quoted fields
+   *
+   * @param line The row to split
+   * @return The fields, with trailing empty fields removed
+   */
+  public static String[] splitFields(String line) {
+    List<String> fields = new ArrayList<>(STUDENT_FIELDS);
+    int kept = 0;           // Fields up to the last non-empty one
+    boolean sawComma = false;
+    int n = line.length();
+    int i = 0;
+
+    while (true) {
+      int rawStart = i;
+      int start = skipSpace(line, i, n);
+      if (start < n && line.charAt(start) == '"') {
+        StringBuilder value = new StringBuilder();
+        i = readQuoted(line, start, n, value);
+        fields.add(value.toString());
+        kept = fields.size();
+      } else {
+        i = start;
+        while (i < n && line.charAt(i) != ',') {
+          i++;
+        }
+        fields.add(line.substring(start, trimEnd(line, start, i)));
+        if (i > rawStart) {
+          kept = fields.size();
+        }
+      }
+
+      if (i >= n) {
+        break;
+      }
+      sawComma = true;
+      i++;  // Step over the comma
+    }
+
+    // A line without any comma is a single field, even if empty
+    int count = sawComma ? kept : 1;
+    return fields.subList(0, count).toArray(new String[0]);
+  }
+
+  /**
+   * Parses a student row of the form name,grade,gender,guardians,allergies,needsPara,meds
+   * Problems are published to the EventSink with the same messages the loader has always shown
+   *
+   * @param line The row to parse
+   * @return The student, or null if the row was skipped
+   */
+  public static Student parseStudent(String line) {
+    // Raw start and end of each of the first seven fields
+    int[] bounds = new int[STUDENT_FIELDS * 2];
+    int count = scanFields(line, bounds);
+    if (count < 0) {
+      // Quoted fields need unescaping, which the general splitter handles
+      String[] parts = splitFields(line);
+      if (parts.length < STUDENT_FIELDS) {
+        EventSink.publish(EventSink.Type.MALFORMED_LINE, line);
+        return null;
+      }
+      return Main.createStudentFromParts(parts);
+    }
+    if (count < STUDENT_FIELDS) {
+      EventSink.publish(EventSink.Type.MALFORMED_LINE, line);
+      return null;
+    }
+
+    try {
+      String name = trimmed(line, bounds[0], bounds[1]);
+      int gradeStart = skipSpace(line, bounds[2], bounds[3]);
+      int grade = Integer.parseInt(line, gradeStart, trimEnd(line, gradeStart, bounds[3]), 10);
+      String gender = trimmed(line, bounds[4], bounds[5]);
+      // Guardians are checked now but only built when first asked for
+      String guardians = trimmed(line, bounds[6], bounds[7]);
+      checkGuardians(guardians, 0, guardians.length());
+      String allergies = trimmed(line, bounds[8], bounds[9]);
+      int paraStart = skipSpace(line, bounds[10], bounds[11]);
+      boolean needsPara = trimEnd(line, paraStart, bounds[11]) - paraStart == 3
+          && line.regionMatches(true, paraStart, "yes", 0, 3);
+      String meds = trimmed(line, bounds[12], bounds[13]);
+
+      return new Student(name, grade, gender, guardians, allergies, needsPara, meds);
+
+    } catch (NumberFormatException e) {
+      EventSink.publish(EventSink.Type.MESSAGE,
+          "Error parsing grade - invalid number format, skipping.");
+      return null;
+    } catch (Exception e) {
+      EventSink.publish(EventSink.Type.MESSAGE, "Error creating student from line, skipping.");
+      return null;
+    }
+  }
+
+  /**
+   * Parses a guardian list of the form ((name;relationship;phone) (name2;relationship2;phone2))
+   * from part of a string, in one pass and without intermediate strings Guardians already seen
+   * on another student are shared through GuardianPool
+   *
+   * @param s    String holding the guardian field
+   * @param from Start of the field
+   * @param to   End of the field (exclusive)
+   * @return Array of Guardian objects; empty for "None" or an unexpected format
+   */
+  public static Guardian[] parseGuardians(String s, int from, int to) {
+    List<Guardian> guardians = new ArrayList<>(3);
+    scanGuardians(s, from, to, guardians, null, true);
+    return guardians.toArray(new Guardian[0]);
+  }
+
+  /**
+   * Reports every problem parseGuardians would report for a guardian list, without building
+   * any Guardians Used at load time so that students can keep the raw text until needed
+   *
+   * @param s    String holding the guardian field
+   * @param from Start of the field
+   * @param to   End of the field (exclusive)
+   */
+  public static void checkGuardians(String s, int from, int to) {
+    scanGuardians(s, from, to, null, null, true);
+  }
+
+  /**
+   * Decodes a guardian list that was already checked at load time, without reporting its
+   * problems a second time
+   *
+   * @param s The guardian field
+   * @return Array of Guardian objects, as parseGuardians would return
+   */
+  public static Guardian[] decodeGuardians(String s) {
+    List<Guardian> guardians = new ArrayList<>(3);
+    scanGuardians(s, 0, s.length(), guardians, null, false);
+    return guardians.toArray(new Guardian[0]);
+  }
+
+  /**
+   * Reads the name and phone of each well-formed guardian in a list that was already checked at
+   * load time, without building Guardians or reporting problems
+   *
+   * @param s      The guardian field
+   * @param people Given each guardian's name and phone number as written
+   */
+  public static void forEachGuardian(String s, BiConsumer<String, String> people) {
+    scanGuardians(s, 0, s.length(), null, people, false);
+  }
+
+  /**
+   * Scans a guardian list in one pass
+   *
+   * @param s         String holding the guardian field
+   * @param from      Start of the field
+   * @param to        End of the field (exclusive)
+   * @param guardians Receives the guardians, or null to only check the syntax
+   * @param people    Receives the name and phone of each well-formed guardian, or null
+   * @param report    Whether to publish problems to the EventSink
+   */
+  private static void scanGuardians(String s, int from, int to, List<Guardian> guardians,
+      BiConsumer<String, String> people, boolean report) {
+    from = skipSpace(s, from, to);
+    to = trimEnd(s, from, to);
+    int length = to - from;
+    if (length == 0 || (length == 4 && s.regionMatches(true, from, "none", 0, 4))) {
+      return;
+    }
+    if (!s.startsWith("((", from) || length < 4 || s.charAt(to - 1) != ')'
+        || s.charAt(to - 2) != ')') {
+      if (report) {
+        EventSink.publish(EventSink.Type.MESSAGE,
+            "Warning: Guardians string format unexpected: " + s.substring(from, to));
+      }
+      return;
+    }
+
+    int innerFrom = from + 2;
+    int innerTo = to - 2;
+    int pendingEmpty = 0;        // Empty entries, kept only if a non-empty entry follows
+
+    // Bounds of the first three fields in the current entry; entries are separated by ") ("
+    int[] fieldStart = new int[3];
+    int[] fieldEnd = new int[3];
+    int entryStart = innerFrom;
+    int fieldFrom = innerFrom;   // Start of the field being scanned
+    int field = 0;
+    int lastNonEmpty = -1;       // Trailing empty fields do not count, as with String.split
+
+    for (int i = innerFrom; ; i++) {
+      boolean entryEnd = i == innerTo || (s.charAt(i) == ')' && i + 3 <= innerTo
+          && s.charAt(i + 1) == ' ' && s.charAt(i + 2) == '(');
+      if (!entryEnd && s.charAt(i) != ';') {
+        continue;
+      }
+      if (field < 3) {
+        fieldStart[field] = fieldFrom;
+        fieldEnd[field] = i;
+      }
+      if (i > fieldFrom) {
+        lastNonEmpty = field;
+      }
+      field++;
+      fieldFrom = i + 1;
+      if (!entryEnd) {
+        continue;
+      }
+
+      // One guardian entry is complete
+      if (i == entryStart) {
+        pendingEmpty++;
+      } else {
+        for (; pendingEmpty > 0; pendingEmpty--) {
+          malformedGuardian(guardians, s, i, i, report);
+        }
+        if (lastNonEmpty < 2) {
+          malformedGuardian(guardians, s, entryStart, i, report);
+        } else if (people != null) {
+          people.accept(trimmed(s, fieldStart[0], fieldEnd[0]),
+              trimmed(s, fieldStart[2], fieldEnd[2]));
+        } else if (guardians != null) {
+          guardians.add(GuardianPool.intern(trimmed(s, fieldStart[0], fieldEnd[0]),
+              trimmed(s, fieldStart[1], fieldEnd[1]), trimmed(s, fieldStart[2], fieldEnd[2])));
+        }
+      }
+      if (i == innerTo) {
+        break;
+      }
+      i += 2;  // Skip ") (" so the next entry starts after the opening parenthesis
+      entryStart = i + 1;
+      fieldFrom = entryStart;
+      field = 0;
+      lastNonEmpty = -1;
+    }
+
+    // "(())" holds a single empty entry, which is reported like any malformed one
+    if (innerFrom == innerTo) {
+      malformedGuardian(guardians, s, innerFrom, innerTo, report);
+    }
+  }
+
+  /**
+   * Reports a guardian entry without three fields and adds a placeholder for it
+   */
+  private static void malformedGuardian(List<Guardian> guardians, String s, int from, int to,
+      boolean report) {
+    if (report) {
+      EventSink.publish(EventSink.Type.MESSAGE,
+          "Malformed guardian info: " + s.substring(from, to));
+    }
+    if (guardians != null) {
+      guardians.add(GuardianPool.UNKNOWN);
+    }
+  }
+
+  /**
+   * Finds the raw bounds of the first seven fields of a row without allocating
+   *
+   * @param line   The row
+   * @param bounds Receives start and end index pairs for up to seven fields
+   * @return Number of fields with trailing empty fields dropped, or -1 if any field is quoted
+   */
+  private static int scanFields(String line, int[] bounds) {
+    int n = line.length();
+    int field = 0;
+    int kept = 0;
+    int start = 0;
+    boolean sawComma = false;
+
+    for (int i = 0; i <= n; i++) {
+      if (i < n) {
+        char c = line.charAt(i);
+        if (c == '"' && skipSpace(line, start, i) == i) {
+          return -1;
+        }
+        if (c != ',') {
+          continue;
+        }
+        sawComma = true;
+      }
+      if (field < STUDENT_FIELDS) {
+        bounds[field * 2] = start;
+        bounds[field * 2 + 1] = i;
+      }
+      field++;
+      if (i > start) {
+        kept = field;
+      }
+      start = i + 1;
+    }
+    return sawComma ? kept : 1;
+  }
+
+  /**
+   * Reads a quoted field starting at its opening quote
+   *
+   * @param line  The row
+   * @param quote Index of the opening quote
+   * @param n     Length of the row
+   * @param value Receives the unescaped value
+   * @return Index of the comma ending the field, or n
+   */
+  private static int readQuoted(String line, int quote, int n, StringBuilder value) {
+    int i = quote + 1;
+    while (i < n) {
+      char c = line.charAt(i++);
+      if (c != '"') {
+        value.append(c);
+      } else if (i < n && line.charAt(i) == '"') {
+        value.append('"');  // Escaped quote
+        i++;
+      } else {
+        break;              // Closing quote
+      }
+    }
+    // Anything between the closing quote and the next comma is ignored
+    while (i < n && line.charAt(i) != ',') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return First index at or after from that is not whitespace, or to
+   */
+  private static int skipSpace(String s, int from, int to) {
+    while (from < to && s.charAt(from) <= ' ') {
+      from++;
+    }
+    return from;
+  }
+
+  /**
+   * @return Index after the last non-whitespace character before to, or from
+   */
+  private static int trimEnd(String s, int from, int to) {
+    while (to > from && s.charAt(to - 1) <= ' ') {
+      to--;
+    }
+    return to;
+  }
+
+  /**
+   * @return The part of s between from and to with surrounding whitespace removed
+   */
+  private static String trimmed(String s, int from, int to) {
+    from = skipSpace(s, from, to);
+    return s.substring(from, trimEnd(s, from, to));
+  }
+}
@@ -0,0 +1,192 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shift class represents a scheduled work shift parsed from a staff shift string
+ * Shift strings look like "9:30am-3:30pm(6hrs)"; times are stored as minutes past midnight
+ * A staff member with a split day lists several shifts separated by semicolons, such as
+ * "7:00am-11:00am;1:00pm-5:00pm(8hrs)"
+ */
+public class Shift {
+  // Number of minutes in a full day, used for shifts that run past midnight
+  private static final int MINUTES_PER_DAY = 24 * 60;
+
+  private final int startMinute;  // Start of the shift in minutes past midnight
+  private final int endMinute;    // End of the shift in minutes past midnight
+
+  /**
+   * Constructor to create a new Shift
+   * @param startMinute Start of the shift in minutes past midnight
+   * @param endMinute End of the shift in minutes past midnight
+   */
+  public Shift(int startMinute, int endMinute) {
+    this.startMinute = startMinute;
+    this.endMinute = endMinute;
+  }
+
+  /**
+   * @return Start of the shift in minutes past midnight
+   */
+  public int getStartMinute() {
+    return startMinute;
+  }
+
+  /**
+   * @return End of the shift in minutes past midnight
+   */
+  public int getEndMinute() {
+    return endMinute;
+  }
+
+  /**
+   * Gets the scheduled length of the shift, allowing for shifts that end after midnight
+   * @return Scheduled duration in minutes
+   */
+  public int getDurationMinutes() {
+    int duration = endMinute - startMinute;
+    return duration > 0 ? duration : duration + MINUTES_PER_DAY;
+  }
+
+  /**
+   * Parses a shift string such as "9:30am-3:30pm(6hrs)" The trailing hours label is optional
+   * and ignored, since the duration is computed from the start and end times
+   *
+   * @param shiftStr The shift string from the staff CSV
+   * @return Shift object, or null if the string is not in the expected format
+   */
+  public static Shift parse(String shiftStr) {
+    if (shiftStr == null) {
+      return null;
+    }
+
+    // Drop the "(6hrs)" label if present
+    String range = shiftStr.trim();
+    int labelStart = range.indexOf('(');
+    if (labelStart >= 0) {
+      range = range.substring(0, labelStart).trim();
+    }
+
+    int dash = range.indexOf('-');
+    if (dash < 0) {
+      return null;
+    }
+
+    int start = parseTime(range.substring(0, dash));
+    int end = parseTime(range.substring(dash + 1));
+    if (start < 0 || end < 0) {
+      return null;
+    }
+    return new Shift(start, end);
+  }
+
+  /**
+   * Parses a shift string holding one or more shifts separated by semicolons
+   * @param shiftStr The shift string from the staff CSV
+   * @return The shifts in the order listed, or null if any of them is malformed
+   */
+  public static List<Shift> parseAll(String shiftStr) {
+    if (shiftStr == null) {
+      return null;
+    }
+    List<Shift> shifts = new ArrayList<>(2);
+    int start = 0;
+    while (start <= shiftStr.length()) {
+      int end = shiftStr.indexOf(';', start);
+      if (end < 0) {
+        end = shiftStr.length();
+      }
+      Shift shift = parse(shiftStr.substring(start, end));
+      if (shift == null) {
+        return null;
+      }
+      shifts.add(shift);
+      start = end + 1;
+    }
+    return shifts;
+  }
+
+  /**
+   * Adds up the scheduled length of several shifts
+   * @param shifts The shifts worked in one day
+   * @return Total scheduled minutes
+   */
+  public static int totalMinutes(List<Shift> shifts) {
+    int total = 0;
+    for (Shift shift : shifts) {
+      total += shift.getDurationMinutes();
+    }
+    return total;
+  }
+
+  /**
+   * Formats several shifts the way they are written in the staff CSV
+   * @param shifts The shifts to format
+   * @return Formatted shifts such as "7:00am-11:00am; 1:00pm-5:00pm"
+   */
+  public static String format(List<Shift> shifts) {
+    StringBuilder sb = new StringBuilder();
+    for (Shift shift : shifts) {
+      if (sb.length() > 0) {
+        sb.append("; ");
+      }
+      sb.append(shift);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Parses a clock time such as "9:30am", "3pm" or "15:30" into minutes past midnight
+   * @param timeStr The time string to parse
+   * @return Minutes past midnight, or -1 if the time is malformed
+   */
+  public static int parseTime(String timeStr) {
+    String time = timeStr.trim().toLowerCase();
+    boolean pm = time.endsWith("pm");
+    boolean am = time.endsWith("am");
+    if (am || pm) {
+      time = time.substring(0, time.length() - 2).trim();
+    }
+
+    try {
+      int colon = time.indexOf(':');
+      int hour = Integer.parseInt(colon < 0 ? time : time.substring(0, colon));
+      int minute = colon < 0 ? 0 : Integer.parseInt(time.substring(colon + 1));
+
+      if (minute < 0 || minute > 59 || hour < 0 || hour > ((am || pm) ? 12 : 23)) {
+        return -1;
+      }
+
+      // Convert 12-hour clock to 24-hour clock
+      if (am || pm) {
+        hour = hour % 12;
+        if (pm) {
+          hour += 12;
+        }
+      }
+      return hour * 60 + minute;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Returns the shift formatted as a 12-hour time range
+   * @return Formatted shift such as "9:30am-3:30pm"
+   */
+  @Override
+  public String toString() {
+    return formatTime(startMinute) + "-" + formatTime(endMinute);
+  }
+
+  /**
+   * Formats minutes past midnight as a 12-hour clock time
+   * @param minuteOfDay Minutes past midnight
+   * @return Formatted time such as "9:30am"
+   */
+  public static String formatTime(int minuteOfDay) {
+    int hour = (minuteOfDay / 60) % 24;
+    int minute = minuteOfDay % 60;
+    int displayHour = hour % 12 == 0 ? 12 : hour % 12;
+    return displayHour + ":" + (minute < 10 ? "0" : "") + minute + (hour < 12 ? "am" : "pm");
+  }
+}
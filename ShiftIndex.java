@@ -0,0 +1,209 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * ShiftIndex answers schedule questions over every staff member's parsed shifts
+ * Each staff member's shifts are normalised into non-overlapping minute-of-day intervals, with
+ * overnight shifts split at midnight. The intervals are sorted by start and laid out as an
+ * implicit balanced interval tree (each middle element records the latest end in its range), so
+ * "who is on duty at T" visits only the branches that can contain T. Coverage per 15-minute
+ * slot and position is precomputed with a sweep over difference arrays
+ *
+ * An index is immutable and tagged with the staff schedule version it was built from
+ */
+public class ShiftIndex {
+  // Length of a coverage slot
+  public static final int SLOT_MINUTES = 15;
+
+  private static final int MINUTES_PER_DAY = 24 * 60;
+  private static final int SLOTS = MINUTES_PER_DAY / SLOT_MINUTES;
+
+  private final long version;
+
+  // Intervals sorted by start; maxEnd holds the latest end in the implicit subtree at each index
+  private final int[] starts;
+  private final int[] ends;
+  private final int[] maxEnd;
+  private final Staff[] owners;
+
+  // Staff on duty in each slot, per position and in total
+  private final Map<String, int[]> slotsByPosition = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+  private final int[] slotTotals = new int[SLOTS];
+  private final int unscheduled;  // Staff whose shift could not be parsed
+
+  /**
+   * Builds an index over the given staff
+   * @param staff Every staff member
+   * @param version Staff.getScheduleVersion() when the staff list was read
+   */
+  public ShiftIndex(List<Staff> staff, long version) {
+    this.version = version;
+
+    List<int[]> intervals = new ArrayList<>(staff.size() * 2);  // {start, end, staff index}
+    List<Staff> people = new ArrayList<>(staff);
+    int missing = 0;
+    for (int p = 0; p < people.size(); p++) {
+      Staff member = people.get(p);
+      List<int[]> own = normalise(member.getShifts());
+      if (own.isEmpty()) {
+        missing++;
+        continue;
+      }
+
+      int[] diff = slotsByPosition.computeIfAbsent(member.getPosition(),
+          k -> new int[SLOTS + 1]);
+      for (int[] interval : own) {
+        intervals.add(new int[] {interval[0], interval[1], p});
+        // A shift counts towards every slot it overlaps
+        diff[interval[0] / SLOT_MINUTES]++;
+        diff[(interval[1] - 1) / SLOT_MINUTES + 1]--;
+      }
+    }
+    this.unscheduled = missing;
+
+    // Turn each position's difference array into counts and add them to the totals
+    for (int[] counts : slotsByPosition.values()) {
+      int running = 0;
+      for (int slot = 0; slot < SLOTS; slot++) {
+        running += counts[slot];
+        counts[slot] = running;
+        slotTotals[slot] += running;
+      }
+    }
+
+    intervals.sort(Comparator.comparingInt(a -> a[0]));
+    int n = intervals.size();
+    starts = new int[n];
+    ends = new int[n];
+    maxEnd = new int[n];
+    owners = new Staff[n];
+    for (int i = 0; i < n; i++) {
+      int[] interval = intervals.get(i);
+      starts[i] = interval[0];
+      ends[i] = interval[1];
+      owners[i] = people.get(interval[2]);
+    }
+    buildMaxEnd(0, n);
+  }
+
+  /**
+   * @return Staff schedule version this index was built from
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return Number of staff members whose shift could not be parsed
+   */
+  public int getUnscheduledCount() {
+    return unscheduled;
+  }
+
+  /**
+   * Finds everyone scheduled to be working at a time of day
+   * @param minuteOfDay Minutes past midnight
+   * @return Staff on duty, sorted by name
+   */
+  public List<Staff> onDuty(int minuteOfDay) {
+    List<Staff> found = new ArrayList<>();
+    collect(0, starts.length, minuteOfDay, found);
+    found.sort(Comparator.comparing(Staff::getName, String.CASE_INSENSITIVE_ORDER));
+    return found;
+  }
+
+  /**
+   * @return Staff on duty in each 15-minute slot of the day, across all positions
+   */
+  public int[] getSlotTotals() {
+    return slotTotals;
+  }
+
+  /**
+   * @return Staff on duty in each 15-minute slot, keyed by position in alphabetical order
+   */
+  public Map<String, int[]> getSlotsByPosition() {
+    return slotsByPosition;
+  }
+
+  /**
+   * Computes the latest interval end in the implicit subtree covering [lo, hi)
+   * @return That latest end, or -1 for an empty range
+   */
+  private int buildMaxEnd(int lo, int hi) {
+    if (lo >= hi) {
+      return -1;
+    }
+    int mid = (lo + hi) >>> 1;
+    int max = Math.max(ends[mid], Math.max(buildMaxEnd(lo, mid), buildMaxEnd(mid + 1, hi)));
+    maxEnd[mid] = max;
+    return max;
+  }
+
+  /**
+   * Adds the owners of intervals in [lo, hi) that contain the given minute
+   */
+  private void collect(int lo, int hi, int minute, List<Staff> found) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    if (maxEnd[mid] <= minute) {
+      return;  // Everything in this range has already ended
+    }
+    collect(lo, mid, minute, found);
+    if (starts[mid] <= minute) {
+      if (minute < ends[mid]) {
+        found.add(owners[mid]);
+      }
+      // Later intervals start after this one, so only look right if this one started in time
+      collect(mid + 1, hi, minute, found);
+    }
+  }
+
+  /**
+   * Converts one person's shifts into sorted, non-overlapping [start, end) minute intervals
+   * within a single day, so overlapping or overnight shifts are never counted twice
+   *
+   * @param shifts The person's shifts
+   * @return Merged intervals
+   */
+  private static List<int[]> normalise(List<Shift> shifts) {
+    List<int[]> raw = new ArrayList<>(shifts.size() + 1);
+    for (Shift shift : shifts) {
+      int start = shift.getStartMinute();
+      int end = shift.getEndMinute();
+      if (end > start) {
+        raw.add(new int[] {start, end});
+      } else {
+        // Runs past midnight, or is a full 24 hours when start equals end
+        raw.add(new int[] {start, MINUTES_PER_DAY});
+        if (end > 0) {
+          raw.add(new int[] {0, end});
+        }
+      }
+    }
+    if (raw.size() <= 1) {
+      return raw;
+    }
+
+    int[][] sorted = raw.toArray(new int[0][]);
+    Arrays.sort(sorted, Comparator.comparingInt(a -> a[0]));
+    List<int[]> merged = new ArrayList<>(sorted.length);
+    int[] current = sorted[0];
+    for (int i = 1; i < sorted.length; i++) {
+      if (sorted[i][0] <= current[1]) {
+        current[1] = Math.max(current[1], sorted[i][1]);
+      } else {
+        merged.add(current);
+        current = sorted[i];
+      }
+    }
+    merged.add(current);
+    return merged;
+  }
+}
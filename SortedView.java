@@ -0,0 +1,59 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * SortedView keeps a roster in one fixed order, such as students by grade then name, so ALL_*
+ * listings can print a page without sorting the whole roster for every request
+ * A loaded batch is sorted on its own and merged with the current order in one pass into a new
+ * list, which readers pick up whole; a page is then just a slice of that list. Only orders whose
+ * keys do not change after loading belong here
+ *
+ * @param <T> Type of entry in the view
+ */
+public class SortedView<T> {
+  private final Comparator<? super T> order;
+  private volatile List<T> sorted = Collections.emptyList();
+
+  /**
+   * @param order Order the view is kept in
+   */
+  public SortedView(Comparator<? super T> order) {
+    this.order = order;
+  }
+
+  /**
+   * Adds a batch of entries in their place in the order Entries that compare equal keep the
+   * order they were added in
+   *
+   * @param batch Entries to add
+   */
+  public synchronized void addAll(Collection<? extends T> batch) {
+    List<T> added = new ArrayList<>(batch);
+    added.sort(order);
+
+    List<T> current = sorted;
+    List<T> merged = new ArrayList<>(current.size() + added.size());
+    int i = 0;
+    int j = 0;
+    while (i < current.size() && j < added.size()) {
+      if (order.compare(added.get(j), current.get(i)) < 0) {
+        merged.add(added.get(j++));
+      } else {
+        merged.add(current.get(i++));
+      }
+    }
+    merged.addAll(current.subList(i, current.size()));
+    merged.addAll(added.subList(j, added.size()));
+    sorted = Collections.unmodifiableList(merged);
+  }
+
+  /**
+   * @return Every entry in order; the list is never changed, later additions make a new one
+   */
+  public List<T> snapshot() {
+    return sorted;
+  }
+}
@@ -1,3 +1,7 @@
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
 /**
  * Staff class represents a staff member in the school system
  * Manages work information, location tracking, and clock in/out functionality
@@ -7,12 +11,28 @@ public class Staff {
   private String name;          // Staff member's full name
   private String position;      // Job position/title
   private String shift;         // Work shift information
+  private List<Shift> shifts;   // Shift parsed into times; empty if it could not be parsed
   private String email;         // Staff email address
 
   // Location and time tracking
   private String location;      // Current location in building
   private boolean isClockedIn;  // Whether staff is currently clocked in
 
+  // Incremented by every change to the staff member, so the cached view knows when to re-render
+  private volatile long version;
+  private final RenderCache view = new RenderCache();
+
+  // Position titles that can cover students who need a paraprofessional: the program's own
+  // aides ("Program Assistant") count, office and administrative assistants do not
+  private static final Pattern PARA_TITLE = Pattern.compile(
+      "\\b(para|paraprofessional|paraeducator|aide|assistant)\\b", Pattern.CASE_INSENSITIVE);
+  private static final Pattern OFFICE_TITLE = Pattern.compile(
+      "\\b(office|administrative|admin|executive)\\s+assistant\\b", Pattern.CASE_INSENSITIVE);
+
+  // Incremented when staff are loaded or any shift or position changes, so the shift index is
+  // rebuilt only when schedules could have changed and not after every mutating command
+  private static final AtomicLong scheduleVersion = new AtomicLong();
+
   /**
    * Constructor to create a new Staff member
    * @param name Staff member's full name
@@ -24,6 +44,7 @@ public class Staff {
     this.name = name;
     this.position = position;
     this.shift = shift;
+    this.shifts = parseShifts(shift);
     this.email = email;
     this.location = "N/A";  // Default location when not working
     this.isClockedIn = false;          // Staff starts clocked out
@@ -45,6 +66,15 @@ public class Staff {
     return this.position;
   }
 
+  /**
+   * @return true if the position can cover students who need a paraprofessional: its title
+   *         names a para, paraprofessional, paraeducator, aide or assistant as a word, but not
+   *         an office, administrative or executive assistant
+   */
+  public boolean isPara() {
+    return PARA_TITLE.matcher(position).find() && !OFFICE_TITLE.matcher(position).find();
+  }
+
   /**
    * @return Staff member's shift information
    */
@@ -52,6 +82,13 @@ public class Staff {
     return this.shift;
   }
 
+  /**
+   * @return Scheduled shifts in minutes past midnight, empty if the shift could not be parsed
+   */
+  public List<Shift> getShifts() {
+    return this.shifts;
+  }
+
   /**
    * @return Staff member's current location
    */
@@ -73,6 +110,27 @@ public class Staff {
     return this.email;
   }
 
+  /**
+   * @return Modification version, incremented whenever any staff field changes
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
+  /**
+   * @return Version of every staff member's schedule, incremented by scheduleChanged()
+   */
+  public static long getScheduleVersion() {
+    return scheduleVersion.get();
+  }
+
+  /**
+   * Records that staff were added or a shift or position changed
+   */
+  public static void scheduleChanged() {
+    scheduleVersion.incrementAndGet();
+  }
+
   // Setter methods for modifying private fields
 
   /**
@@ -81,14 +139,22 @@ public class Staff {
    */
   public void setName(String name) {
     this.name = name;
+    version++;
   }
 
   /**
-   * Sets the staff member's position
+   * Sets the staff member's position, updating the para count of the room they are in
    * @param position New position/title
    */
   public void setPosition(String position) {
-    this.position = position;
+    Room room = Main.findRoomByName(location);
+    if (room != null) {
+      room.updateStaff(this, () -> this.position = position);
+    } else {
+      this.position = position;
+    }
+    version++;
+    scheduleChanged();
   }
 
   /**
@@ -97,6 +163,9 @@ public class Staff {
    */
   public void setShift(String shift) {
     this.shift = shift;
+    this.shifts = parseShifts(shift);
+    version++;
+    scheduleChanged();
   }
 
   /**
@@ -105,6 +174,7 @@ public class Staff {
    */
   public void setEmail(String email) {
     this.email = email;
+    version++;
   }
 
   /**
@@ -112,7 +182,13 @@ public class Staff {
    * @param location New location
    */
   public void setLocation(String location) {
+    String previous = this.location;
+    if (location.equals(previous)) {
+      return;  // Not a move, so nothing to publish
+    }
     this.location = location;
+    version++;
+    ChangeFeed.publish(ChangeFeed.Kind.STAFF_LOCATION, name, location, previous, isClockedIn);
   }
 
   /**
@@ -121,43 +197,70 @@ public class Staff {
    */
   public void setClockedIn(boolean isClockedIn) {
     this.isClockedIn = isClockedIn;
+    version++;
+    ChangeFeed.publish(ChangeFeed.Kind.STAFF_CLOCK, name, location, location, isClockedIn);
   }
 
   // Time tracking methods
 
   /**
    * Clocks the staff member in for their shift
-   * Prints confirmation message or warning if already clocked in
+   * Publishes a confirmation event, or a warning event if already clocked in
+   * @return true if the staff member was clocked in, false if already clocked in
    */
-  public void clockIn() {
+  public boolean clockIn() {
     if (this.isClockedIn) {
-      System.out.println("Staff is already clocked in!");
-    } else {
-      this.isClockedIn = true;
-      System.out.println(this.name + " clocked in");
+      EventSink.publish(EventSink.Type.ALREADY_CLOCKED_IN, this.name);
+      return false;
     }
+    this.isClockedIn = true;
+    version++;
+    EventSink.publish(EventSink.Type.CLOCKED_IN, this.name);
+    ChangeFeed.publish(ChangeFeed.Kind.STAFF_CLOCK, name, location, location, true);
+    return true;
   }
 
   /**
    * Clocks the staff member out from their shift
-   * Prints confirmation message or warning if already clocked out
+   * Publishes a confirmation event, or a warning event if already clocked out
+   * @return true if the staff member was clocked out, false if already clocked out
    */
-  public void clockOut() {
+  public boolean clockOut() {
     if (!this.isClockedIn) {
-      System.out.println("Staff is already clocked out!");
-    } else {
-      this.isClockedIn = false;
-      System.out.println(this.name + " clocked out");
+      EventSink.publish(EventSink.Type.ALREADY_CLOCKED_OUT, this.name);
+      return false;
     }
+    this.isClockedIn = false;
+    version++;
+    EventSink.publish(EventSink.Type.CLOCKED_OUT, this.name);
+    ChangeFeed.publish(ChangeFeed.Kind.STAFF_CLOCK, name, location, location, false);
+    return true;
   }
 
   /**
    * Returns a formatted string with all staff information
    * Includes name, position, shift, location, email, and clock status
+   * The text is cached and only rebuilt after the staff member changes
    * @return Complete staff information as formatted string
    */
   @Override
   public String toString() {
+    return view.text(version, this::render);
+  }
+
+  /**
+   * Returns the same text as toString() as cached UTF-8 bytes for bulk output
+   * @return Complete staff information as bytes; must not be modified
+   */
+  public byte[] toBytes() {
+    return view.bytes(version, this::render);
+  }
+
+  /**
+   * Builds the formatted staff information
+   * @return Complete staff information as formatted string
+   */
+  private String render() {
     return "Staff Member: " + name + "\n" +
         "Position: " + position + "\n" +
         "Shift: " + shift + "\n" +
@@ -165,4 +268,14 @@ public class Staff {
         "Email: " + email + "\n" +
         "Clocked In: " + (isClockedIn ? "Yes" : "No");
   }
+
+  /**
+   * Parses a shift string once, when it is set, so schedule queries never re-parse it
+   * @param shift The shift string
+   * @return Parsed shifts, or an empty list if the string is malformed
+   */
+  private static List<Shift> parseShifts(String shift) {
+    List<Shift> parsed = Shift.parseAll(shift);
+    return parsed == null ? List.of() : List.copyOf(parsed);
+  }
 }
@@ -0,0 +1,365 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * StateExporter streams the live state of students, staff and rooms to CSV or JSON Lines files
+ * Rows are encoded straight from entity fields into one fixed-size buffer that is flushed to a
+ * file channel whenever it fills, so memory use stays constant however many rows are written
+ * CSV output keeps the loader column order, with current status appended as extra columns that
+ * the loaders ignore; values containing commas or quotes are quoted so they load back intact
+ */
+public class StateExporter implements Closeable {
+  // Size of the output buffer; flushed to the channel when nearly full
+  private static final int BUFFER_SIZE = 1 << 20;
+
+  // Longest single value written without a bounds check (int digits, literals)
+  private static final int MAX_TOKEN = 32;
+
+  private final FileChannel channel;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+  private int position;  // Next free index in the buffer
+
+  /**
+   * Opens an exporter writing to the given file, replacing any existing content
+   * @param file The file to write
+   * @throws IOException if the file cannot be opened
+   */
+  public StateExporter(Path file) throws IOException {
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING);
+  }
+
+  /**
+   * Writes every student, with attendance and location appended to the loader columns
+   *
+   * @param students The students to write
+   * @param json     true for JSON Lines, false for CSV
+   * @return Number of rows written
+   * @throws IOException if writing fails
+   */
+  public int writeStudents(List<Student> students, boolean json) throws IOException {
+    int rows = 0;
+    for (Student s : students) {
+      if (json) {
+        put("{\"name\":").putJson(s.getName());
+        put(",\"grade\":").putInt(s.getGrade());
+        put(",\"gender\":").putJson(s.getGender());
+        put(",\"guardians\":[");
+        Guardian[] guardians = s.getAuthPickUp();
+        for (int i = 0; i < guardians.length; i++) {
+          put(i == 0 ? "{\"name\":" : ",{\"name\":").putJson(guardians[i].getName());
+          put(",\"relationship\":").putJson(guardians[i].getRelationshipToChild());
+          put(",\"phone\":").putJson(guardians[i].getPhoneNumber()).put("}");
+        }
+        put("],\"allergies\":").putJson(s.getAllergies());
+        put(",\"needsPara\":").put(s.needsPara() ? "true" : "false");
+        put(",\"meds\":").putJson(s.getMeds());
+        put(",\"present\":").put(s.isPresent() ? "true" : "false");
+        put(",\"location\":").putJson(s.getLocation()).put("}\n");
+      } else {
+        putCsv(s.getName()).put(", ").putInt(s.getGrade()).put(", ").putCsv(s.getGender());
+        put(", ");
+        // Undecoded guardians are still the roster's own text, checked when it was loaded, so
+        // they are written back as they are rather than decoded for every export
+        String guardianText = s.getGuardianText();
+        Guardian[] guardians = guardianText == null ? s.getAuthPickUp() : null;
+        if (guardians == null) {
+          putCsv(guardianText);
+        } else if (guardians.length == 0) {
+          put("None");
+        } else {
+          // The guardian list is one field, quoted as a whole if any part needs it
+          boolean quote = false;
+          for (Guardian g : guardians) {
+            quote |= needsQuotes(g.getName()) || needsQuotes(g.getRelationshipToChild())
+                || needsQuotes(g.getPhoneNumber());
+          }
+          put(quote ? "\"(" : "(");
+          for (int i = 0; i < guardians.length; i++) {
+            put(i == 0 ? "(" : " (").putEscaped(guardians[i].getName(), quote).put(";")
+                .putEscaped(guardians[i].getRelationshipToChild(), quote).put(";")
+                .putEscaped(guardians[i].getPhoneNumber(), quote).put(")");
+          }
+          put(quote ? ")\"" : ")");
+        }
+        put(", ").putCsv(s.getAllergies()).put(", ").put(s.needsPara() ? "Yes" : "No");
+        put(", ").putCsv(s.getMeds()).put(", ").put(s.isPresent() ? "Yes" : "No");
+        put(", ").putCsv(s.getLocation()).put("\n");
+      }
+      rows++;
+    }
+    return rows;
+  }
+
+  /**
+   * Writes every staff member, with clock status and location appended to the loader columns
+   *
+   * @param staff The staff members to write
+   * @param json  true for JSON Lines, false for CSV
+   * @return Number of rows written
+   * @throws IOException if writing fails
+   */
+  public int writeStaff(List<Staff> staff, boolean json) throws IOException {
+    int rows = 0;
+    for (Staff s : staff) {
+      if (json) {
+        put("{\"name\":").putJson(s.getName());
+        put(",\"position\":").putJson(s.getPosition());
+        put(",\"shift\":").putJson(s.getShift());
+        put(",\"email\":").putJson(s.getEmail());
+        put(",\"clockedIn\":").put(s.isClockedIn() ? "true" : "false");
+        put(",\"location\":").putJson(s.getLocation()).put("}\n");
+      } else {
+        putCsv(s.getName()).put(", ").putCsv(s.getPosition()).put(", ").putCsv(s.getShift());
+        put(", ").putCsv(s.getEmail()).put(", ").put(s.isClockedIn() ? "Yes" : "No");
+        put(", ").putCsv(s.getLocation()).put("\n");
+      }
+      rows++;
+    }
+    return rows;
+  }
+
+  /**
+   * Writes every room, with closed status appended to the loader columns JSON rows also list
+   * the names of the current occupants
+   *
+   * @param rooms The rooms to write
+   * @param json  true for JSON Lines, false for CSV
+   * @return Number of rows written
+   * @throws IOException if writing fails
+   */
+  public int writeRooms(List<Room> rooms, boolean json) throws IOException {
+    int rows = 0;
+    for (Room r : rooms) {
+      if (json) {
+        put("{\"name\":").putJson(r.getName());
+        put(",\"capacity\":").putInt(r.getStudentCapacity());
+        put(",\"closed\":").put(r.isClosed() ? "true" : "false");
+        put(",\"students\":[");
+        boolean first = true;
+        for (Student s : r.getStudents()) {
+          put(first ? "" : ",").putJson(s.getName());
+          first = false;
+        }
+        put("],\"staff\":[");
+        first = true;
+        for (Staff s : r.getStaff()) {
+          put(first ? "" : ",").putJson(s.getName());
+          first = false;
+        }
+        put("]}\n");
+      } else {
+        putCsv(r.getName()).put(", ").putInt(r.getStudentCapacity());
+        put(", ").put(r.isClosed() ? "Yes" : "No").put("\n");
+      }
+      rows++;
+    }
+    return rows;
+  }
+
+  /**
+   * Appends text encoded as UTF-8
+   * @param text The text to append
+   * @return this exporter, for chaining
+   * @throws IOException if flushing the buffer fails
+   */
+  private StateExporter put(String text) throws IOException {
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      if (position > BUFFER_SIZE - 4) {
+        flush();
+      }
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        buffer[position++] = (byte) c;
+      } else {
+        putNonAscii(text, i, c);
+        if (Character.isHighSurrogate(c)) {
+          i++;  // The low surrogate was consumed with it
+        }
+      }
+    }
+    return this;
+  }
+
+  /**
+   * Appends a CSV value, quoting it if it contains a comma, quote or line break
+   * @param text The value to append
+   * @return this exporter, for chaining
+   * @throws IOException if flushing the buffer fails
+   */
+  private StateExporter putCsv(String text) throws IOException {
+    if (!needsQuotes(text)) {
+      return put(text);
+    }
+    return put("\"").putEscaped(text, true).put("\"");
+  }
+
+  /**
+   * Appends text that is part of a quoted CSV field, doubling any quotes in it
+   * @param text The text to append
+   * @param quoted true if the surrounding field is quoted
+   * @return this exporter, for chaining
+   * @throws IOException if flushing the buffer fails
+   */
+  private StateExporter putEscaped(String text, boolean quoted) throws IOException {
+    return put(quoted && text.indexOf('"') >= 0 ? text.replace("\"", "\"\"") : text);
+  }
+
+  /**
+   * @param text A value for a CSV file
+   * @return The value, quoted the way the exporter quotes it if it contains a comma, quote or
+   *         line break
+   */
+  public static String csvValue(String text) {
+    return needsQuotes(text) ? "\"" + text.replace("\"", "\"\"") + "\"" : text;
+  }
+
+  /**
+   * @return true if a CSV value must be quoted to survive a round trip through the loaders
+   */
+  private static boolean needsQuotes(String text) {
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Appends a string as a quoted JSON value, escaping quotes, backslashes and control characters
+   * @param text The value to append
+   * @return this exporter, for chaining
+   * @throws IOException if flushing the buffer fails
+   */
+  private StateExporter putJson(String text) throws IOException {
+    if (text == null) {
+      return put("null");
+    }
+    ensure(1);
+    buffer[position++] = '"';
+    int length = text.length();
+    for (int i = 0; i < length; i++) {
+      ensure(6);
+      char c = text.charAt(i);
+      if (c == '"' || c == '\\') {
+        buffer[position++] = '\\';
+        buffer[position++] = (byte) c;
+      } else if (c < 0x20) {
+        String hex = Integer.toHexString(c);
+        put("\\u00" + (hex.length() == 1 ? "0" : "") + hex);
+      } else if (c < 0x80) {
+        buffer[position++] = (byte) c;
+      } else {
+        putNonAscii(text, i, c);
+        if (Character.isHighSurrogate(c)) {
+          i++;
+        }
+      }
+    }
+    ensure(1);
+    buffer[position++] = '"';
+    return this;
+  }
+
+  /**
+   * Appends an int in decimal without allocating
+   * @param value The value to append
+   * @return this exporter, for chaining
+   * @throws IOException if flushing the buffer fails
+   */
+  private StateExporter putInt(int value) throws IOException {
+    ensure(MAX_TOKEN);
+    long v = value;
+    if (v < 0) {
+      buffer[position++] = '-';
+      v = -v;
+    }
+    int start = position;
+    do {
+      buffer[position++] = (byte) ('0' + (v % 10));
+      v /= 10;
+    } while (v > 0);
+
+    // Digits were written least significant first
+    for (int i = start, j = position - 1; i < j; i++, j--) {
+      byte t = buffer[i];
+      buffer[i] = buffer[j];
+      buffer[j] = t;
+    }
+    return this;
+  }
+
+  /**
+   * Encodes one non-ASCII character, or a surrogate pair, as UTF-8 The caller guarantees at
+   * least four free bytes
+   *
+   * @param text  The text being encoded
+   * @param index Index of the character
+   * @param c     The character at that index
+   */
+  private void putNonAscii(String text, int index, char c) {
+    int codePoint = c;
+    if (Character.isHighSurrogate(c) && index + 1 < text.length()) {
+      codePoint = Character.toCodePoint(c, text.charAt(index + 1));
+    }
+
+    if (codePoint < 0x800) {
+      buffer[position++] = (byte) (0xC0 | (codePoint >> 6));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else if (codePoint < 0x10000) {
+      buffer[position++] = (byte) (0xE0 | (codePoint >> 12));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    } else {
+      buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+      buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+      buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+  }
+
+  /**
+   * Flushes the buffer if fewer than the given number of bytes are free
+   * @param bytes Number of bytes about to be written
+   * @throws IOException if flushing fails
+   */
+  private void ensure(int bytes) throws IOException {
+    if (position > BUFFER_SIZE - bytes) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes the buffered bytes to the file channel
+   * @throws IOException if writing fails
+   */
+  private void flush() throws IOException {
+    wrapper.clear().limit(position);
+    while (wrapper.hasRemaining()) {
+      channel.write(wrapper);
+    }
+    position = 0;
+  }
+
+  /**
+   * Flushes any remaining bytes and closes the file
+   * @throws IOException if writing or closing fails
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+}
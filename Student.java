@@ -1,3 +1,5 @@
+import java.util.BitSet;
+
 /**
  * Student class represents a student in the school system
  * Contains personal information, medical details, and attendance tracking
@@ -8,18 +10,28 @@ public class Student {
   private int grade;            // Grade level
   private String gender;        // Student's gender
 
-  // Guardian and pickup information
-  private Guardian[] authPickUp; // Array of authorized guardians for pickup
+  // Guardian and pickup information; rows from a file keep the raw guardian text until a
+  // command first needs the guardians, since most students' guardians are never looked at
+  private volatile Guardian[] authPickUp; // Array of authorized guardians, null until decoded
+  private String guardianText;            // Raw guardian field, null once decoded
 
   // Medical and special needs information
   private String allergies;     // Known allergies (comma-separated if multiple)
   private boolean needsPara;    // Whether student needs a paraprofessional
   private String meds;         // Current medications
 
+  // Allergies and medications as AllergenDictionary bitmasks, for constant-time conflict checks
+  private BitSet allergenMask;
+  private BitSet medsMask;
+
   // Location and attendance tracking
   private String location;      // Current location in school
   private boolean isPresent;    // Whether student is currently present
 
+  // Incremented by every change to the student, so the cached view knows when to re-render
+  private volatile long version;
+  private final RenderCache view = new RenderCache();
+
   /**
    * Constructor to create a new Student
    * @param name Student's full name
@@ -38,9 +50,28 @@ public class Student {
     this.isPresent = false;      // Students start as absent by default
     this.authPickUp = authPickUp;
     this.allergies = allergies;
+    this.allergenMask = AllergenDictionary.ALLERGENS.maskOf(allergies);
     this.needsPara = needsPara;
     this.location = "N/A";       // Default location when not present
     this.meds = meds;
+    this.medsMask = AllergenDictionary.MEDICATIONS.maskOf(meds);
+  }
+
+  /**
+   * Constructor to create a new Student whose guardians are decoded on first use
+   * @param name Student's full name
+   * @param grade Grade level
+   * @param gender Student's gender
+   * @param guardianText Guardian field as written in the roster file, already checked with
+   *                     RowParser.checkGuardians
+   * @param allergies Known allergies
+   * @param needsPara Whether student needs paraprofessional support
+   * @param meds Current medications
+   */
+  public Student(String name, int grade, String gender, String guardianText, String allergies,
+      boolean needsPara, String meds) {
+    this(name, grade, gender, (Guardian[]) null, allergies, needsPara, meds);
+    this.guardianText = guardianText;
   }
 
   // Getter methods for accessing private fields
@@ -52,6 +83,14 @@ public class Student {
     return this.name;
   }
 
+  /**
+   * @return The guardian field as written in the roster while the guardians have not been
+   *         decoded, otherwise null
+   */
+  public synchronized String getGuardianText() {
+    return authPickUp == null ? guardianText : null;
+  }
+
   /**
    * @return Student's grade level
    */
@@ -70,7 +109,18 @@ public class Student {
    * @return Array of authorized guardians for pickup
    */
   public Guardian[] getAuthPickUp() {
-    return this.authPickUp;
+    Guardian[] guardians = this.authPickUp;
+    if (guardians == null) {
+      synchronized (this) {
+        guardians = this.authPickUp;
+        if (guardians == null) {
+          guardians = RowParser.decodeGuardians(guardianText);
+          this.authPickUp = guardians;
+          this.guardianText = null;
+        }
+      }
+    }
+    return guardians;
   }
 
   /**
@@ -108,6 +158,27 @@ public class Student {
     return this.meds;
   }
 
+  /**
+   * @return Allergies as an AllergenDictionary.ALLERGENS bitmask, not to be changed
+   */
+  public BitSet getAllergenMask() {
+    return this.allergenMask;
+  }
+
+  /**
+   * @return Medications as an AllergenDictionary.MEDICATIONS bitmask, not to be changed
+   */
+  public BitSet getMedsMask() {
+    return this.medsMask;
+  }
+
+  /**
+   * @return Modification version, incremented whenever any student field changes
+   */
+  public long getVersion() {
+    return this.version;
+  }
+
   // Setter methods for modifying private fields
 
   /**
@@ -116,6 +187,7 @@ public class Student {
    */
   public void setName(String name) {
     this.name = name;
+    version++;
   }
 
   /**
@@ -124,6 +196,7 @@ public class Student {
    */
   public void setGrade(int grade) {
     this.grade = grade;
+    version++;
   }
 
   /**
@@ -132,22 +205,28 @@ public class Student {
    */
   public void setGender(String gender) {
     this.gender = gender;
+    version++;
   }
 
   /**
    * Sets the authorized pickup guardians
    * @param authPickUp New array of authorized guardians
    */
-  public void setAuthPickUp(Guardian[] authPickUp) {
+  public synchronized void setAuthPickUp(Guardian[] authPickUp) {
     this.authPickUp = authPickUp;
+    this.guardianText = null;
+    version++;
   }
 
   /**
-   * Sets the student's allergies
+   * Sets the student's allergies, updating the counts of the room they are in
    * @param allergies New allergy information
    */
   public void setAllergies(String allergies) {
-    this.allergies = allergies;
+    changeCounted(() -> {
+      this.allergies = allergies;
+      this.allergenMask = AllergenDictionary.ALLERGENS.maskOf(allergies);
+    });
   }
 
   /**
@@ -155,7 +234,13 @@ public class Student {
    * @param location New location
    */
   public void setLocation(String location) {
+    String previous = this.location;
+    if (location.equals(previous)) {
+      return;  // Not a move, so nothing to publish
+    }
     this.location = location;
+    version++;
+    ChangeFeed.publish(ChangeFeed.Kind.STUDENT_LOCATION, name, location, previous, isPresent);
   }
 
   /**
@@ -164,59 +249,105 @@ public class Student {
    */
   public void setPresent(boolean isPresent) {
     this.isPresent = isPresent;
+    version++;
+    ChangeFeed.publish(ChangeFeed.Kind.STUDENT_PRESENCE, name, location, location, isPresent);
   }
 
   /**
-   * Sets whether student needs paraprofessional support
+   * Sets whether student needs paraprofessional support, updating the counts of the room they
+   * are in
    * @param needsPara True if para support needed
    */
   public void setNeedsPara(boolean needsPara) {
-    this.needsPara = needsPara;
+    changeCounted(() -> this.needsPara = needsPara);
   }
 
   /**
-   * Sets the student's medication information
+   * Sets the student's medication information, updating the counts of the room they are in
    * @param meds New medication details
    */
   public void setMeds(String meds) {
-    this.meds = meds;
+    changeCounted(() -> {
+      this.meds = meds;
+      this.medsMask = AllergenDictionary.MEDICATIONS.maskOf(meds);
+    });
+  }
+
+  /**
+   * Makes a change the student's room keeps counts of, through the room if they are in one
+   */
+  private void changeCounted(Runnable change) {
+    Room room = Main.findRoomByName(location);
+    if (room != null) {
+      room.updateStudent(this, change);
+    } else {
+      change.run();
+    }
+    version++;
   }
 
   // Attendance management methods
 
   /**
    * Marks the student as present
-   * Prints confirmation message or warning if already present
+   * Publishes a confirmation event, or a warning event if already present
+   * @return true if the student was marked present, false if already present
    */
-  public void markPresent() {
+  public boolean markPresent() {
     if (this.isPresent) {
-      System.out.println("Student is already present!");
-    } else {
-      this.isPresent = true;
-      System.out.println(this.name + " marked present");
+      EventSink.publish(EventSink.Type.ALREADY_PRESENT, this.name);
+      return false;
     }
+    this.isPresent = true;
+    version++;
+    EventSink.publish(EventSink.Type.MARKED_PRESENT, this.name);
+    ChangeFeed.publish(ChangeFeed.Kind.STUDENT_PRESENCE, name, location, location, true);
+    return true;
   }
 
   /**
    * Marks the student as absent
-   * Prints confirmation message or warning if already absent
+   * Publishes a confirmation event, or a warning event if already absent
+   * @return true if the student was marked absent, false if already absent
    */
-  public void markAbsent() {
+  public boolean markAbsent() {
     if (!this.isPresent) {
-      System.out.println("Student is already absent!");
-    } else {
-      this.isPresent = false;
-      System.out.println(this.name + " marked absent");
+      EventSink.publish(EventSink.Type.ALREADY_ABSENT, this.name);
+      return false;
     }
+    this.isPresent = false;
+    version++;
+    EventSink.publish(EventSink.Type.MARKED_ABSENT, this.name);
+    ChangeFeed.publish(ChangeFeed.Kind.STUDENT_PRESENCE, name, location, location, false);
+    return true;
   }
 
   /**
    * Returns a formatted string with all student information
    * Includes personal details, medical info, attendance, and guardian list
+   * The text is cached and only rebuilt after the student changes
    * @return Complete student information as formatted string
    */
   @Override
   public String toString() {
+    return view.text(version, this::render);
+  }
+
+  /**
+   * Returns the same text as toString() as cached UTF-8 bytes for bulk output
+   * @return Complete student information as bytes; must not be modified
+   */
+  public byte[] toBytes() {
+    return view.bytes(version, this::render);
+  }
+
+  /**
+   * Builds the formatted student information
+   * Guardians are rendered as they are now; editing a Guardian in place does not invalidate
+   * the cached view, so replace the array with setAuthPickUp() instead
+   * @return Complete student information as formatted string
+   */
+  private String render() {
     StringBuilder sb = new StringBuilder();
     sb.append("Name: ").append(name).append("\n");
     sb.append("Grade: ").append(grade).append("\n");
@@ -229,10 +360,11 @@ public class Student {
     sb.append("Authorized Pickups:\n");
 
     // List all authorized guardians, or "None" if empty
-    if (authPickUp.length == 0) {
+    Guardian[] guardians = getAuthPickUp();
+    if (guardians.length == 0) {
       sb.append("  None\n");
     } else {
-      for (Guardian g : authPickUp) {
+      for (Guardian g : guardians) {
         sb.append("  ").append(g).append("\n");
       }
     }
@@ -0,0 +1,402 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * StudentArchive keeps a large roster of historical students outside the Java heap
+ * Each student is a fixed-width record in a direct buffer holding the grade, the para flag and
+ * the offset and length of each text field in a separate UTF-8 string arena. Names are found
+ * through an open-addressing hash table of record numbers, also off-heap. Millions of archived
+ * students therefore cost the garbage collector a handful of buffer objects instead of millions
+ * of Students, Strings and Guardians, so full collections stay short
+ *
+ * An archive can be saved to a file and opened again by mapping the file, in which case it is
+ * read straight from the page cache until something is added. Students are read through a
+ * Record flyweight, which can also build an ordinary Student for display
+ *
+ * Records are only ever appended; archiving a name again adds a new record and points the
+ * index at it, so the old one is superseded but still takes space until the archive is rebuilt
+ */
+public class StudentArchive {
+  // File header: magic, format version, record count, arena size, index capacity, and from
+  // version 2 the number of distinct students
+  private static final int MAGIC = 0x53415243;  // "SARC"
+  private static final int FORMAT_VERSION = 2;
+  private static final int HEADER_SIZE = 24;
+  private static final int V1_HEADER_SIZE = 20;
+
+  // Record layout: five (offset, length) string fields, the name hash, grade and flags
+  private static final int NAME = 0;
+  private static final int GENDER = 8;
+  private static final int GUARDIANS = 16;
+  private static final int ALLERGIES = 24;
+  private static final int MEDS = 32;
+  private static final int NAME_HASH = 40;
+  private static final int GRADE = 44;
+  private static final int FLAGS = 48;
+  private static final int RECORD_SIZE = 52;
+
+  private static final byte NEEDS_PARA = 1;
+
+  private static final int INITIAL_RECORDS = 1024;
+  private static final int INITIAL_ARENA = 64 * 1024;
+
+  private ByteBuffer records = ByteBuffer.allocateDirect(INITIAL_RECORDS * RECORD_SIZE);
+  private ByteBuffer arena = ByteBuffer.allocateDirect(INITIAL_ARENA);
+  private ByteBuffer index = ByteBuffer.allocateDirect(4 * 2 * INITIAL_RECORDS);  // Record + 1
+  private int count = 0;     // Records, including superseded ones
+  private int students = 0;  // Distinct names, each pointing at its latest record
+  private int arenaSize = 0;
+  private int indexCapacity = 2 * INITIAL_RECORDS;
+  private boolean mapped = false;  // Buffers are a read-only mapping of a saved archive
+
+  /**
+   * A view of one archived student Reading a field decodes it from the arena; the Record itself
+   * holds only the record number, so one instance can be moved across the whole archive
+   */
+  public class Record {
+    private int position;
+
+    private Record(int recordNumber) {
+      moveTo(recordNumber);
+    }
+
+    /**
+     * Points this view at another record
+     * @param recordNumber Record number, from 0 to size() - 1
+     */
+    public void moveTo(int recordNumber) {
+      if (recordNumber < 0 || recordNumber >= count) {
+        throw new IndexOutOfBoundsException("Record " + recordNumber + " of " + count);
+      }
+      position = recordNumber * RECORD_SIZE;
+    }
+
+    public String getName() {
+      return field(position, NAME);
+    }
+
+    public int getGrade() {
+      return records.getInt(position + GRADE);
+    }
+
+    public String getGender() {
+      return field(position, GENDER);
+    }
+
+    public String getAllergies() {
+      return field(position, ALLERGIES);
+    }
+
+    public String getMeds() {
+      return field(position, MEDS);
+    }
+
+    public boolean needsPara() {
+      return (records.get(position + FLAGS) & NEEDS_PARA) != 0;
+    }
+
+    /**
+     * @return Guardians, decoded from the stored text on each call
+     */
+    public Guardian[] getAuthPickUp() {
+      return Main.parseGuardians(field(position, GUARDIANS));
+    }
+
+    /**
+     * Builds an ordinary Student with this record's details, for display or to re-enrol them
+     * @return A new Student, absent and unassigned
+     */
+    public Student toStudent() {
+      return new Student(getName(), getGrade(), getGender(), field(position, GUARDIANS),
+          getAllergies(), needsPara(), getMeds());
+    }
+  }
+
+  /**
+   * @return Number of archived students, counting each name once
+   */
+  public synchronized int size() {
+    return students;
+  }
+
+  /**
+   * @return Number of records, including those superseded by a later record for the same name
+   */
+  public synchronized int recordCount() {
+    return count;
+  }
+
+  /**
+   * @return Bytes held outside the heap (or mapped) by the records, arena and index
+   */
+  public synchronized long offHeapBytes() {
+    return (long) records.capacity() + arena.capacity() + index.capacity();
+  }
+
+  /**
+   * @return true if the archive is being read from a mapped file
+   */
+  public synchronized boolean isMapped() {
+    return mapped;
+  }
+
+  /**
+   * Adds a student to the archive; a student already archived under the same name is replaced
+   *
+   * @param name      Full name
+   * @param grade     Grade level
+   * @param gender    Gender
+   * @param guardians Guardian text as written in the roster file
+   * @param allergies Allergies
+   * @param needsPara Whether the student needs a paraprofessional
+   * @param meds      Medications
+   * @return true if the name was new, false if an older record was replaced
+   */
+  public synchronized boolean add(String name, int grade, String gender, String guardians,
+      String allergies, boolean needsPara, String meds) {
+    ensureWritable();
+    if ((count + 1) * 2 > indexCapacity) {
+      rehash(indexCapacity * 2);
+    }
+    if (records.capacity() < (count + 1) * RECORD_SIZE) {
+      records = grow(records, (count + 1) * RECORD_SIZE);
+    }
+
+    int position = count * RECORD_SIZE;
+    putField(position, NAME, name);
+    putField(position, GENDER, gender);
+    putField(position, GUARDIANS, guardians);
+    putField(position, ALLERGIES, allergies);
+    putField(position, MEDS, meds);
+    int hash = hashOf(name);
+    records.putInt(position + NAME_HASH, hash);
+    records.putInt(position + GRADE, grade);
+    records.put(position + FLAGS, needsPara ? NEEDS_PARA : 0);
+
+    int slot = findSlot(name, hash);
+    boolean added = index.getInt(slot * 4) == 0;
+    index.putInt(slot * 4, count + 1);
+    count++;
+    if (added) {
+      students++;
+    }
+    return added;
+  }
+
+  /**
+   * Finds an archived student by name, ignoring case
+   * @param name Full name
+   * @return A view of their record, or null if they are not archived
+   */
+  public synchronized Record find(String name) {
+    int entry = index.getInt(findSlot(name, hashOf(name)) * 4);
+    return entry == 0 ? null : new Record(entry - 1);
+  }
+
+  /**
+   * Returns a view positioned at the first record, to be moved with moveTo
+   * @return A reusable view, or null if the archive is empty
+   */
+  public synchronized Record cursor() {
+    return count == 0 ? null : new Record(0);
+  }
+
+  /**
+   * Writes the archive to a file that open() can map The archive is written to a temporary
+   * file next to the target and moved over it once complete, so saving a mapped archive back to
+   * the file it was opened from never overwrites the pages being copied, and a failed save
+   * leaves the old file intact
+   *
+   * @param file File to write
+   * @throws IOException if the file cannot be written
+   */
+  public synchronized void save(Path file) throws IOException {
+    long size = HEADER_SIZE + (long) count * RECORD_SIZE + arenaSize + 4L * indexCapacity;
+    Path target = file.toAbsolutePath();
+    Path temp = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.READ,
+          StandardOpenOption.WRITE)) {
+        MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(count).putInt(arenaSize)
+            .putInt(indexCapacity).putInt(students);
+        out.put(records.duplicate().position(0).limit(count * RECORD_SIZE));
+        out.put(arena.duplicate().position(0).limit(arenaSize));
+        out.put(index.duplicate().position(0).limit(4 * indexCapacity));
+        out.force();
+      }
+      Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Opens a saved archive by mapping it into memory Nothing is copied; pages are read from the
+   * file as records are used
+   *
+   * @param file File written by save()
+   * @return The archive
+   * @throws IOException if the file cannot be read or is not an archive
+   */
+  public static StudentArchive open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (channel.size() < HEADER_SIZE || in.getInt() != MAGIC) {
+        throw new IOException(file + " is not a student archive");
+      }
+      int version = in.getInt();
+      if (version != FORMAT_VERSION && version != 1) {
+        throw new IOException(file + " was written by a different version");
+      }
+      int headerSize = version == 1 ? V1_HEADER_SIZE : HEADER_SIZE;
+
+      StudentArchive archive = new StudentArchive();
+      archive.count = in.getInt();
+      archive.arenaSize = in.getInt();
+      archive.indexCapacity = in.getInt();
+      archive.students = version == 1 ? -1 : in.getInt();
+      long expected = headerSize + (long) archive.count * RECORD_SIZE + archive.arenaSize
+          + 4L * archive.indexCapacity;
+      if (channel.size() != expected) {
+        throw new IOException(file + " is truncated or corrupt");
+      }
+      archive.records = slice(in, headerSize, archive.count * RECORD_SIZE);
+      archive.arena = slice(in, headerSize + archive.count * RECORD_SIZE, archive.arenaSize);
+      archive.index = slice(in, (int) (expected - 4L * archive.indexCapacity),
+          4 * archive.indexCapacity);
+      archive.mapped = true;
+      if (archive.students < 0) {
+        archive.students = archive.countIndexEntries();  // Version 1 did not store it
+      }
+      return archive;
+    }
+  }
+
+  /**
+   * @return Number of names in the index, each of which is one distinct student
+   */
+  private int countIndexEntries() {
+    int entries = 0;
+    for (int slot = 0; slot < indexCapacity; slot++) {
+      if (index.getInt(slot * 4) != 0) {
+        entries++;
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Decodes a string field of a record
+   */
+  private String field(int position, int field) {
+    int offset = records.getInt(position + field);
+    int length = records.getInt(position + field + 4);
+    byte[] bytes = new byte[length];
+    arena.get(offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Appends a string to the arena and stores its offset and length in a record
+   */
+  private void putField(int position, int field, String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    if ((long) arenaSize + bytes.length > Integer.MAX_VALUE - 8) {
+      throw new IllegalStateException("Student archive is full");
+    }
+    if (arena.capacity() < arenaSize + bytes.length) {
+      arena = grow(arena, arenaSize + bytes.length);
+    }
+    arena.put(arenaSize, bytes);
+    records.putInt(position + field, arenaSize);
+    records.putInt(position + field + 4, bytes.length);
+    arenaSize += bytes.length;
+  }
+
+  /**
+   * Finds the index slot holding a name, or the empty slot where it belongs
+   */
+  private int findSlot(String name, int hash) {
+    int mask = indexCapacity - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      int entry = index.getInt(slot * 4);
+      if (entry == 0) {
+        return slot;
+      }
+      int position = (entry - 1) * RECORD_SIZE;
+      if (records.getInt(position + NAME_HASH) == hash
+          && field(position, NAME).equalsIgnoreCase(name)) {
+        return slot;
+      }
+    }
+  }
+
+  /**
+   * Rebuilds the hash index with a new capacity, keeping the latest record for each name
+   */
+  private void rehash(int capacity) {
+    ByteBuffer old = index;
+    int oldCapacity = indexCapacity;
+    index = ByteBuffer.allocateDirect(4 * capacity);
+    indexCapacity = capacity;
+    for (int slot = 0; slot < oldCapacity; slot++) {
+      int entry = old.getInt(slot * 4);
+      if (entry != 0) {
+        int hash = records.getInt((entry - 1) * RECORD_SIZE + NAME_HASH);
+        int free = hash & (capacity - 1);
+        while (index.getInt(free * 4) != 0) {
+          free = (free + 1) & (capacity - 1);  // Names are unique, so just find a free slot
+        }
+        index.putInt(free * 4, entry);
+      }
+    }
+  }
+
+  /**
+   * Copies a mapped archive into writable direct buffers before its first change
+   */
+  private void ensureWritable() {
+    if (!mapped) {
+      return;
+    }
+    records = grow(records, Math.max(records.capacity(), INITIAL_RECORDS * RECORD_SIZE));
+    arena = grow(arena, Math.max(arena.capacity(), INITIAL_ARENA));
+    index = grow(index, index.capacity());
+    mapped = false;
+  }
+
+  /**
+   * @return A direct buffer of at least the needed size, doubling as it grows, holding a copy
+   *         of the old buffer's contents
+   */
+  private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+    int capacity = buffer.capacity();
+    while (capacity < needed) {
+      capacity = (int) Math.min(Integer.MAX_VALUE - 8, capacity * 2L);
+    }
+    ByteBuffer larger = ByteBuffer.allocateDirect(capacity);
+    larger.put(buffer.duplicate().position(0).limit(buffer.capacity()));
+    return larger;
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int from, int length) {
+    return buffer.duplicate().position(from).limit(from + length).slice();
+  }
+
+  /**
+   * @return Hash of the lower-cased name, spread so the low bits pick the slot
+   */
+  private static int hashOf(String name) {
+    int h = name.toLowerCase().hashCode();
+    return h ^ (h >>> 16);
+  }
+}
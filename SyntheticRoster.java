@@ -0,0 +1,179 @@
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyntheticRoster builds the made-up school the benchmarks and load tests run against
+ * Student i is "Kid(i) Test" in grade i % 6, picked up by "Mom(i) Test" (phone 555(i)) or
+ * "Dad(i) Test" (phone 777(i)), with no allergies, medications or para. Rooms are "Room(r)"
+ * with 30 seats, one for every 25 students
+ *
+ * The parser and guardian benchmarks instead work on raw roster rows with varied guardians,
+ * from rows or familyRows, and measure memory with residentBytes
+ */
+public class SyntheticRoster {
+  // Students per room when the roster is spread over rooms
+  private static final int STUDENTS_PER_ROOM = 25;
+  private static final int ROOM_CAPACITY = 30;
+
+  /**
+   * @return The name of student i
+   */
+  public static String student(int i) {
+    return "Kid" + i + " Test";
+  }
+
+  /**
+   * @return The name of student i's first guardian
+   */
+  public static String mother(int i) {
+    return "Mom" + i + " Test";
+  }
+
+  /**
+   * @return The name of student i's second guardian
+   */
+  public static String father(int i) {
+    return "Dad" + i + " Test";
+  }
+
+  /**
+   * Creates the students directly, without guardians, for code that works on Student objects
+   *
+   * @param studentCount Number of students to create
+   * @return The students in order
+   */
+  public static List<Student> students(int studentCount) {
+    List<Student> students = new ArrayList<>(studentCount);
+    for (int i = 0; i < studentCount; i++) {
+      students.add(new Student(student(i), i % 6, "Girl", new Guardian[0], "None", false,
+          "None"));
+    }
+    return students;
+  }
+
+  /**
+   * Loads the students through LOAD_STUDENTS, with the command output discarded
+   *
+   * @param studentCount Number of students to create
+   * @throws IOException if the roster cannot be written to a temporary directory
+   */
+  public static void load(int studentCount) throws IOException {
+    Path students = writeStudents(Files.createTempDirectory("roster"), studentCount);
+    CommandOutput.discard(() -> Main.execute("LOAD_STUDENTS " + students));
+  }
+
+  /**
+   * Loads the students and enough rooms for them, marks everyone present and spreads them over
+   * the rooms, all through the normal commands with their output discarded
+   *
+   * @param studentCount Number of students to create
+   * @throws IOException if the files cannot be written to a temporary directory
+   */
+  public static void loadIntoRooms(int studentCount) throws IOException {
+    Path dir = Files.createTempDirectory("roster");
+    Path students = writeStudents(dir, studentCount);
+    Path rooms = dir.resolve("rooms.csv");
+    int roomCount = Math.max(1, studentCount / STUDENTS_PER_ROOM);
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(rooms))) {
+      for (int r = 0; r < roomCount; r++) {
+        out.println("Room" + r + ", " + ROOM_CAPACITY);
+      }
+    }
+
+    CommandOutput.discard(() -> {
+      Main.execute("LOAD_STUDENTS " + students);
+      Main.execute("LOAD_ROOMS " + rooms);
+      for (int i = 0; i < studentCount; i++) {
+        Main.execute("MARK_PRESENT " + student(i));
+        Main.execute("ASSIGN_STUDENT " + student(i) + " Room" + (i % roomCount));
+      }
+    });
+  }
+
+  /**
+   * Builds roster rows in the loader format with a fixed seed, so runs are comparable Each
+   * student has one to three guardians of their own, and some have allergies or need a para
+   *
+   * @param count Number of rows
+   * @return The rows, without line breaks
+   */
+  public static List<String> rows(int count) {
+    Random random = new Random(42);
+    String[] relations = {"Mother", "Father", "Aunt", "Uncle", "Grandmother"};
+    List<String> rows = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      StringBuilder row = new StringBuilder();
+      row.append("Student").append(i).append(" Last").append(i % 997).append(", ")
+          .append(i % 13).append(", ").append(i % 2 == 0 ? "Girl" : "Boy").append(", (");
+      int guardians = 1 + random.nextInt(3);
+      for (int g = 0; g < guardians; g++) {
+        row.append(g == 0 ? "(" : " (").append("Parent").append(i).append('_').append(g)
+            .append(" Last").append(i % 997).append(';')
+            .append(relations[random.nextInt(relations.length)]).append(';')
+            .append(5550000000L + random.nextInt(9_999_999)).append(')');
+      }
+      row.append("), ").append(i % 5 == 0 ? "Peanuts" : "None").append(", ")
+          .append(i % 7 == 0 ? "Yes" : "No").append(", None");
+      rows.add(row.toString());
+    }
+    return rows;
+  }
+
+  /**
+   * Builds roster rows family by family with a fixed seed, so a realistic share of students
+   * have siblings listing the same guardians About 45% of families have one child, 35% two,
+   * 15% three and 5% four
+   *
+   * @param count Number of rows
+   * @return The rows, without line breaks
+   */
+  public static List<String> familyRows(int count) {
+    Random random = new Random(42);
+    List<String> rows = new ArrayList<>(count);
+    for (int family = 0; rows.size() < count; family++) {
+      int roll = random.nextInt(100);
+      int children = roll < 45 ? 1 : roll < 80 ? 2 : roll < 95 ? 3 : 4;
+      String guardians = "((Parent" + family + " Family" + family + ";Mother;"
+          + (5550000000L + family) + ")"
+          + (random.nextInt(3) > 0 ? " (Other" + family + " Family" + family + ";Father;"
+              + (7770000000L + family) + ")" : "") + ")";
+      for (int c = 0; c < children && rows.size() < count; c++) {
+        rows.add("Child" + c + " Family" + family + ", " + random.nextInt(13) + ", "
+            + (random.nextBoolean() ? "Girl" : "Boy") + ", " + guardians + ", None, No, None");
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * @return Heap in use after a full collection
+   */
+  public static long residentBytes() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 2; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Writes the students as a roster file in the format LOAD_STUDENTS reads
+   *
+   * @return The file written
+   */
+  private static Path writeStudents(Path dir, int studentCount) throws IOException {
+    Path students = dir.resolve("students.csv");
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(students))) {
+      for (int i = 0; i < studentCount; i++) {
+        out.println(student(i) + ", " + (i % 6) + ", Girl, ((" + mother(i) + ";Mother;555" + i
+            + ") (" + father(i) + ";Father;777" + i + ")), None, No, None");
+      }
+    }
+    return students;
+  }
+}
@@ -0,0 +1,78 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * TraceRecorder writes every command line the console processes to a trace file, with the time
+ * it was entered, so a busy morning can be replayed later with TraceReplay
+ * Each command is written as "(milliseconds since recording started) (command line)". When the
+ * program exits, by QUIT or otherwise, a last "# state (hash)" line records Main.stateHash() so
+ * a replay can check it ended in the same place. Lines are flushed as they are written, so a
+ * trace survives the program being killed outright, only without its hash
+ */
+public class TraceRecorder {
+  // Marks the lines of a trace that are not commands
+  public static final String COMMENT = "#";
+  public static final String STATE_PREFIX = COMMENT + " state ";
+
+  private static BufferedWriter writer;  // null unless recording
+  private static long startNanos;
+
+  /**
+   * Starts recording to a file, replacing anything already in it
+   *
+   * @param file The trace file
+   * @throws IOException if the file cannot be opened
+   */
+  public static synchronized void start(Path file) throws IOException {
+    writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    writer.write(COMMENT + " School Management trace, recorded "
+        + LocalDateTime.now().withNano(0) + "\n");
+    writer.flush();
+    startNanos = System.nanoTime();
+    Runtime.getRuntime().addShutdownHook(new Thread(TraceRecorder::finish, "trace-recorder"));
+  }
+
+  /**
+   * @return true if commands are being recorded
+   */
+  public static synchronized boolean isEnabled() {
+    return writer != null;
+  }
+
+  /**
+   * Appends a command line to the trace Does nothing unless recording
+   *
+   * @param line The command line as entered
+   */
+  public static synchronized void record(String line) {
+    if (writer == null) {
+      return;
+    }
+    try {
+      writer.write((System.nanoTime() - startNanos) / 1_000_000 + " " + line + "\n");
+      writer.flush();
+    } catch (IOException e) {
+      System.out.println("Stopped recording the trace: " + e.getMessage());
+      writer = null;
+    }
+  }
+
+  /**
+   * Writes the final state hash and closes the trace Safe to call more than once
+   */
+  public static synchronized void finish() {
+    if (writer == null) {
+      return;
+    }
+    try (BufferedWriter closing = writer) {
+      closing.write(STATE_PREFIX + Main.stateHash() + "\n");
+    } catch (IOException e) {
+      System.out.println("Could not finish the trace: " + e.getMessage());
+    }
+    writer = null;
+  }
+}
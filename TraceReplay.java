@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * TraceReplay feeds a trace written with "--record" back through the command dispatcher, so a
+ * busy morning can be rerun locally to compare throughput before and after a change
+ * Commands run at the pace they were recorded, or with --fast one after another as quickly as
+ * possible. With --streams N the first stream replays the whole trace and the others replay
+ * its read-only commands at the same time, like extra front-desk consoles and display boards,
+ * so the school ends up where the recording did. The report gives commands per second, latency
+ * percentiles overall and for the commands that took longest, and whether the final state hash
+ * matches the one recorded
+ *
+ * Run it from the directory the trace was recorded in, since LOAD commands name files relative
+ * to it. Replayed clock-ins punch into punches-replay rather than the school's punch files;
+ * exports and archives are written just as the originals were, so use a copy of that directory
+ * when those matter
+ *
+ * Usage: java TraceReplay (trace) [--fast] [--streams N]
+ */
+public class TraceReplay {
+  // Commands shown in the slowest commands table
+  private static final int SLOWEST_LISTED = 5;
+
+  /**
+   * One recorded command and when it was entered
+   */
+  private static class Entry {
+    final long offsetNanos;
+    final String line;
+    final boolean sideEffects;
+
+    Entry(long offsetNanos, String line) {
+      this.offsetNanos = offsetNanos;
+      this.line = line;
+      this.sideEffects = Main.hasSideEffects(line);
+    }
+  }
+
+  /**
+   * What one stream ran and how long each command took
+   */
+  private static class Stream implements Runnable {
+    final List<Entry> entries;
+    final boolean fast;
+    final CountDownLatch start;
+    final long[] latencies;
+    final String[] commands;
+    int executed;
+    int errors;
+    String firstError;
+    long maxLagNanos;  // Furthest a command started behind its recorded time
+    long beginNanos;
+
+    Stream(List<Entry> entries, boolean fast, CountDownLatch start) {
+      this.entries = entries;
+      this.fast = fast;
+      this.start = start;
+      this.latencies = new long[entries.size()];
+      this.commands = new String[entries.size()];
+    }
+
+    @Override
+    public void run() {
+      try {
+        start.await();
+      } catch (InterruptedException e) {
+        return;
+      }
+      boolean[] running = {true};
+      for (Entry entry : entries) {
+        if (!fast) {
+          long due = beginNanos + entry.offsetNanos;
+          for (long wait; (wait = due - System.nanoTime()) > 0; ) {
+            LockSupport.parkNanos(wait);
+          }
+          maxLagNanos = Math.max(maxLagNanos, System.nanoTime() - due);
+        }
+        long issued = System.nanoTime();
+        try {
+          CommandOutput.discard(() -> running[0] = Main.execute(entry.line));
+        } catch (RuntimeException e) {
+          errors++;
+          if (firstError == null) {
+            firstError = entry.line + ": " + e;
+          }
+        }
+        latencies[executed] = System.nanoTime() - issued;
+        commands[executed++] = entry.line.split(" ")[0].toUpperCase();
+        if (!running[0]) {
+          break;  // QUIT
+        }
+      }
+    }
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    if (args.length < 1) {
+      System.out.println("Usage: java TraceReplay (trace) [--fast] [--streams N]");
+      return;
+    }
+    boolean fast = false;
+    int streamCount = 1;
+    for (int i = 1; i < args.length; i++) {
+      if (args[i].equals("--fast")) {
+        fast = true;
+      } else if (args[i].equals("--streams") && i + 1 < args.length) {
+        streamCount = Math.max(1, Integer.parseInt(args[++i]));
+      }
+    }
+
+    List<Entry> entries = new ArrayList<>();
+    String recordedHash = null;
+    for (String line : Files.readAllLines(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+      if (line.startsWith(TraceRecorder.STATE_PREFIX)) {
+        recordedHash = line.substring(TraceRecorder.STATE_PREFIX.length()).trim();
+      } else if (!line.startsWith(TraceRecorder.COMMENT) && !line.isEmpty()) {
+        int space = line.indexOf(' ');
+        entries.add(new Entry(Long.parseLong(line.substring(0, space)) * 1_000_000,
+            line.substring(space + 1)));
+      }
+    }
+    List<Entry> reads = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (!entry.sideEffects) {
+        reads.add(entry);
+      }
+    }
+
+    PunchLog.useDirectory("punches-replay");
+    CountDownLatch start = new CountDownLatch(1);
+    Stream[] streams = new Stream[streamCount];
+    Thread[] threads = new Thread[streamCount];
+    for (int s = 0; s < streamCount; s++) {
+      streams[s] = new Stream(s == 0 ? entries : reads, fast, start);
+      threads[s] = new Thread(streams[s], "replay-" + s);
+      threads[s].start();
+    }
+    long begin = System.nanoTime();
+    for (Stream stream : streams) {
+      stream.beginNanos = begin;
+    }
+    start.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    long elapsed = System.nanoTime() - begin;
+
+    report(args[0], streams, fast, elapsed);
+    String replayedHash = Main.stateHash();
+    if (recordedHash == null) {
+      System.out.println("State hash " + replayedHash + "; the trace has none to compare with");
+    } else if (recordedHash.equals(replayedHash)) {
+      System.out.println("State hash " + replayedHash + " matches the recording");
+    } else {
+      System.out.println("State hash " + replayedHash + " does not match the recording ("
+          + recordedHash + ")");
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Prints throughput, latency percentiles and the commands that took longest in total
+   */
+  private static void report(String trace, Stream[] streams, boolean fast, long elapsed) {
+    int total = 0;
+    int errors = 0;
+    String firstError = null;
+    long maxLag = 0;
+    for (Stream stream : streams) {
+      total += stream.executed;
+      errors += stream.errors;
+      firstError = firstError != null ? firstError : stream.firstError;
+      maxLag = Math.max(maxLag, stream.maxLagNanos);
+    }
+    long[] all = new long[total];
+    Map<String, List<Long>> byCommand = new TreeMap<>();
+    int n = 0;
+    for (Stream stream : streams) {
+      for (int i = 0; i < stream.executed; i++) {
+        all[n++] = stream.latencies[i];
+        byCommand.computeIfAbsent(stream.commands[i], k -> new ArrayList<>())
+            .add(stream.latencies[i]);
+      }
+    }
+    Arrays.sort(all);
+
+    System.out.printf("Replayed %,d commands from %s in %.2f s, %s, %d stream(s)%n", total,
+        trace, elapsed / 1e9, fast ? "as fast as possible" : "at the recorded pace",
+        streams.length);
+    System.out.printf("Throughput: %,.0f commands/s%n", total / (elapsed / 1e9));
+    if (total > 0) {
+      System.out.printf("Latency p50 %s, p90 %s, p99 %s, p99.9 %s, max %s%n",
+          format(percentile(all, 50)), format(percentile(all, 90)), format(percentile(all, 99)),
+          format(percentile(all, 99.9)), format(all[total - 1]));
+    }
+    if (!fast) {
+      System.out.println("Fell behind the recording by at most " + format(maxLag));
+    }
+
+    List<Map.Entry<String, List<Long>>> slowest = new ArrayList<>(byCommand.entrySet());
+    slowest.sort(Comparator.comparingLong(
+        (Map.Entry<String, List<Long>> e) -> e.getValue().stream().mapToLong(l -> l).sum())
+        .reversed());
+    System.out.println("Command                 count       p50       p99     total");
+    for (Map.Entry<String, List<Long>> entry
+        : slowest.subList(0, Math.min(SLOWEST_LISTED, slowest.size()))) {
+      long[] times = entry.getValue().stream().mapToLong(l -> l).sorted().toArray();
+      System.out.printf("%-20s %8d %9s %9s %9s%n", entry.getKey(), times.length,
+          format(percentile(times, 50)), format(percentile(times, 99)),
+          format(Arrays.stream(times).sum()));
+    }
+
+    if (errors > 0) {
+      System.out.println(errors + " command(s) failed; the first was " + firstError);
+    }
+  }
+
+  /**
+   * @return The latency at a percentile of sorted latencies
+   */
+  private static long percentile(long[] sorted, double percent) {
+    int index = (int) Math.ceil(percent / 100 * sorted.length) - 1;
+    return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+  }
+
+  /**
+   * @return Nanoseconds in the most readable unit
+   */
+  private static String format(long nanos) {
+    if (nanos >= 1_000_000_000) {
+      return String.format("%.2f s", nanos / 1e9);
+    }
+    return nanos >= 1_000_000 ? String.format("%.2f ms", nanos / 1e6)
+        : String.format("%.1f us", nanos / 1e3);
+  }
+}